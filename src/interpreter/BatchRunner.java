@@ -0,0 +1,195 @@
+package interpreter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Runs one loaded program once per input record, on a pool of worker
+ * threads. Each record is a line of integers, separated by spaces or
+ * commas, that the program READs in turn. The output of every record is
+ * written in the order of the records, as soon as it and all the ones before
+ * it are done; at most a few records per worker are in flight at once, so
+ * memory use does not depend on the number of records.
+ * @see interpreter.VirtualMachine
+ * @author Enrique Gavidia
+ */
+public class BatchRunner {
+    // Records in flight per worker; enough to keep every worker busy while
+    // the output of the oldest record is being waited for
+    private static final int WINDOW_PER_WORKER = 4;
+
+    private final Program program;
+    private final boolean switchEngine;
+    private final int workers;
+    private long threadStackSize;
+    private int memoCapacity;
+    private ForkJoinEvaluator forks;
+
+    private int recordCount, failedCount;
+
+    /**
+     * @param program Program every record runs
+     * @param switchEngine true - run on the SwitchVirtualMachine
+     * @param workers Number of worker threads
+     */
+    public BatchRunner(Program program, boolean switchEngine, int workers) {
+        this.program = program;
+        this.switchEngine = switchEngine;
+        this.workers = workers;
+    }
+
+    /**
+     * Sets the stack size of the worker threads; compiled functions need
+     * large stacks to recurse deeply
+     * @param size Stack size in bytes, or 0 for the JVM's default
+     */
+    public void setThreadStackSize(long size) {
+        threadStackSize = size;
+    }
+
+    /**
+     * Gives every execution a memo cache of its own, for programs
+     * optimized with the 'memo' pass
+     * @param capacity Capacity of each cache, or 0 for no cache
+     * @see interpreter.MemoCache
+     */
+    public void setMemoCapacity(int capacity) {
+        memoCapacity = capacity;
+    }
+
+    /**
+     * Sets the evaluator shared by every execution to run forked calls
+     * @param forks Evaluator to use, or null to make forked calls sequentially
+     * @see interpreter.ForkJoinEvaluator
+     */
+    public void setForkJoinEvaluator(ForkJoinEvaluator forks) {
+        this.forks = forks;
+    }
+
+    /**
+     * Runs the program once per record read, writing the outputs in order
+     * @param records Input records, one per line
+     * @param out Where the outputs are written
+     * @throws IOException if the records cannot be read
+     * @throws InterruptedException if interrupted while waiting for a record
+     */
+    public void run(BufferedReader records, PrintStream out) throws IOException, InterruptedException {
+        AtomicInteger threads = new AtomicInteger();
+        ThreadFactory factory = task ->
+            new Thread(null, task, "X-batch-" + threads.incrementAndGet(), threadStackSize);
+        ExecutorService pool = Executors.newFixedThreadPool(workers, factory);
+        Queue<Future<String>> inFlight = new ArrayDeque<Future<String>>();
+        int window = workers * WINDOW_PER_WORKER;
+        recordCount = 0;
+        failedCount = 0;
+
+        try {
+            String record;
+            while ((record = records.readLine()) != null) {
+                int number = ++recordCount;
+                String input = toInput(record);
+                inFlight.add(pool.submit(() -> executeRecord(number, input)));
+                // Write every output that is done, and wait for the oldest
+                // one only when the window is full
+                while (!inFlight.isEmpty() && (inFlight.size() >= window || inFlight.peek().isDone()))
+                    out.print(nextOutput(inFlight));
+            }
+            while (!inFlight.isEmpty())
+                out.print(nextOutput(inFlight));
+            out.flush();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Takes the oldest record in flight, waiting for it if it is not done
+     * @return The record's output
+     */
+    private String nextOutput(Queue<Future<String>> inFlight) throws InterruptedException {
+        try {
+            return inFlight.remove().get();
+        } catch (ExecutionException e) {
+            // executeRecord reports its own failures, so only other Errors get here
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Turns a record into the lines READ takes its input from
+     */
+    private static String toInput(String record) {
+        StringBuilder input = new StringBuilder(record.length() + 1);
+        for (String value : record.trim().split("[\\s,]+"))
+            if (!value.isEmpty())
+                input.append(value).append('\n');
+        return input.toString();
+    }
+
+    /**
+     * Runs the program for a single record; a record whose execution fails
+     * gets an error line after the output it wrote before failing. Running
+     * out of stack or memory only fails the record that did.
+     */
+    private String executeRecord(int number, String input) {
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        try {
+            return execute(input, written);
+        } catch (RuntimeException | StackOverflowError | OutOfMemoryError e) {
+            synchronized (this) {
+                failedCount++;
+            }
+            return written + "**** record " + number + ": " + e + "\n";
+        }
+    }
+
+    /**
+     * Runs the program once, on a VM of its own
+     * @param input What the program reads, one integer per line
+     * @return Everything the program wrote
+     */
+    public String execute(String input) {
+        return execute(input, new ByteArrayOutputStream());
+    }
+
+    /**
+     * Runs the program once, on a VM of its own writing to the given buffer
+     * @return Everything the program wrote
+     */
+    private String execute(String input, ByteArrayOutputStream written) {
+        PrintStream output = new PrintStream(written);
+        BufferedReader in = new BufferedReader(new StringReader(input));
+
+        VirtualMachine vm = switchEngine
+            ? new SwitchVirtualMachine(program, in, output)
+            : new VirtualMachine(program, in, output);
+        if (memoCapacity > 0)
+            vm.setMemoCache(new MemoCache(memoCapacity));
+        if (forks != null)
+            vm.setForkJoinEvaluator(forks, 0);
+        vm.executeProgram();
+
+        output.flush();
+        return written.toString();
+    }
+
+    /**
+     * Summarizes the last run
+     * @return Formatted statistics
+     */
+    public synchronized String getStatistics() {
+        return String.format("batch: %1$d records, %2$d failed (%3$d workers)\n", recordCount, failedCount, workers);
+    }
+}
@@ -1,18 +1,39 @@
 package interpreter;
 
 import interpreter.bytecodes.ByteCode;
-import java.io.BufferedReader;
-import java.io.FileReader;
+import interpreter.bytecodes.Opcode;
+import java.io.BufferedInputStream;
+import java.io.CharArrayReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.GZIPInputStream;
 
 
 /**
- * Reads ByteCodes from a given file, and loads them on to a Program object
+ * Reads ByteCodes from a given file, and loads them on to a Program object.
+ * Files can also be read from any stream, such as the standard input, and
+ * may be gzip compressed.
  * @see interpreter.Program
  * @author Enrique Gavidia
  */
 public class ByteCodeLoader {
-    private BufferedReader programFile;
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private Reader programFile;
+    // Address and source line of every LINE code, in pairs
+    private int[] lineTable = new int[0];
 
     /**
      * Loads the file to be read
@@ -20,47 +41,329 @@ public class ByteCodeLoader {
      * @throws IOException
      */
     public ByteCodeLoader(String programPath) throws IOException {
-        programFile = new BufferedReader(new FileReader(programPath));
+        this(new FileInputStream(programPath));
+    }
+
+    /**
+     * Loads ByteCodes from a stream, which is read as it is parsed; gzip
+     * compressed streams are decompressed on the way
+     * @param in Stream of ByteCode text, compressed or not
+     * @throws IOException if the stream cannot be read
+     */
+    public ByteCodeLoader(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        buffered.mark(2);
+        boolean compressed = (buffered.read() | buffered.read() << 8) == GZIPInputStream.GZIP_MAGIC;
+        buffered.reset();
+        programFile = new InputStreamReader(compressed ? new GZIPInputStream(buffered, BUFFER_SIZE) : buffered);
+    }
+
+    /**
+     * Loads ByteCodes from a channel, like from a stream
+     * @param channel Channel of ByteCode text, compressed or not
+     * @throws IOException if the channel cannot be read
+     */
+    public ByteCodeLoader(ReadableByteChannel channel) throws IOException {
+        this(Channels.newInputStream(channel));
+    }
+
+    /**
+     * Loads ByteCodes from an already open reader
+     * @param programFile Reader over the ByteCode text
+     */
+    public ByteCodeLoader(Reader programFile) {
+        this.programFile = programFile;
     }
     
     /**
      * Reads the ByteCodes from the input file, and loads them on to a Program object
      * @return Program object with the ByteCodes from the file loaded onto it
-     * @see interpreter.Program
+     * @throws IllegalArgumentException if the file contains an unknown ByteCode,
+     *         malformed arguments, or a branch to a label that does not exist,
+     *         or if it cannot be read to its end
+     * @see interpreter.Linker
      */
     public Program loadCodes() {
-        Program program = new Program();
+        Chunk chunk = parse(programFile);
+        if (chunk.error != null)
+            throw new IllegalArgumentException(chunk.error + " on line " + chunk.errorLine);
+
+        lineTable = Arrays.copyOf(chunk.lines, 2 * chunk.lineEntries);
+        return Linker.link(chunk.codes);
+    }
+
+    /**
+     * Reads the ByteCodes from the input file like loadCodes, but parses
+     * parts of it at once on the given pool; worth it for huge files only.
+     * The file is split into chunks of whole lines, the chunks are parsed
+     * into codes in parallel, and their codes are linked together once all
+     * of them are done. The program is the same loadCodes would load, and
+     * so is the error thrown for an invalid file.
+     * @param pool Pool to parse the chunks on
+     * @param chunkSize Approximate number of characters in each chunk
+     * @return Program object with the ByteCodes from the file loaded onto it
+     * @throws IllegalArgumentException if the file contains an unknown ByteCode,
+     *         malformed arguments, or a branch to a label that does not exist,
+     *         or if it cannot be read to its end
+     * @see interpreter.ByteCodeLoader#loadCodes()
+     */
+    public Program loadCodes(ForkJoinPool pool, int chunkSize) {
+        char[] text = readAll(programFile);
+        List<ForkJoinTask<Chunk>> tasks = new ArrayList<ForkJoinTask<Chunk>>();
+        for (int start = 0, end; start < text.length; start = end) {
+            // Chunks end right after a line feed, so no line is split, and a
+            // \r\n line ending stays in one chunk
+            end = Math.min(start + chunkSize, text.length);
+            while (end < text.length && text[end - 1] != '\n')
+                end++;
+            CharArrayReader range = new CharArrayReader(text, start, end - start);
+            tasks.add(pool.submit(() -> parse(range)));
+        }
+
+        List<ByteCode> codes = new ArrayList<ByteCode>();
+        Chunk all = new Chunk(codes);
+        int lineNumber = 0;
+        for (ForkJoinTask<Chunk> task : tasks) {
+            Chunk chunk = task.join();
+            if (chunk.error != null) {
+                for (ForkJoinTask<Chunk> rest : tasks)
+                    rest.cancel(false);
+                throw new IllegalArgumentException(chunk.error + " on line " + (lineNumber + chunk.errorLine));
+            }
+
+            for (int entry = 0; entry < chunk.lineEntries; entry++)
+                all.addLine(codes.size() + chunk.lines[2 * entry], chunk.lines[2 * entry + 1]);
+            codes.addAll(chunk.codes);
+            lineNumber += chunk.lineCount;
+        }
+
+        lineTable = Arrays.copyOf(all.lines, 2 * all.lineEntries);
+        return Linker.link(codes);
+    }
+
+    /**
+     * Reads everything left in a reader
+     * @throws IllegalArgumentException if the reader fails before its end,
+     *         like a truncated gzip stream does; nothing read is kept
+     */
+    private static char[] readAll(Reader reader) {
+        char[] text = new char[1 << 16];
+        int length = 0;
         try {
-            while (programFile.ready()) {
-                String line = programFile.readLine();
-
-                // For each line read, separate the bytecode from its arguments,and store the 2 strings
-                // in an array (where code[0] is the bytecode and code[1] is the string of its arguments)
-                String[] code = line.split("\\s",2);
-                
-                String codeClass = "interpreter.bytecodes." + getCodeClass(code[0]);
-                ByteCode bytecode = (ByteCode)(Class.forName(codeClass).newInstance());
-
-                if (code.length > 1)
-                    bytecode.init(code[1]);
+            int read;
+            while ((read = reader.read(text, length, text.length - length)) >= 0) {
+                length += read;
+                if (length == text.length)
+                    text = Arrays.copyOf(text, 2 * text.length);
+            }
+        } catch (IOException e) {
+            int lineNumber = 1;
+            for (int i = 0; i < length; i++)
+                if (text[i] == '\n')
+                    lineNumber++;
+            throw new IllegalArgumentException(readError(e) + " on line " + lineNumber);
+        }
+        return Arrays.copyOf(text, length);
+    }
+
+    /**
+     * Describes a failure to read the program's text
+     */
+    private static String readError(IOException e) {
+        return "Cannot read the program: " + e;
+    }
+
+    /**
+     * ByteCodes parsed from a file, or part of one; addresses and line
+     * numbers are counted from the start of the part
+     */
+    private static class Chunk {
+        final List<ByteCode> codes;
+        // Address and source line of every LINE code, in pairs
+        int[] lines = new int[16];
+        int lineEntries;
+        int lineCount;
+        // The first error found, and the line it is on
+        String error;
+        int errorLine;
+
+        Chunk(List<ByteCode> codes) {
+            this.codes = codes;
+        }
+
+        void addLine(int address, int sourceLine) {
+            // A line without codes of its own is replaced by the next one
+            if (lineEntries > 0 && lines[2 * lineEntries - 2] == address)
+                lineEntries--;
+            if (2 * lineEntries == lines.length)
+                lines = Arrays.copyOf(lines, 2 * lines.length);
+            lines[2 * lineEntries] = address;
+            lines[2 * lineEntries + 1] = sourceLine;
+            lineEntries++;
+        }
+    }
+
+    /**
+     * Reads a stream one line at a time, into a buffer that is reused for
+     * every line. Lines end in \n, \r or \r\n, like for readLine.
+     */
+    private static class LineReader {
+        private final Reader reader;
+        private char[] buffer = new char[BUFFER_SIZE];
+        // Characters read but not taken as lines yet are buffer[next..end)
+        private int next, end;
+        private boolean atEnd;
+        // Set after a line ending in \r, whose \n is still to come
+        private boolean skipLineFeed;
+        // The current line is buffer[lineStart..lineEnd)
+        int lineStart, lineEnd;
+
+        LineReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * Moves on to the next line
+         * @return false if the stream has no lines left
+         * @throws IOException if the stream cannot be read
+         */
+        boolean nextLine() throws IOException {
+            int scan = next;
+            while (true) {
+                if (skipLineFeed && next < end) {
+                    if (buffer[next] == '\n')
+                        next++;
+                    skipLineFeed = false;
+                    scan = next;
+                }
+                for (; scan < end; scan++) {
+                    char c = buffer[scan];
+                    if (c == '\n' || c == '\r') {
+                        lineStart = next;
+                        lineEnd = scan;
+                        next = scan + 1;
+                        skipLineFeed = c == '\r';
+                        return true;
+                    }
+                }
+
+                if (atEnd) {
+                    // The last line may have no line ending
+                    if (next == end)
+                        return false;
+                    lineStart = next;
+                    lineEnd = end;
+                    next = end;
+                    return true;
+                }
+
+                // Keep the start of the line, and read more after it; the
+                // buffer only grows for lines longer than itself
+                int kept = end - next;
+                if (kept == buffer.length)
+                    buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                else
+                    System.arraycopy(buffer, next, buffer, 0, kept);
+                next = 0;
+                end = kept;
+                scan = kept;
+                int read = reader.read(buffer, end, buffer.length - end);
+                if (read < 0)
+                    atEnd = true;
                 else
-                    bytecode.init("");
-                
-                program.addCode(bytecode);
+                    end += read;
             }
-        } catch (Exception e) {}
+        }
+    }
 
-        program.resolveAddresses();
-        return program;
+    /**
+     * Parses every line left in a reader, stopping at the first invalid one
+     * @param reader Reader over ByteCode text
+     * @return The parsed codes, not linked yet
+     */
+    private Chunk parse(Reader reader) {
+        Chunk chunk = new Chunk(new ArrayList<ByteCode>());
+        LineReader lines = new LineReader(reader);
+        try {
+            while (lines.nextLine()) {
+                int lineNumber = ++chunk.lineCount;
+
+                // For each line read, separate the bytecode from the string of its arguments
+                char[] text = lines.buffer;
+                int split = indexOfWhitespace(text, lines.lineStart, lines.lineEnd);
+                if (split == lines.lineStart)
+                    continue;
+                String name = new String(text, lines.lineStart, split - lines.lineStart);
+                String args = split == lines.lineEnd ? "" : new String(text, split + 1, lines.lineEnd - split - 1);
+
+                Opcode opcode = CodeTable.get(name);
+                if (opcode == null) {
+                    chunk.error = "Unknown ByteCode '" + name + "'";
+                    chunk.errorLine = lineNumber;
+                    break;
+                }
+
+                if (opcode == Opcode.LINE) {
+                    try {
+                        chunk.addLine(chunk.codes.size(), Integer.parseInt(args.trim()));
+                    } catch (NumberFormatException e) {
+                        // LINE codes are only checked when the program is debugged
+                    }
+                }
+
+                ByteCode bytecode = newCode(opcode);
+                if (bytecode == null)
+                    continue;
+
+                try {
+                    bytecode.init(args);
+                } catch (IllegalArgumentException e) {
+                    chunk.error = e.getMessage();
+                    chunk.errorLine = lineNumber;
+                    break;
+                }
+                chunk.codes.add(bytecode);
+            }
+        } catch (IOException e) {
+            // The codes parsed so far are never linked into a program
+            chunk.error = readError(e);
+            chunk.errorLine = chunk.lineCount + 1;
+        }
+        return chunk;
+    }
+
+    /**
+     * Gets where the codes loaded by the last call to loadCodes came from in
+     * the source, as told by the file's LINE codes
+     * @return The address of the first code of each source line, followed by
+     *         the line's number, for every LINE code in the file
+     */
+    public int[] getLineTable() {
+        return lineTable;
+    }
+
+    /**
+     * Creates the ByteCode for the given Opcode; designed to be overrided by
+     * DebugByteCodeLoader. Codes that only carry debugger information are
+     * left out of the program.
+     * @param opcode Opcode read from the code file
+     * @return A new, uninitiated ByteCode, or null if the code is to be skipped
+     */
+    protected ByteCode newCode(Opcode opcode) {
+        return CodeTable.newCode(opcode);
     }
 
     /**
-     * Returns the ByteCode's class name; designed to be overrided by
-     * debugByteCodeLoader
-     * @param code Code string read from code file
-     * @return ByteCode class name
+     * Finds the first whitespace character in the given line
+     * @param text Buffer holding the line read from the code file
+     * @param start Index of the line's first character
+     * @param end Index just past the line's last character
+     * @return Index of the first whitespace character, or end if there is none
      */
-    protected String getCodeClass(String code) {
-        return CodeTable.get(code);
+    private static int indexOfWhitespace(char[] text, int start, int end) {
+        for (int i = start; i < end; i++)
+            if (Character.isWhitespace(text[i]))
+                return i;
+        return end;
     }
 }
@@ -1,44 +1,87 @@
 package interpreter;
 
+import interpreter.bytecodes.*;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.function.Supplier;
 
 
 /**
- * Stores the mapped values of ByteCode names to their respective classes
+ * Registry that maps ByteCode names to their Opcodes, and each Opcode to the
+ * constructor of the class implementing it. Debug variants of the codes are
+ * kept in a separate table that falls back on the normal one.
  * @author Enrique Gavidia
  */
 public class CodeTable {
-    private static HashMap<String, String> codeMap = new HashMap<String, String>();
-
-    // List of the codes for whom class names are to be dynamically generated
-    // by the 'init' method
-    private static String[] codes = new String[] {
-        "Args","Bop","Call","Dump","Falsebranch","Goto","Halt","Label",
-        "Lit","Load","Pop","Read","Return","Store","Write",
-        "Formal","Function","Line",
-    };
+    private static HashMap<String, Opcode> opcodeMap = new HashMap<String, Opcode>();
+    private static EnumMap<Opcode, Supplier<ByteCode>> codeMap =
+            new EnumMap<Opcode, Supplier<ByteCode>>(Opcode.class);
+    private static EnumMap<Opcode, Supplier<ByteCode>> debugCodeMap =
+            new EnumMap<Opcode, Supplier<ByteCode>>(Opcode.class);
 
     /**
-     * Initiates the Hash table that pairs the ByteCodes to their respective
+     * Initiates the tables that pair the ByteCodes to their respective
      * classes
      */
     public static void init() {
-        // Dynamically generates each ByteCode class name based on the code names
-        // stored in the 'codes' array
-        String codeClass;
-        for (String code : codes) {
-            codeClass = code+"Code";
-            code = code.toUpperCase();
-            codeMap.put(code,codeClass);
-        }
+        if (!opcodeMap.isEmpty())
+            return;
+
+        for (Opcode opcode : Opcode.values())
+            if (!opcode.isSynthetic())
+                opcodeMap.put(opcode.name(), opcode);
+
+        codeMap.put(Opcode.ARGS,        ArgsCode::new);
+        codeMap.put(Opcode.BOP,         BopCode::new);
+        codeMap.put(Opcode.CALL,        CallCode::new);
+        codeMap.put(Opcode.DUMP,        DumpCode::new);
+        codeMap.put(Opcode.FALSEBRANCH, FalsebranchCode::new);
+        codeMap.put(Opcode.GOTO,        GotoCode::new);
+        codeMap.put(Opcode.HALT,        HaltCode::new);
+        codeMap.put(Opcode.LABEL,       LabelCode::new);
+        codeMap.put(Opcode.LIT,         LitCode::new);
+        codeMap.put(Opcode.LOAD,        LoadCode::new);
+        codeMap.put(Opcode.POP,         PopCode::new);
+        codeMap.put(Opcode.READ,        ReadCode::new);
+        codeMap.put(Opcode.RETURN,      ReturnCode::new);
+        codeMap.put(Opcode.STORE,       StoreCode::new);
+        codeMap.put(Opcode.WRITE,       WriteCode::new);
+
+        debugCodeMap.put(Opcode.FORMAL,   interpreter.bytecodes.debuggerByteCodes.FormalCode::new);
+        debugCodeMap.put(Opcode.FUNCTION, interpreter.bytecodes.debuggerByteCodes.FunctionCode::new);
+        debugCodeMap.put(Opcode.LINE,     interpreter.bytecodes.debuggerByteCodes.LineCode::new);
+        debugCodeMap.put(Opcode.LIT,      interpreter.bytecodes.debuggerByteCodes.LitCode::new);
+        debugCodeMap.put(Opcode.POP,      interpreter.bytecodes.debuggerByteCodes.PopCode::new);
+        debugCodeMap.put(Opcode.RETURN,   interpreter.bytecodes.debuggerByteCodes.ReturnCode::new);
     }
 
     /**
-     * Gets the class corresponding to the given ByteCode name
+     * Gets the Opcode corresponding to the given ByteCode name
      * @param code ByteCode name
-     * @return The respective ByteCode class
+     * @return The respective Opcode, or null if the name is not a known ByteCode
+     */
+    public static Opcode get(String code) {
+        return opcodeMap.get(code);
+    }
+
+    /**
+     * Creates a new, uninitiated ByteCode for the given Opcode
+     * @param opcode Opcode of the ByteCode to create
+     * @return A new ByteCode, or null if the Opcode only has a debug variant
+     */
+    public static ByteCode newCode(Opcode opcode) {
+        Supplier<ByteCode> constructor = codeMap.get(opcode);
+        return constructor == null ? null : constructor.get();
+    }
+
+    /**
+     * Creates a new, uninitiated ByteCode for the given Opcode, preferring its
+     * debug variant when there is one
+     * @param opcode Opcode of the ByteCode to create
+     * @return A new ByteCode
      */
-    public static String get(String code) {
-        return codeMap.get(code);
+    public static ByteCode newDebugCode(Opcode opcode) {
+        Supplier<ByteCode> constructor = debugCodeMap.get(opcode);
+        return constructor == null ? newCode(opcode) : constructor.get();
     }
 }
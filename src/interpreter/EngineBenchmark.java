@@ -0,0 +1,135 @@
+package interpreter;
+
+import interpreter.bytecodes.ByteCode;
+import interpreter.optimizer.Optimizer;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * <pre>
+ *
+ *     Measures how many instructions per second the VirtualMachine and the
+ *     SwitchVirtualMachine execute on the same program:
+ *     1. Load and link the program once
+ *     2. Run it once counting the ByteCodes it executes, for the expected
+ *        output and the number of instructions of every run
+ *     3. Run it on each engine in turn, a single execution at a time,
+ *        checking each one's output
+ *
+ *     java interpreter.EngineBenchmark [-O] &lt;file&gt; [input...]
+ *
+ * </pre>
+ * @see interpreter.SwitchVirtualMachine
+ * @author Enrique Gavidia
+ */
+public class EngineBenchmark {
+    private static final int ROUNDS = 5;
+
+    /**
+     * Runs a program like the VirtualMachine does, counting the ByteCodes
+     * it executes
+     */
+    private static class CountingVirtualMachine extends VirtualMachine {
+        long executed;
+
+        CountingVirtualMachine(Program program, BufferedReader input, PrintStream output) {
+            super(program, input, output);
+        }
+
+        @Override
+        public void executeProgram() {
+            programCounter = 0;
+            runStack = new RunTimeStack();
+            returnAddrs = new Stack<Integer>();
+            isRunning = true;
+            dump = false;
+
+            while (isRunning) {
+                ByteCode code = program.getCode(programCounter);
+                code.execute(this);
+                executed++;
+
+                if (dump)
+                    dump(code);
+
+                programCounter++;
+            }
+        }
+    }
+
+    /**
+     * Runs the program once on a new VM of the given engine
+     * @param vm The VM to run, reading and writing the given streams
+     * @param written Where the VM writes
+     * @return Everything the program wrote
+     */
+    private static String run(VirtualMachine vm, ByteArrayOutputStream written) {
+        vm.executeProgram();
+        return written.toString();
+    }
+
+    public static void main(String args[]) {
+        Optimizer optimizer = new Optimizer();
+        List<String> positional = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.equals("-O"))
+                optimizer.enableAll();
+            else
+                positional.add(arg);
+        }
+
+        if (positional.isEmpty()) {
+            System.out.println("***Incorrect usage, try: java interpreter.EngineBenchmark [-O] <file> [input...]");
+            System.exit(1);
+        }
+
+        Program program;
+        try {
+            CodeTable.init();
+            program = optimizer.optimize(new ByteCodeLoader(positional.get(0)).loadCodes());
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("**** " + e.getMessage());
+            return;
+        }
+        String input = "";
+        for (String line : positional.subList(1, positional.size()))
+            input += line + "\n";
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        CountingVirtualMachine counter = new CountingVirtualMachine(program,
+            new BufferedReader(new StringReader(input)), new PrintStream(written));
+        String expected = run(counter, written);
+        long instructions = counter.executed;
+
+        // The first rounds let the JVM warm up; the best one is reported
+        double objectBest = Double.MAX_VALUE, switchBest = Double.MAX_VALUE;
+        for (int round = 1; round <= ROUNDS; round++) {
+            written = new ByteArrayOutputStream();
+            VirtualMachine vm = new VirtualMachine(program,
+                new BufferedReader(new StringReader(input)), new PrintStream(written));
+            long start = System.nanoTime();
+            boolean same = run(vm, written).equals(expected);
+            double objectTime = (System.nanoTime() - start) / 1e6;
+
+            written = new ByteArrayOutputStream();
+            vm = new SwitchVirtualMachine(program,
+                new BufferedReader(new StringReader(input)), new PrintStream(written));
+            start = System.nanoTime();
+            same &= run(vm, written).equals(expected);
+            double switchTime = (System.nanoTime() - start) / 1e6;
+
+            objectBest = Math.min(objectBest, objectTime);
+            switchBest = Math.min(switchBest, switchTime);
+            System.out.printf("round %1$d: object %2$.1fms, switch %3$.1fms, %4$s\n",
+                round, objectTime, switchTime, same ? "same output" : "DIFFERENT OUTPUT");
+        }
+        System.out.printf("%1$d instructions: object %2$.1fM instructions/s, switch %3$.1fM instructions/s (%4$.2fx)\n",
+            instructions, instructions / objectBest / 1e3, instructions / switchBest / 1e3, objectBest / switchBest);
+    }
+}
@@ -0,0 +1,202 @@
+package interpreter;
+
+import interpreter.bytecodes.*;
+import interpreter.bytecodes.fusedByteCodes.*;
+
+
+/**
+ * Compact encoding of a linked Program as parallel opcode/operand arrays,
+ * executed by the SwitchVirtualMachine. ByteCodes without a flat encoding
+ * are lowered to EXECUTE, which runs the original ByteCode object.
+ * @see interpreter.SwitchVirtualMachine
+ * @author Enrique Gavidia
+ */
+public class FlatProgram {
+    // Flat opcodes; BOP is lowered to one opcode per operator, in the same
+    // order as the Operator enum
+    public static final int EXECUTE = 0;
+    public static final int NOP = 1;
+    public static final int ARGS = 2;
+    public static final int CALL = 3;
+    public static final int RETURN = 4;
+    public static final int GOTO = 5;
+    public static final int FALSEBRANCH = 6;
+    public static final int LIT = 7;
+    public static final int LOAD = 8;
+    public static final int STORE = 9;
+    public static final int POP = 10;
+    public static final int ADD = 11;
+    public static final int SUB = 12;
+    public static final int MUL = 13;
+    public static final int DIV = 14;
+    public static final int EQ = 15;
+    public static final int NE = 16;
+    public static final int LT = 17;
+    public static final int LE = 18;
+    public static final int GT = 19;
+    public static final int GE = 20;
+    public static final int AND = 21;
+    public static final int OR = 22;
+
+    // Superinstructions, which also read their extra operand or operator
+    public static final int LOAD_LIT_BOP = 23;
+    public static final int BOP_FALSEBRANCH = 24;
+    public static final int LIT_RETURN = 25;
+    public static final int ARGS_CALL = 26;
+    public static final int TAIL_CALL = 27;
+
+    private final Program program;
+    private final int[] opcodes;
+    private final int[] operands;
+    private final int[] extras;
+    private final Operator[] operators;
+
+    /**
+     * Lowers the given program into its flat encoding
+     * @param program Linked program to lower
+     */
+    public FlatProgram(Program program) {
+        this.program = program;
+        this.opcodes = new int[program.size()];
+        this.operands = new int[program.size()];
+        this.extras = new int[program.size()];
+        this.operators = new Operator[program.size()];
+
+        for (int index = 0; index < program.size(); index++)
+            lower(index, program.getCode(index));
+    }
+
+    /**
+     * Encodes a single ByteCode
+     * @param index Address of the ByteCode
+     * @param code The ByteCode to encode
+     */
+    private void lower(int index, ByteCode code) {
+        int opcode = EXECUTE;
+        int operand = 0;
+
+        switch (code.getOpcode()) {
+            case LABEL:
+                opcode = NOP;
+                break;
+            case ARGS:
+                opcode = ARGS;
+                operand = ((ArgsCode) code).getNumOfArgs();
+                break;
+            case CALL:
+                opcode = CALL;
+                operand = ((BranchCode) code).getTarget();
+                break;
+            case RETURN:
+                opcode = RETURN;
+                break;
+            case GOTO:
+                opcode = GOTO;
+                operand = ((BranchCode) code).getTarget();
+                break;
+            case FALSEBRANCH:
+                opcode = FALSEBRANCH;
+                operand = ((BranchCode) code).getTarget();
+                break;
+            case LIT:
+                opcode = LIT;
+                operand = ((LitCode) code).getValue();
+                break;
+            case LOAD:
+                opcode = LOAD;
+                operand = ((LoadCode) code).getOffset();
+                break;
+            case STORE:
+                opcode = STORE;
+                operand = ((StoreCode) code).getOffset();
+                break;
+            case POP:
+                opcode = POP;
+                operand = ((PopCode) code).getNumOfPops();
+                break;
+            case BOP:
+                opcode = ADD + ((BopCode) code).getOperator().ordinal();
+                break;
+            case LOADLITBOP:
+                LoadLitBopCode loadLitBop = (LoadLitBopCode) code;
+                opcode = LOAD_LIT_BOP;
+                operand = loadLitBop.getOffset();
+                extras[index] = loadLitBop.getValue();
+                operators[index] = loadLitBop.getOperator();
+                break;
+            case BOPFALSEBRANCH:
+                opcode = BOP_FALSEBRANCH;
+                operand = ((BranchCode) code).getTarget();
+                operators[index] = ((BopFalsebranchCode) code).getOperator();
+                break;
+            case LITRETURN:
+                opcode = LIT_RETURN;
+                operand = ((LitReturnCode) code).getValue();
+                break;
+            case ARGSCALL:
+                opcode = ARGS_CALL;
+                operand = ((BranchCode) code).getTarget();
+                extras[index] = ((ArgsCallCode) code).getNumOfArgs();
+                break;
+            case TAILCALL:
+                opcode = TAIL_CALL;
+                operand = ((BranchCode) code).getTarget();
+                extras[index] = ((TailCallCode) code).getNumOfArgs();
+                break;
+            default:
+                break;
+        }
+
+        opcodes[index] = opcode;
+        operands[index] = operand;
+    }
+
+    /**
+     * Gets the Program the flat encoding was lowered from
+     * @return The original Program
+     */
+    public Program getProgram() {
+        return program;
+    }
+
+    /**
+     * Gets the flat opcode of every ByteCode, indexed by address
+     * @return Array of flat opcodes
+     */
+    int[] getOpcodes() {
+        return opcodes;
+    }
+
+    /**
+     * Gets the operand of every ByteCode, indexed by address
+     * @return Array of operands
+     */
+    int[] getOperands() {
+        return operands;
+    }
+
+    /**
+     * Gets the extra operand of every superinstruction, indexed by address
+     * @return Array of extra operands
+     */
+    int[] getExtras() {
+        return extras;
+    }
+
+    /**
+     * Gets the operator of every superinstruction that performs one, indexed
+     * by address
+     * @return Array of operators
+     */
+    Operator[] getOperators() {
+        return operators;
+    }
+
+    /**
+     * Gets the number of ByteCodes in the program
+     * @return Number of ByteCodes
+     */
+    public int size() {
+        return opcodes.length;
+    }
+}
@@ -0,0 +1,149 @@
+package interpreter;
+
+import interpreter.bytecodes.ByteCode;
+import interpreter.bytecodes.Opcode;
+import interpreter.bytecodes.fusedByteCodes.ArgsCallCode;
+import interpreter.bytecodes.fusedByteCodes.ForkCallCode;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Evaluates forked calls to pure functions on a ForkJoinPool. Each forked
+ * call runs on a child VirtualMachine of its own, sharing the parent's
+ * Program but with an isolated Runtime stack. Calls forked by the children
+ * run in parallel too, as long as they are nested less than 'cutoff' calls
+ * deep; deeper calls do too little work to pay for a fork, and run
+ * sequentially on the VM making them. Calls forked right at the cutoff run
+ * a sequential copy of the program, whose FORKCALLs are ordinary calls.
+ * @see interpreter.optimizer.ForkJoinPass
+ * @author Enrique Gavidia
+ */
+public class ForkJoinEvaluator {
+    public static final int DEFAULT_CUTOFF = 10;
+
+    private final ForkJoinPool pool;
+    private final int cutoff;
+    private final LongAdder forked = new LongAdder();
+
+    // Sequential copy of the last program calls were forked from
+    private Program forkedProgram;
+    private Program sequentialProgram;
+
+    /**
+     * @param threads Number of worker threads
+     * @param cutoff Depth of nested calls past which calls are no longer forked
+     */
+    public ForkJoinEvaluator(int threads, int cutoff) {
+        this.pool = new ForkJoinPool(threads);
+        this.cutoff = cutoff;
+    }
+
+    /**
+     * Gets the depth of nested calls past which calls are no longer forked
+     * @return Call depth cutoff
+     */
+    public int getCutoff() {
+        return cutoff;
+    }
+
+    /**
+     * Starts evaluating a call on a child VM
+     * @param program Program the function belongs to
+     * @param function Address of the function's first code
+     * @param args Arguments to call the function with
+     * @param depth Depth of the call, counting the calls it is nested in
+     * @return Task whose result is the function's return value
+     */
+    public ForkJoinTask<Integer> fork(Program program, int function, int[] args, int depth) {
+        forked.increment();
+        CallTask task = new CallTask(program, function, args, depth);
+        if (ForkJoinTask.getPool() == pool)
+            task.fork();
+        else
+            pool.execute(task);
+        return task;
+    }
+
+    /**
+     * Gets a copy of the given program with its FORKCALLs turned into
+     * ordinary calls; the JOINs do nothing when the VM has no evaluator
+     * @param program Program calls are forked from
+     * @return Sequential copy of the program
+     */
+    private synchronized Program sequential(Program program) {
+        if (program != forkedProgram) {
+            Map<Integer, ByteCode> patches = new HashMap<Integer, ByteCode>();
+            for (int index = 0; index < program.size(); index++) {
+                ByteCode code = program.getCode(index);
+                if (code.getOpcode() == Opcode.FORKCALL) {
+                    ForkCallCode fork = (ForkCallCode) code;
+                    patches.put(index, new ArgsCallCode(fork.getNumOfArgs(), fork.getLabel(), fork.getTarget()));
+                }
+            }
+            forkedProgram = program;
+            sequentialProgram = program.patch(patches);
+        }
+        return sequentialProgram;
+    }
+
+    /**
+     * Waits for a forked call to finish; workers of the pool run other
+     * pending tasks while they wait
+     * @param task Task returned by fork()
+     * @return The function's return value
+     */
+    public int join(ForkJoinTask<Integer> task) {
+        return task.join();
+    }
+
+    /**
+     * Stops the worker threads once the program is done
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Summarizes the forks made so far
+     * @return Formatted statistics
+     */
+    public String getStatistics() {
+        return String.format("fork: %1$d calls forked, %2$d steals (%3$d threads, cutoff %4$d)\n",
+            forked.sum(), pool.getStealCount(), pool.getParallelism(), cutoff);
+    }
+
+    /**
+     * A forked call, run on a child VM
+     */
+    private class CallTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Program program;
+        private final int function;
+        private final int[] args;
+        private final int depth;
+
+        CallTask(Program program, int function, int[] args, int depth) {
+            this.program = program;
+            this.function = function;
+            this.args = args;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Integer compute() {
+            // The function's own calls are nested one deeper than the call
+            if (depth + 1 >= cutoff)
+                return new VirtualMachine(sequential(program)).executeFunction(function, args);
+
+            VirtualMachine child = new VirtualMachine(program);
+            child.setForkJoinEvaluator(ForkJoinEvaluator.this, depth);
+            return child.executeFunction(function, args);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package interpreter;
+
+import interpreter.bytecodes.BranchCode;
+import interpreter.bytecodes.ByteCode;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+/**
+ * <pre>
+ *
+ *     Converts ByteCode files into program images, which the interpreter
+ *     runs without parsing or linking them:
+ *     1. Load and link the ByteCode file
+ *     2. Save the linked program as an image, with the source line of every
+ *        code if asked to
+ *
+ *     java interpreter.ImageConverter [-g] &lt;file&gt;.cod [&lt;image&gt;.xbc]
+ *
+ *     The image is saved next to the ByteCode file by default. Images can
+ *     also be listed, one code per line:
+ *
+ *     java interpreter.ImageConverter -list &lt;image&gt;.xbc
+ *
+ * </pre>
+ * @see interpreter.ProgramImage
+ * @author Enrique Gavidia
+ */
+public class ImageConverter {
+
+    /**
+     * Converts a ByteCode file into an image
+     * @param codeFile The ByteCode file
+     * @param imageFile File to save the image to
+     * @param lineTable true - record the source line of every code
+     * @return The converted program
+     * @throws IOException if the ByteCode file cannot be read, or the image written
+     * @throws IllegalArgumentException if the file is not a valid program
+     */
+    public static Program convert(File codeFile, File imageFile, boolean lineTable) throws IOException {
+        byte[] contents = Files.readAllBytes(codeFile.toPath());
+        ByteCodeLoader loader = new ByteCodeLoader(new ByteArrayInputStream(contents));
+        Program program = loader.loadCodes();
+        ProgramImage.write(program, lineTable ? loader.getLineTable() : new int[0],
+            contents.length, codeFile.lastModified(), ProgramImage.digest(contents), imageFile);
+        return program;
+    }
+
+    /**
+     * Lists the codes in an image, with their resolved targets and, if the
+     * image has them, their source lines
+     * @param image The image to list
+     * @param out Where the listing is written
+     */
+    public static void list(ProgramImage image, PrintStream out) {
+        Program program = image.getProgram();
+        out.println("; " + program.size() + " codes, from ByteCode file with SHA-256 "
+            + ProgramImage.toHex(image.getSourceHash()));
+        for (int address = 0; address < program.size(); address++) {
+            ByteCode code = program.getCode(address);
+            String line = image.hasLineTable() ? String.format("%5d  ", image.getSourceLine(address)) : "";
+            String target = code instanceof BranchCode ? " -> " + ((BranchCode) code).getTarget() : "";
+            out.printf("%1$6d  %2$s%3$s %4$s%5$s\n", address, line, code.getName(), code.getArgs(), target);
+        }
+    }
+
+    public static void main(String args[]) {
+        boolean lineTable = false;
+        boolean listing = false;
+        String input = null, output = null;
+        boolean validArgs = true;
+        for (String arg : args) {
+            if (arg.equals("-g"))
+                lineTable = true;
+            else if (arg.equals("-list"))
+                listing = true;
+            else if (arg.startsWith("-"))
+                validArgs = false;
+            else if (input == null)
+                input = arg;
+            else if (output == null)
+                output = arg;
+            else
+                validArgs = false;
+        }
+
+        if (input == null || !validArgs || (listing && (lineTable || output != null))) {
+            System.out.println("***Incorrect usage, try: java interpreter.ImageConverter [-g] <file>.cod [<image>.xbc]");
+            System.out.println("                     or: java interpreter.ImageConverter -list <image>.xbc");
+            System.exit(1);
+        }
+
+        try {
+            CodeTable.init();
+            if (listing) {
+                list(ProgramImage.open(new File(input)), System.out);
+                return;
+            }
+
+            File codeFile = new File(input);
+            File imageFile = output != null ? new File(output) : ProgramImage.imageFor(codeFile, null);
+            Program program = convert(codeFile, imageFile, lineTable);
+            System.out.println("****Converted " + program.size() + " codes into " + imageFile + "****");
+        } catch (IOException e) {
+            System.out.println("**** " + e);
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.out.println("**** " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
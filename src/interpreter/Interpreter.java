@@ -5,8 +5,13 @@ import interpreter.debugger.DebugByteCodeLoader;
 import interpreter.debugger.DebugVM;
 import interpreter.debugger.SourceLineEntry;
 import interpreter.debugger.ui.DebuggerUI;
+import interpreter.jit.JitCompiler;
+import interpreter.jit.TieredCompiler;
+import interpreter.optimizer.Optimizer;
 import java.io.*;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * <pre>
@@ -23,8 +28,33 @@ import java.util.List;
  * </pre>
  */
 public class Interpreter {
+    private static final long COMPILED_STACK_SIZE = 1L << 30;
+    // File name that stands for the standard input
+    public static final String STANDARD_INPUT = "-";
+
     private Boolean debugMode;
+    private boolean switchEngine;
+    private Optimizer optimizer;
+    private JitCompiler jit;
+    private int tierCallThreshold;
+    private int tierBackEdgeThreshold;
+    private boolean showTierLog;
+    private int memoCapacity = MemoCache.DEFAULT_CAPACITY;
+    private ForkJoinEvaluator forks;
+    private String batchFile;
+    private int batchWorkers;
+    private boolean showStats;
+    private BufferedReader input;
+    private PrintStream output = System.out;
+    private PrintStream errors = System.err;
+    private InputStream programInput;
+    private String codeFile;
     private ByteCodeLoader bcl;
+    private String loadError;
+    private ProgramCache programCache;
+    private boolean useImages;
+    private File imageDirectory;
+    private int parseThreads;
     private List<SourceLineEntry> sourceCode;
 
     public Interpreter(String codeFile, Boolean debug) {
@@ -38,39 +68,512 @@ public class Interpreter {
                 bcl = new DebugByteCodeLoader(codeFile);
                 sourceCode = SourceCodeLoader.load(sourceFile);
                 System.out.println("****Debugging " + sourceFile + "****");
-            } else {
-                // assumes full path name is given
-                bcl = new ByteCodeLoader(codeFile);
             }
+            // otherwise, assumes full path name is given
+            this.codeFile = codeFile;
 	} catch (IOException e) {
-            System.out.println("**** " + e);
+            loadError = "**** " + e;
 	}
     }
 
-    void run() {
-        Program program = bcl.loadCodes();
+    /**
+     * Selects the switch-dispatch engine instead of the default
+     * object-per-instruction VirtualMachine; ignored in debug mode
+     * @param useSwitch true - use the SwitchVirtualMachine
+     * @see interpreter.SwitchVirtualMachine
+     */
+    public void setSwitchEngine(boolean useSwitch) {
+        switchEngine = useSwitch;
+    }
+
+    /**
+     * Sets the optimizer to run over the program before it is executed;
+     * ignored in debug mode
+     * @param optimizer Optimizer with the desired passes enabled
+     * @see interpreter.optimizer.Optimizer
+     */
+    public void setOptimizer(Optimizer optimizer) {
+        this.optimizer = optimizer;
+    }
+
+    /**
+     * Sets the compiler that turns the program's functions into JVM bytecode
+     * after the optimizer has run; ignored in debug mode
+     * @param jit JIT compiler to use, or null to interpret every function
+     * @see interpreter.jit.JitCompiler
+     */
+    public void setJit(JitCompiler jit) {
+        this.jit = jit;
+    }
+
+    /**
+     * Enables tiered execution: functions start out interpreted, and are
+     * compiled once they get hot; ignored in debug mode
+     * @param callThreshold Calls after which a function is compiled, or 0 to
+     *                      disable tiered execution
+     * @param backEdgeThreshold Backward jumps inside a function after which
+     *                          it is compiled
+     * @see interpreter.jit.TieredCompiler
+     */
+    public void setTiering(int callThreshold, int backEdgeThreshold) {
+        tierCallThreshold = callThreshold;
+        tierBackEdgeThreshold = backEdgeThreshold;
+    }
+
+    /**
+     * Enables logging each promotion made by tiered execution to stderr
+     * @param doShow true - print the tier log
+     */
+    public void setShowTierLog(boolean doShow) {
+        showTierLog = doShow;
+    }
+
+    /**
+     * Sets how many results the memo cache holds, when the 'memo' pass is
+     * enabled; ignored in debug mode
+     * @param capacity Maximum number of cached results
+     * @see interpreter.MemoCache
+     */
+    public void setMemoCapacity(int capacity) {
+        memoCapacity = capacity;
+    }
+
+    /**
+     * Sets the evaluator that runs the calls forked by the 'fork' pass in
+     * parallel; ignored in debug mode
+     * @param forks Evaluator to use, or null to make forked calls sequentially
+     * @see interpreter.ForkJoinEvaluator
+     */
+    public void setForkJoinEvaluator(ForkJoinEvaluator forks) {
+        this.forks = forks;
+    }
+
+    /**
+     * Runs the program once per record of an input file, instead of once
+     * on the standard input; ignored in debug mode
+     * @param inputFile File with one record of inputs per line, or null to
+     *                  run the program once
+     * @param workers Number of records run at once
+     * @see interpreter.BatchRunner
+     */
+    public void setBatch(String inputFile, int workers) {
+        batchFile = inputFile;
+        batchWorkers = workers;
+    }
+
+    /**
+     * Enables printing the optimizer's and JIT compiler's statistics to stderr
+     * @param doShow true - print statistics
+     */
+    public void setShowStats(boolean doShow) {
+        showStats = doShow;
+    }
+
+    /**
+     * Sets the streams the program runs with, instead of the standard ones;
+     * ignored in debug mode
+     * @param input Where READ takes its input from
+     * @param output Where the program's output and errors are written
+     * @param errors Where statistics and the tier log are written
+     */
+    public void setStreams(BufferedReader input, PrintStream output, PrintStream errors) {
+        this.input = input;
+        this.output = output;
+        this.errors = errors;
+    }
+
+    /**
+     * Sets where the program is read from when its file is given as "-",
+     * instead of the standard input
+     * @param in Stream of ByteCode text, which may be gzip compressed
+     * @see interpreter.ByteCodeLoader#ByteCodeLoader(InputStream)
+     */
+    public void setProgramInput(InputStream in) {
+        programInput = in;
+    }
+
+    /**
+     * Sets the cache to take the program from, instead of loading it every
+     * time; ignored in debug mode
+     * @param cache Cache of linked programs, or null to always load the program
+     * @see interpreter.ProgramCache
+     */
+    public void setProgramCache(ProgramCache cache) {
+        programCache = cache;
+    }
+
+    /**
+     * Keeps a pre-linked image of the program on disk, so that later runs
+     * map the image instead of loading the program; with a cache, only when
+     * the program is not cached. Ignored in debug mode.
+     * @param useImages true - load the program through its image
+     * @param directory Directory images are kept in, or null to keep the
+     *                  image next to the program
+     * @see interpreter.ProgramImage
+     */
+    public void setProgramImages(boolean useImages, File directory) {
+        this.useImages = useImages;
+        imageDirectory = directory;
+    }
+
+    /**
+     * Parses the program's file on several threads at once, which only
+     * pays off for huge files; ignored in debug mode, and when the program
+     * is loaded from an image or the cache
+     * @param threads Number of threads, or 0 to parse the file sequentially
+     * @see interpreter.ByteCodeLoader#loadCodes(ForkJoinPool, int)
+     */
+    public void setParseThreads(int threads) {
+        parseThreads = threads;
+    }
+
+    /**
+     * Loads the program, and runs it as configured
+     */
+    public void run() {
+        if (loadError != null) {
+            output.println(loadError);
+            return;
+        }
+
+        Program program;
+        try {
+            program = loadProgram();
+        } catch (IOException e) {
+            output.println("**** " + e);
+            return;
+        } catch (IllegalArgumentException e) {
+            output.println("**** " + e.getMessage());
+            return;
+        }
+
         VirtualMachine vm;
         if (debugMode) {
+            if (optimizer != null)
+                program = optimizer.optimizeForDebugging(program);
             vm = new DebugVM(program, sourceCode);
             DebuggerUI.displayInterface((DebugVM) vm);
         } else {
-            vm = new VirtualMachine(program);
-            vm.executeProgram();
+            if (programCache != null && showStats)
+                errors.print(programCache.getStatistics());
+            if (optimizer != null) {
+                program = optimizer.optimize(program);
+                if (showStats)
+                    errors.print(optimizer.getStatistics());
+            }
+            if (jit != null) {
+                program = jit.compile(program);
+                if (showStats)
+                    errors.print(jit.getStatistics());
+            }
+
+            if (batchFile != null) {
+                runBatch(program);
+                return;
+            }
+
+            BufferedReader in = input != null ? input : VirtualMachine.standardInput();
+            if (switchEngine)
+                vm = new SwitchVirtualMachine(program, in, output);
+            else
+                vm = new VirtualMachine(program, in, output);
+
+            MemoCache memoCache = null;
+            if (optimizer != null && optimizer.isEnabled("memo")) {
+                memoCache = new MemoCache(memoCapacity);
+                vm.setMemoCache(memoCache);
+            }
+
+            if (forks != null)
+                vm.setForkJoinEvaluator(forks, 0);
+
+            TieredCompiler tiers = null;
+            if (tierCallThreshold > 0) {
+                tiers = new TieredCompiler(program, tierCallThreshold, tierBackEdgeThreshold);
+                if (showTierLog)
+                    tiers.setLog(errors);
+                vm.setTieredCompiler(tiers);
+            }
+
+            if (jit != null || tiers != null)
+                executeOnLargeStack(vm);
+            else
+                vm.executeProgram();
+
+            if (tiers != null && showStats)
+                errors.print(tiers.getStatistics());
+            if (memoCache != null && showStats)
+                errors.print(memoCache.getStatistics());
+            if (forks != null) {
+                forks.shutdown();
+                if (showStats)
+                    errors.print(forks.getStatistics());
+            }
         }
     }
 
-    public static void main(String args[]) {
-        if (args.length == 0) {
-            System.out.println("***Incorrect usage, try: java interpreter.Interpreter <file>");
-            System.exit(1);
+    /**
+     * Loads and links the program, from the cache or its image if enabled;
+     * the file may also be an image itself, or the standard input, which is
+     * never cached
+     * @return The linked program
+     * @throws IOException if the program's file cannot be read
+     */
+    private Program loadProgram() throws IOException {
+        if (debugMode)
+            return bcl.loadCodes();
+        if (codeFile.equals(STANDARD_INPUT))
+            return loadCodes(new ByteCodeLoader(programInput != null ? programInput : System.in));
+        if (programCache != null)
+            return programCache.load(Paths.get(codeFile), this::loadUncached);
+        if (ProgramImage.isImage(new File(codeFile)))
+            return ProgramImage.open(new File(codeFile)).getProgram();
+        if (useImages)
+            return ProgramImage.load(new File(codeFile), imageDirectory);
+        return loadCodes(new ByteCodeLoader(codeFile));
+    }
+
+    /**
+     * Loads a program the cache does not hold, through its image or on
+     * several threads if enabled, like it is loaded without a cache
+     * @param contents The contents of the program's file, which is not an image
+     * @return The linked program
+     * @throws IOException if the program's file cannot be read
+     */
+    private Program loadUncached(byte[] contents) throws IOException {
+        if (useImages)
+            return ProgramImage.load(new File(codeFile), imageDirectory);
+        return loadCodes(new ByteCodeLoader(new ByteArrayInputStream(contents)));
+    }
+
+    /**
+     * Parses and links ByteCode text, on several threads if enabled
+     * @param loader Loader over the program's text
+     * @return The linked program
+     */
+    private Program loadCodes(ByteCodeLoader loader) {
+        if (parseThreads == 0)
+            return loader.loadCodes();
+
+        ForkJoinPool pool = new ForkJoinPool(parseThreads);
+        try {
+            return loader.loadCodes(pool, ByteCodeLoader.DEFAULT_CHUNK_SIZE);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs the optimized program once per record of the batch file; tiered
+     * compilation is left out, since every record runs on a new VM
+     * @param program Program to run
+     */
+    private void runBatch(Program program) {
+        BatchRunner batch = new BatchRunner(program, switchEngine, batchWorkers);
+        if (jit != null)
+            batch.setThreadStackSize(COMPILED_STACK_SIZE);
+        if (optimizer != null && optimizer.isEnabled("memo"))
+            batch.setMemoCapacity(memoCapacity);
+        batch.setForkJoinEvaluator(forks);
+
+        try (BufferedReader records = new BufferedReader(new FileReader(batchFile))) {
+            batch.run(records, output);
+        } catch (IOException e) {
+            output.println("**** " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
 
-        Interpreter interpreter;
-        if (args[0].equals("-d"))
-            interpreter = new Interpreter(args[1], true);
-        else
-            interpreter = new Interpreter(args[0], false);
+        if (forks != null)
+            forks.shutdown();
+        if (showStats)
+            errors.print(batch.getStatistics());
+    }
 
+    /**
+     * Runs the VM on a thread with a large stack; compiled functions recurse
+     * on the JVM's own stack instead of the Runtime stack, so the default
+     * stack would limit how deep X programs can recurse
+     * @param vm Virtual Machine to run
+     */
+    private void executeOnLargeStack(VirtualMachine vm) {
+        // Failures are rethrown on the calling thread, as if it had run the VM
+        Throwable[] failure = new Throwable[1];
+        Runnable execution = () -> {
+            try {
+                vm.executeProgram();
+            } catch (RuntimeException | Error e) {
+                failure[0] = e;
+            }
+        };
+
+        Thread runner = new Thread(null, execution, "X-program", COMPILED_STACK_SIZE);
+        runner.start();
+        try {
+            runner.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failure[0] instanceof RuntimeException)
+            throw (RuntimeException) failure[0];
+        if (failure[0] instanceof Error)
+            throw (Error) failure[0];
+    }
+
+    /**
+     * Creates an interpreter configured by command line arguments
+     * @param args The arguments, as given to main
+     * @param usage Where to explain the correct usage if the arguments are wrong
+     * @return The configured interpreter, or null if the arguments are wrong
+     */
+    public static Interpreter fromArgs(String args[], PrintStream usage) {
+        boolean debug = false;
+        boolean useSwitch = false;
+        boolean stats = false;
+        boolean compile = false;
+        boolean tiered = false;
+        boolean tierLog = false;
+        int callThreshold = TieredCompiler.DEFAULT_CALL_THRESHOLD;
+        int backEdgeThreshold = TieredCompiler.DEFAULT_BACK_EDGE_THRESHOLD;
+        int memoCapacity = MemoCache.DEFAULT_CAPACITY;
+        int forkThreads = 0;
+        int forkCutoff = ForkJoinEvaluator.DEFAULT_CUTOFF;
+        String batchFile = null;
+        boolean images = false;
+        File imageDirectory = null;
+        int parseThreads = 0;
+        int batchWorkers = Runtime.getRuntime().availableProcessors();
+        boolean validArgs = true;
+        Optimizer optimizer = new Optimizer();
+        String file = null;
+        for (String arg : args) {
+            if (arg.equals("-d"))
+                debug = true;
+            else if (arg.equals("-switch"))
+                useSwitch = true;
+            else if (arg.equals("-O"))
+                optimizer.enableAll();
+            else if (arg.startsWith("-O"))
+                validArgs &= optimizer.enable(arg.substring(2));
+            else if (arg.equals("-jit"))
+                compile = true;
+            else if (arg.equals("-tier"))
+                tiered = true;
+            else if (arg.startsWith("-tier=")) {
+                // -tier=<calls>[,<back edges>]
+                tiered = true;
+                String[] thresholds = arg.substring(6).split(",");
+                try {
+                    callThreshold = Integer.parseInt(thresholds[0]);
+                    if (thresholds.length > 1)
+                        backEdgeThreshold = Integer.parseInt(thresholds[1]);
+                    validArgs &= thresholds.length <= 2 && callThreshold > 0 && backEdgeThreshold > 0;
+                } catch (NumberFormatException e) {
+                    validArgs = false;
+                }
+            }
+            else if (arg.equals("-tierlog"))
+                tierLog = true;
+            else if (arg.equals("-fork"))
+                forkThreads = Runtime.getRuntime().availableProcessors();
+            else if (arg.startsWith("-fork=")) {
+                // -fork=<threads>[,<cutoff>]
+                String[] settings = arg.substring(6).split(",");
+                try {
+                    forkThreads = Integer.parseInt(settings[0]);
+                    if (settings.length > 1)
+                        forkCutoff = Integer.parseInt(settings[1]);
+                    validArgs &= settings.length <= 2 && forkThreads > 0 && forkCutoff >= 0;
+                } catch (NumberFormatException e) {
+                    validArgs = false;
+                }
+            }
+            else if (arg.startsWith("-batch="))
+                batchFile = arg.substring(7);
+            else if (arg.startsWith("-workers=")) {
+                try {
+                    batchWorkers = Integer.parseInt(arg.substring(9));
+                    validArgs &= batchWorkers > 0;
+                } catch (NumberFormatException e) {
+                    validArgs = false;
+                }
+            }
+            else if (arg.startsWith("-nomemo=")) {
+                // -nomemo=<function>[,<function>...]
+                for (String funcName : arg.substring(8).split(","))
+                    optimizer.excludeFromMemoization(funcName);
+            }
+            else if (arg.startsWith("-memosize=")) {
+                try {
+                    memoCapacity = Integer.parseInt(arg.substring(10));
+                    validArgs &= memoCapacity > 0;
+                } catch (NumberFormatException e) {
+                    validArgs = false;
+                }
+            }
+            else if (arg.equals("-image"))
+                images = true;
+            else if (arg.startsWith("-image=")) {
+                images = true;
+                imageDirectory = new File(arg.substring(7));
+            }
+            else if (arg.equals("-parse"))
+                parseThreads = Runtime.getRuntime().availableProcessors();
+            else if (arg.startsWith("-parse=")) {
+                try {
+                    parseThreads = Integer.parseInt(arg.substring(7));
+                    validArgs &= parseThreads > 0;
+                } catch (NumberFormatException e) {
+                    validArgs = false;
+                }
+            }
+            else if (arg.equals("-stats"))
+                stats = true;
+            else if (arg.equals(STANDARD_INPUT))
+                file = arg;
+            else if (arg.startsWith("-"))
+                validArgs = false;
+            else
+                file = arg;
+        }
+
+        if (file == null || !validArgs) {
+            usage.println("***Incorrect usage, try: java interpreter.Interpreter [-switch] [-O | -O<pass>...] [-jit] [-tier[=<calls>[,<loops>]] [-tierlog]]");
+            usage.println("                                                     [-fork[=<threads>[,<cutoff>]]] [-batch=<inputs> [-workers=<n>]]");
+            usage.println("                                                     [-image[=<directory>]] [-parse[=<threads>]] [-stats] <file>");
+            usage.println("                         (passes: " + optimizer.getPassNames() + "; memo is only run by -Omemo,");
+            usage.println("                          tuned by -nomemo=<function>[,<function>...] and -memosize=<entries>,");
+            usage.println("                          and fork by -fork; <file> may be gzip compressed, or - to read");
+            usage.println("                          the program from the standard input)");
+            usage.println("                     or: java interpreter.Interpreter -d [-Otail] <program>");
+            return null;
+        }
+
+        Interpreter interpreter = new Interpreter(file, debug);
+        interpreter.setSwitchEngine(useSwitch);
+        interpreter.setOptimizer(optimizer);
+        if (compile)
+            interpreter.setJit(new JitCompiler());
+        if (tiered)
+            interpreter.setTiering(callThreshold, backEdgeThreshold);
+        interpreter.setShowTierLog(tierLog);
+        interpreter.setMemoCapacity(memoCapacity);
+        interpreter.setBatch(batchFile, batchWorkers);
+        if (forkThreads > 0) {
+            optimizer.enable("fork");
+            interpreter.setForkJoinEvaluator(new ForkJoinEvaluator(forkThreads, forkCutoff));
+        }
+        interpreter.setProgramImages(images, imageDirectory);
+        interpreter.setParseThreads(parseThreads);
+        interpreter.setShowStats(stats);
+        return interpreter;
+    }
+
+    public static void main(String args[]) {
+        Interpreter interpreter = fromArgs(args, System.out);
+        if (interpreter == null)
+            System.exit(1);
         interpreter.run();
     }
-}
\ No newline at end of file
+}
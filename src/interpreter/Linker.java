@@ -0,0 +1,75 @@
+package interpreter;
+
+import interpreter.bytecodes.BranchCode;
+import interpreter.bytecodes.ByteCode;
+import interpreter.bytecodes.Opcode;
+import java.util.HashMap;
+import java.util.List;
+
+
+/**
+ * Links loaded ByteCodes into a Program, by binding every branch to the
+ * address of the LABEL it refers to
+ * @see interpreter.Program
+ * @author Enrique Gavidia
+ */
+public class Linker {
+    private Linker() {}
+
+    /**
+     * Resolves the addresses of all the branches in the given codes, and
+     * produces the linked Program
+     * @param codes ByteCodes in the order they were loaded
+     * @return The linked Program
+     * @throws IllegalArgumentException if a branch refers to a label that does not exist
+     */
+    public static Program link(List<ByteCode> codes) {
+        ByteCode[] linked = codes.toArray(new ByteCode[codes.size()]);
+
+        // Find the address of every LABEL in one pass; if a label is declared
+        // more than once, the first declaration wins
+        HashMap<String, Integer> labels = new HashMap<String, Integer>();
+        for (int index = 0; index < linked.length; index++)
+            if (linked[index].getOpcode() == Opcode.LABEL)
+                labels.putIfAbsent(linked[index].getArgs(), index);
+
+        for (int index = 0; index < linked.length; index++) {
+            if (!(linked[index] instanceof BranchCode))
+                continue;
+
+            BranchCode branch = (BranchCode) linked[index];
+            Integer address = labels.get(branch.getLabel());
+            if (address == null)
+                throw new IllegalArgumentException("Unresolved label '" + branch.getLabel()
+                        + "' referenced by " + branch.getName() + " at instruction " + index);
+
+            if (branch.entersLabel())
+                linked[index] = branch.resolve(address);
+            else
+                linked[index] = branch.resolve(address + 1);
+        }
+
+        return new Program(linked);
+    }
+
+    /**
+     * Produces a Program out of codes rewritten from an already linked Program,
+     * moving every branch to the new address of its target
+     * @param codes The rewritten ByteCodes; branches still hold the targets
+     *              they had in the original program
+     * @param newAddresses Maps each address of the original program, plus its
+     *                     size, to the corresponding address in 'codes'
+     * @return The relinked Program
+     */
+    public static Program relink(List<ByteCode> codes, int[] newAddresses) {
+        ByteCode[] linked = codes.toArray(new ByteCode[codes.size()]);
+        for (int index = 0; index < linked.length; index++) {
+            if (linked[index] instanceof BranchCode) {
+                BranchCode branch = (BranchCode) linked[index];
+                linked[index] = branch.resolve(newAddresses[branch.getTarget()]);
+            }
+        }
+
+        return new Program(linked);
+    }
+}
@@ -0,0 +1,199 @@
+package interpreter;
+
+import interpreter.bytecodes.BranchCode;
+import interpreter.bytecodes.ByteCode;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * <pre>
+ *
+ *     Measures how loading a huge ByteCode file scales with the number of
+ *     threads parsing it:
+ *     1. Optionally, generate a synthetic program of the given size
+ *     2. Load the file sequentially, for the expected program
+ *     3. Load it the way the loader used to, creating every code by
+ *        reflection from its class name, and compare it with the registry
+ *     4. Load it in parallel on each number of threads, checking that every
+ *        load gives the same program
+ *
+ *     java interpreter.LoadBenchmark [-generate=&lt;codes&gt;] &lt;file&gt; [threads...]
+ *
+ *     Thread counts default to 1, 2, 4... up to the number of processors.
+ *
+ * </pre>
+ * @see interpreter.ByteCodeLoader#loadCodes(ForkJoinPool, int)
+ * @author Enrique Gavidia
+ */
+public class LoadBenchmark {
+    private static final int ROUNDS = 3;
+
+    /**
+     * Writes a runnable program of about the given number of codes: a
+     * chain of blocks that each update a variable through a function call,
+     * then branch to the next block
+     * @param file Path of the file to write
+     * @param codes Approximate number of codes
+     * @throws IOException if the file cannot be written
+     */
+    public static void generate(String file, int codes) throws IOException {
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file), 1 << 16))) {
+            out.println("GOTO start<<1>>");
+            out.println("LABEL inc<<2>>");
+            out.println("LOAD 0 n");
+            out.println("LIT 1");
+            out.println("BOP +");
+            out.println("RETURN inc<<2>>");
+            out.println("LABEL start<<1>>");
+            out.println("LIT 0 x");
+
+            int blocks = codes / 11;
+            for (int block = 0; block < blocks; block++) {
+                out.println("LABEL block<<" + block + ">>");
+                out.println("LOAD 0 x");
+                out.println("LIT " + (block % 7) + " d");
+                out.println("BOP +");
+                out.println("STORE 0 x");
+                out.println("LOAD 0 x");
+                out.println("ARGS 1");
+                out.println("CALL inc<<2>>");
+                out.println("STORE 0 x");
+                out.println("LIT 0");
+                out.println("FALSEBRANCH block<<" + (block + 1) + ">>");
+            }
+
+            out.println("LABEL block<<" + blocks + ">>");
+            out.println("LOAD 0 x");
+            out.println("WRITE");
+            out.println("HALT");
+        }
+    }
+
+    /**
+     * Loads a file the way ByteCodeLoader did before the CodeTable became a
+     * registry: every line is split with a regex, and its code is created
+     * by reflection from the class name derived from the ByteCode's name.
+     * Codes with no class among the plain ByteCodes are left out, like the
+     * loader leaves out the debugger's.
+     * @param file Path of the file to load
+     * @return The program loaded
+     * @throws IOException if the file cannot be read
+     */
+    public static Program loadReflectively(String file) throws IOException {
+        List<ByteCode> codes = new ArrayList<ByteCode>();
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            for (String line; (line = in.readLine()) != null; ) {
+                String[] code = line.split("\\s", 2);
+                if (code[0].isEmpty())
+                    continue;
+
+                String codeClass = "interpreter.bytecodes." + code[0].charAt(0)
+                                 + code[0].substring(1).toLowerCase() + "Code";
+                ByteCode bytecode;
+                try {
+                    bytecode = (ByteCode) Class.forName(codeClass).getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException e) {
+                    continue;
+                }
+                bytecode.init(code.length > 1 ? code[1] : "");
+                codes.add(bytecode);
+            }
+        }
+        return Linker.link(codes);
+    }
+
+    /**
+     * Tells whether two loaded programs are the same, code by code
+     */
+    private static boolean same(Program expected, Program actual) {
+        if (expected.size() != actual.size())
+            return false;
+        for (int index = 0; index < expected.size(); index++) {
+            ByteCode a = expected.getCode(index), b = actual.getCode(index);
+            if (a.getClass() != b.getClass() || !a.getArgs().equals(b.getArgs()))
+                return false;
+            if (a instanceof BranchCode && ((BranchCode) a).getTarget() != ((BranchCode) b).getTarget())
+                return false;
+        }
+        return true;
+    }
+
+    public static void main(String args[]) throws IOException {
+        int generated = 0;
+        String file = null;
+        List<Integer> threadCounts = new ArrayList<Integer>();
+        boolean validArgs = true;
+        for (String arg : args) {
+            try {
+                if (arg.startsWith("-generate="))
+                    generated = Integer.parseInt(arg.substring(10));
+                else if (arg.startsWith("-"))
+                    validArgs = false;
+                else if (file == null)
+                    file = arg;
+                else
+                    threadCounts.add(Integer.parseInt(arg));
+            } catch (NumberFormatException e) {
+                validArgs = false;
+            }
+        }
+
+        if (file == null || !validArgs) {
+            System.out.println("***Incorrect usage, try: java interpreter.LoadBenchmark [-generate=<codes>] <file> [threads...]");
+            System.exit(1);
+        }
+        if (threadCounts.isEmpty())
+            for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2)
+                threadCounts.add(threads);
+
+        CodeTable.init();
+        if (generated > 0) {
+            generate(file, generated);
+            System.out.println("generated " + file);
+        }
+
+        Program expected = null;
+        double sequential = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            // Let the last round's program be collected first
+            expected = null;
+            long start = System.nanoTime();
+            expected = new ByteCodeLoader(file).loadCodes();
+            sequential = Math.min(sequential, (System.nanoTime() - start) / 1e6);
+        }
+        System.out.printf("sequential: %1$d codes in %2$.0fms\n", expected.size(), sequential);
+
+        double reflective = Double.MAX_VALUE;
+        boolean reflectiveMatches = true;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            Program program = loadReflectively(file);
+            reflective = Math.min(reflective, (System.nanoTime() - start) / 1e6);
+            reflectiveMatches &= same(expected, program);
+        }
+        System.out.printf("reflective: %1$.0fms (%2$.2fx registry), %3$s\n",
+            reflective, reflective / sequential, reflectiveMatches ? "same program" : "DIFFERENT PROGRAM");
+
+        for (int threads : threadCounts) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            double best = Double.MAX_VALUE;
+            boolean matches = true;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                Program program = new ByteCodeLoader(file).loadCodes(pool, ByteCodeLoader.DEFAULT_CHUNK_SIZE);
+                best = Math.min(best, (System.nanoTime() - start) / 1e6);
+                matches &= same(expected, program);
+            }
+            pool.shutdown();
+            System.out.printf("%1$d threads: %2$.0fms (%3$.2fx sequential), %4$s\n",
+                threads, best, sequential / best, matches ? "same program" : "DIFFERENT PROGRAM");
+        }
+    }
+}
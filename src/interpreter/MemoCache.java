@@ -0,0 +1,220 @@
+package interpreter;
+
+import java.util.Arrays;
+
+
+/**
+ * Bounded cache of the results of pure function calls, keyed by the called
+ * function and its arguments. Keys and values are kept in flat int arrays,
+ * looked up through an open addressing hash table; once the cache is full,
+ * entries are evicted with the CLOCK algorithm, which gives recently used
+ * entries a second chance.
+ * <p>
+ * A lookup that misses leaves its key on a stack of pending calls; the
+ * result of the call is stored under that key once the function returns.
+ * @see interpreter.optimizer.MemoizationPass
+ * @author Enrique Gavidia
+ */
+public class MemoCache {
+    public static final int MAX_ARITY = 4;
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    // Each key holds the function's entry address, then its arguments
+    private static final int KEY_WIDTH = MAX_ARITY + 1;
+
+    private final int capacity;
+    private final int[] keys;
+    private final int[] values;
+    private final boolean[] referenced;
+    private int used;
+    private int hand;
+
+    // Hash table from keys to their slot plus one; 0 marks an empty bucket
+    private final int[] buckets;
+    private final int mask;
+
+    private final int[] probe = new int[KEY_WIDTH];
+    private int[] pending = new int[KEY_WIDTH * 64];
+    private int pendingTop;
+    private int value;
+
+    private long hits, misses, evictions;
+
+    /**
+     * Creates an empty cache
+     * @param capacity Maximum number of results the cache holds
+     */
+    public MemoCache(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("memo cache capacity must be positive");
+
+        this.capacity = capacity;
+        this.keys = new int[capacity * KEY_WIDTH];
+        this.values = new int[capacity];
+        this.referenced = new boolean[capacity];
+        this.buckets = new int[Integer.highestOneBit(capacity) << 2];
+        this.mask = buckets.length - 1;
+    }
+
+    /**
+     * Looks up the result of calling a function with the arguments on top of
+     * the stack. If there is none, the call is remembered as pending, so that
+     * its result can be stored once the function returns.
+     * @param function Entry address of the called function
+     * @param stack Stack holding the arguments
+     * @param numOfArgs Number of arguments, at most MAX_ARITY
+     * @return true - if the result is cached, and available from getValue()
+     */
+    public boolean lookup(int function, RunTimeStack stack, int numOfArgs) {
+        probe[0] = function;
+        int base = stack.size() - numOfArgs;
+        for (int i = 0; i < MAX_ARITY; i++)
+            probe[i + 1] = i < numOfArgs ? stack.elementAt(base + i) : 0;
+
+        int slot = find();
+        if (slot >= 0) {
+            referenced[slot] = true;
+            value = values[slot];
+            hits++;
+            return true;
+        }
+
+        misses++;
+        if (pendingTop == pending.length)
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        System.arraycopy(probe, 0, pending, pendingTop, KEY_WIDTH);
+        pendingTop += KEY_WIDTH;
+        return false;
+    }
+
+    /**
+     * Gets the result found by the last successful lookup
+     * @return Cached result
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Stores the result of the most recent pending call
+     * @param result Value the function returned
+     */
+    public void store(int result) {
+        pendingTop -= KEY_WIDTH;
+        System.arraycopy(pending, pendingTop, probe, 0, KEY_WIDTH);
+
+        int slot = find();
+        if (slot < 0) {
+            slot = allocate();
+            System.arraycopy(probe, 0, keys, slot * KEY_WIDTH, KEY_WIDTH);
+            int bucket = hash(probe, 0) & mask;
+            while (buckets[bucket] != 0)
+                bucket = (bucket + 1) & mask;
+            buckets[bucket] = slot + 1;
+        }
+        values[slot] = result;
+    }
+
+    //----{ Hash Table }--------------------------------------------------------
+
+    /**
+     * Finds the slot holding the key in 'probe'
+     * @return The slot, or -1 if the key is not cached
+     */
+    private int find() {
+        int bucket = hash(probe, 0) & mask;
+        while (buckets[bucket] != 0) {
+            int slot = buckets[bucket] - 1;
+            if (matches(slot))
+                return slot;
+            bucket = (bucket + 1) & mask;
+        }
+        return -1;
+    }
+
+    private boolean matches(int slot) {
+        int start = slot * KEY_WIDTH;
+        for (int i = 0; i < KEY_WIDTH; i++)
+            if (keys[start + i] != probe[i])
+                return false;
+        return true;
+    }
+
+    private static int hash(int[] key, int start) {
+        int hash = 0;
+        for (int i = start; i < start + KEY_WIDTH; i++)
+            hash = (hash + key[i]) * 0x9E3779B1;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Gets a free slot, evicting an entry if the cache is full
+     * @return Slot for a new entry
+     */
+    private int allocate() {
+        if (used < capacity)
+            return used++;
+
+        // Sweep past recently used entries, clearing their reference bits
+        while (referenced[hand]) {
+            referenced[hand] = false;
+            hand = (hand + 1) % capacity;
+        }
+        int slot = hand;
+        hand = (hand + 1) % capacity;
+
+        remove(slot);
+        evictions++;
+        return slot;
+    }
+
+    /**
+     * Removes a slot from the hash table, moving back the entries that were
+     * displaced past it so that lookups still find them
+     */
+    private void remove(int slot) {
+        int hole = hash(keys, slot * KEY_WIDTH) & mask;
+        while (buckets[hole] != slot + 1)
+            hole = (hole + 1) & mask;
+
+        int bucket = hole;
+        while (true) {
+            bucket = (bucket + 1) & mask;
+            if (buckets[bucket] == 0)
+                break;
+
+            // An entry can fill the hole unless its home bucket lies
+            // cyclically between the hole and where the entry is now
+            int home = hash(keys, (buckets[bucket] - 1) * KEY_WIDTH) & mask;
+            boolean between = hole <= bucket ? (hole < home && home <= bucket) : (hole < home || home <= bucket);
+            if (!between) {
+                buckets[hole] = buckets[bucket];
+                hole = bucket;
+            }
+        }
+        buckets[hole] = 0;
+    }
+
+    //----{ Statistics }--------------------------------------------------------
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Summarizes how well the cache did
+     * @return Formatted statistics
+     */
+    public String getStatistics() {
+        return String.format("memo: %1$d hits, %2$d misses, %3$d evictions, %4$d of %5$d entries used\n",
+            hits, misses, evictions, used, capacity);
+    }
+}
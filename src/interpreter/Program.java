@@ -1,47 +1,47 @@
 package interpreter;
 
 import interpreter.bytecodes.ByteCode;
-import java.util.List;
-import java.util.Vector;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Map;
+import java.util.function.IntFunction;
 
 
 /**
  * Produces an object containing all the actual ByteCodes specified by the original
- * file input to the ByteCodeLoader object
+ * file input to the ByteCodeLoader object. A Program is created already linked
+ * by the Linker, and is never modified afterwards. A program mapped from an
+ * image only decodes each of its codes the first time it is fetched.
+ * @see interpreter.Linker
+ * @see interpreter.ProgramImage
  * @author Enrique Gavidia
  */
 public class Program {
-    private int codeNum;
-    private List<ByteCode> codes;
-    private List<Integer> labelIndexList;
-    private List<Integer> codesToResolveIndexList;
+    // Decoded codes are published with release/acquire ordering, since
+    // any number of VMs may be fetching them at once
+    private static final VarHandle CODES = MethodHandles.arrayElementVarHandle(ByteCode[].class);
+
+    private final ByteCode[] codes;
+    private final IntFunction<ByteCode> decoder;
 
     /**
-     * Starts a new program
+     * Creates a program out of linked ByteCodes
+     * @param codes The program's ByteCodes, with all their addresses resolved
      */
-    public Program() {
-        codeNum = 0;
-        codes = new Vector<ByteCode>();
-        labelIndexList = new Vector<Integer>();
-        codesToResolveIndexList = new Vector<Integer>();
+    Program(ByteCode[] codes) {
+        this.codes = codes;
+        this.decoder = null;
     }
 
     /**
-     * Adds a Bytecode object to the program
-     * @param bytecode
+     * Creates a program whose codes are decoded as they are fetched
+     * @param size Number of ByteCodes in the program
+     * @param decoder Decodes the linked ByteCode at a given address; it may
+     *                be called more than once for the same address
      */
-    public void addCode(ByteCode bytecode) {
-        String codeName = bytecode.getName();
-
-        // Keep track of where all the LABEL codes are located for future
-        // reference when resolving addresses
-        if (codeName.matches("LABEL"))
-            labelIndexList.add(codeNum);
-        else if (codeName.matches("FALSEBRANCH|GOTO|CALL|RETURN"))
-            codesToResolveIndexList.add(codeNum);
-
-        codes.add(bytecode);
-        codeNum += 1;
+    Program(int size, IntFunction<ByteCode> decoder) {
+        this.codes = new ByteCode[size];
+        this.decoder = decoder;
     }
 
     /**
@@ -50,35 +50,37 @@ public class Program {
      * @return ByteCode at the given index
      */
     public ByteCode getCode(int codeNum) {
-        return codes.get(codeNum);
+        if (decoder == null)
+            return codes[codeNum];
+
+        ByteCode code = (ByteCode) CODES.getAcquire(codes, codeNum);
+        if (code == null) {
+            code = decoder.apply(codeNum);
+            CODES.setRelease(codes, codeNum, code);
+        }
+        return code;
     }
 
     /**
-     * Used to find the specific addresses of LABELs that certain ByteCodes refer to
+     * Gets the number of ByteCodes in the program
+     * @return Number of ByteCodes
      */
-    public void resolveAddresses() {
-        // Iterate only through the codes that need to have their addresses resolved
-        for (int codeIndex : codesToResolveIndexList) {
-            ByteCode code = codes.get(codeIndex);
-            String targetLabel = code.getArgs();
-
-            // For each one, look up the corresponding LABEL Code in the program
-            for (int labelIndex : labelIndexList) {
-                String label = codes.get(labelIndex).getArgs();
+    public int size() {
+        return codes.length;
+    }
 
-                // Once the right LABEL Code is found, initiate the requested
-                // bytecode again with the resolved address, and break out of
-                // the loop to prevent unnecessary iteration
-                if (label.matches(targetLabel)) {
-                    String address = Integer.toString(labelIndex);
-                    String arg = code.getArgs() + " " + address;
-                    code.init(arg);
-                    codes.set(codeIndex, code);
-                    break;
-                }
-            }
-        }
-        
-        
+    /**
+     * Creates a copy of the program with some of its codes replaced; the
+     * program itself is left untouched
+     * @param patches Maps addresses to the codes that replace the ones there
+     * @return The patched copy of the program
+     */
+    public Program patch(Map<Integer, ByteCode> patches) {
+        ByteCode[] patched = new ByteCode[codes.length];
+        for (int index = 0; index < codes.length; index++)
+            patched[index] = getCode(index);
+        for (Map.Entry<Integer, ByteCode> patch : patches.entrySet())
+            patched[patch.getKey()] = patch.getValue();
+        return new Program(patched);
     }
 }
@@ -0,0 +1,200 @@
+package interpreter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Keeps linked Programs in memory, so that a long running interpreter only
+ * parses and links each ByteCode file once. Programs are keyed by a hash of
+ * their file's contents; a file whose size and modification time have not
+ * changed since it was last loaded is not even read again. Once the
+ * estimated size of the cached programs exceeds the memory budget, the
+ * least recently used ones are evicted.
+ * <p>
+ * Programs are never modified once linked, so the same cached Program can
+ * be run by any number of VMs at once.
+ * @author Enrique Gavidia
+ */
+public class ProgramCache {
+    public static final long DEFAULT_BUDGET = 64L << 20;
+
+    // Rough size of a linked ByteCode: the object, its arguments, and its
+    // slot in the Program
+    private static final int BYTES_PER_CODE = 64;
+
+    private final long budget;
+
+    // Cached programs by content hash, least recently used first
+    private final LinkedHashMap<String, Entry> programs = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    // What each file held when it was last loaded
+    private final Map<Path, FileState> files = new HashMap<Path, FileState>();
+
+    private long bytesHeld;
+    private long hits, fastHits, misses, evictions;
+
+    private static class Entry {
+        final Program program;
+        final long bytes;
+
+        Entry(Program program, long bytes) {
+            this.program = program;
+            this.bytes = bytes;
+        }
+    }
+
+    private static class FileState {
+        final long size;
+        final long modified;
+        final String hash;
+
+        FileState(long size, long modified, String hash) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Loads a program the cache does not hold yet
+     */
+    public interface Loader {
+        /**
+         * @param contents The contents of the ByteCode file
+         * @return The linked program
+         * @throws IOException if a file the loader uses cannot be read
+         * @throws IllegalArgumentException if the file is not a valid program
+         */
+        Program load(byte[] contents) throws IOException;
+    }
+
+    /**
+     * @param budget Estimated number of bytes the cached programs may take up
+     */
+    public ProgramCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Gets the linked program in the given file, loading it if it is not cached
+     * @param file Path of the ByteCode file
+     * @return The linked program
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a valid program
+     * @see interpreter.ByteCodeLoader#loadCodes()
+     * @see interpreter.ProgramImage
+     */
+    public Program load(Path file) throws IOException {
+        return load(file, contents -> new ByteCodeLoader(new ByteArrayInputStream(contents)).loadCodes());
+    }
+
+    /**
+     * Gets the linked program in the given file, loading it with the given
+     * loader if it is not cached; a file that is an image itself is always
+     * opened as one
+     * @param file Path of the ByteCode file
+     * @param loader Loads the program on a miss
+     * @return The linked program
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a valid program
+     * @see interpreter.ProgramImage
+     */
+    public Program load(Path file, Loader loader) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+
+        synchronized (this) {
+            FileState state = files.get(key);
+            if (state != null && state.size == size && state.modified == modified) {
+                Entry entry = programs.get(state.hash);
+                if (entry != null) {
+                    hits++;
+                    fastHits++;
+                    return entry.program;
+                }
+            }
+        }
+
+        // The file is new or has changed; its contents may still be cached
+        // under another name
+        byte[] contents = Files.readAllBytes(key);
+        String hash = ProgramImage.toHex(ProgramImage.digest(contents));
+        synchronized (this) {
+            files.put(key, new FileState(size, modified, hash));
+            Entry entry = programs.get(hash);
+            if (entry != null) {
+                hits++;
+                return entry.program;
+            }
+        }
+
+        Program program = ProgramImage.isImage(contents)
+            ? ProgramImage.open(contents).getProgram()
+            : loader.load(contents);
+        synchronized (this) {
+            misses++;
+            if (!programs.containsKey(hash)) {
+                Entry entry = new Entry(program, contents.length + (long) BYTES_PER_CODE * program.size());
+                programs.put(hash, entry);
+                bytesHeld += entry.bytes;
+                evict();
+            }
+        }
+        return program;
+    }
+
+    /**
+     * Evicts the least recently used programs until the cache is within its
+     * budget; the most recent program is kept even if it alone exceeds it
+     */
+    private void evict() {
+        if (bytesHeld <= budget)
+            return;
+
+        Iterator<Entry> lru = programs.values().iterator();
+        while (bytesHeld > budget && programs.size() > 1) {
+            bytesHeld -= lru.next().bytes;
+            lru.remove();
+            evictions++;
+        }
+        // Forget the files whose programs are gone
+        files.values().removeIf(state -> !programs.containsKey(state.hash));
+    }
+
+    //----{ Statistics }--------------------------------------------------------
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getBytesHeld() {
+        return bytesHeld;
+    }
+
+    /**
+     * Summarizes how well the cache did
+     * @return Formatted statistics
+     */
+    public synchronized String getStatistics() {
+        return String.format("cache: %1$d hits (%2$d by modification time), %3$d misses, %4$d evictions,"
+            + " %5$d programs in %6$d of %7$d bytes\n",
+            hits, fastHits, misses, evictions, programs.size(), bytesHeld, budget);
+    }
+}
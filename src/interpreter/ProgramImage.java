@@ -0,0 +1,502 @@
+package interpreter;
+
+import interpreter.bytecodes.BranchCode;
+import interpreter.bytecodes.ByteCode;
+import interpreter.bytecodes.Opcode;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Binary form of a linked Program, stored in .xbc files. An image can be
+ * run directly, or kept next to the ByteCode file it was made from so that
+ * later runs load the image instead of parsing and linking the file again.
+ * An image holds, with every number a big-endian int or long:
+ * <pre>
+ *     header         magic, format version, the size, modification time and
+ *                    SHA-256 hash of the ByteCode file, and the number of
+ *                    entries in each of the sections below
+ *     opcode table   names of the opcodes the image uses
+ *     constant pool  every distinct argument string: labels, identifiers
+ *                    and literals
+ *     code table     every distinct ByteCode, without its target: its
+ *                    opcode's index in the opcode table, and its arguments'
+ *                    index in the constant pool
+ *     program        one entry per ByteCode: its index in the code table,
+ *                    and its resolved target, if it is a branch
+ *     line table     optional; the address of the first code of each source
+ *                    line, and the line's number, by address
+ * </pre>
+ * Names and strings are stored as their length followed by their UTF-8
+ * bytes; every other entry is fixed-width, so the program is decoded one
+ * code at a time, as it is fetched. Each distinct ByteCode is only initiated
+ * once, and shared by every place it appears in; ByteCodes keep no state of
+ * their own while executing, so they can be shared like a program is.
+ * Opcodes are stored by name, so an image stays valid when opcodes are added.
+ * <p>
+ * Large images are mapped rather than read, and are decoded straight from
+ * the mapping. Only the header and the tables of names and strings are
+ * checked when an image is opened; a code that is corrupt only fails once
+ * it is fetched.
+ * @see interpreter.Linker
+ * @author Enrique Gavidia
+ */
+public class ProgramImage {
+    public static final int MAGIC = 0x58424331;     // "XBC1"
+    public static final int VERSION = 2;
+    public static final String EXTENSION = ".xbc";
+
+    private static final int HASH_SIZE = 32;
+    private static final int ENTRY_SIZE = 8;
+    private static final int NO_TARGET = -1;
+
+    // Smaller images are read rather than mapped; mapping only pays off
+    // once copying the image costs more than setting up the mapping
+    private static final int MAP_THRESHOLD = 1 << 18;
+
+    // Code table entries are published with release/acquire ordering, since
+    // any number of VMs may be decoding the program at once
+    private static final VarHandle TABLE = MethodHandles.arrayElementVarHandle(ByteCode[].class);
+
+    private final ByteBuffer buffer;
+    private final long sourceSize;
+    private final long sourceModified;
+    private final byte[] sourceHash = new byte[HASH_SIZE];
+    private final Opcode[] opcodes;
+    private final String[] constants;
+    private final ByteCode[] table;
+    private final int tableStart;
+    private final int programStart;
+    private final int linesStart;
+    private final int lineCount;
+    private final Program program;
+
+    /**
+     * Decodes the header and tables of an image
+     * @param buffer The whole image
+     * @throws IllegalArgumentException if the buffer does not hold a valid image
+     */
+    private ProgramImage(ByteBuffer buffer) {
+        this.buffer = buffer;
+        int programSize;
+        try {
+            if (buffer.getInt() != MAGIC)
+                throw new IllegalArgumentException("Not a program image");
+            int version = buffer.getInt();
+            if (version != VERSION)
+                throw new IllegalArgumentException("Unsupported program image version " + version);
+            sourceSize = buffer.getLong();
+            sourceModified = buffer.getLong();
+            buffer.get(sourceHash);
+            // Every count is checked against what is left of the image
+            // before anything is allocated for it
+            opcodes = new Opcode[readCount(buffer, 4)];
+            constants = new String[readCount(buffer, 4)];
+            table = new ByteCode[readCount(buffer, ENTRY_SIZE)];
+            programSize = readCount(buffer, ENTRY_SIZE);
+            lineCount = readCount(buffer, ENTRY_SIZE);
+
+            for (int i = 0; i < opcodes.length; i++) {
+                String name = readString(buffer);
+                opcodes[i] = CodeTable.get(name);
+                if (opcodes[i] == null || opcodes[i].isDebugInfo())
+                    throw new IllegalArgumentException("Unknown ByteCode '" + name + "' in program image");
+            }
+            for (int i = 0; i < constants.length; i++)
+                constants[i] = readString(buffer);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated program image");
+        }
+
+        // Each count fits in the image on its own, but their sum may not
+        tableStart = buffer.position();
+        long programOffset = tableStart + (long) table.length * ENTRY_SIZE;
+        long linesOffset = programOffset + (long) programSize * ENTRY_SIZE;
+        if (linesOffset + (long) lineCount * ENTRY_SIZE != buffer.limit())
+            throw new IllegalArgumentException("Truncated program image");
+        programStart = (int) programOffset;
+        linesStart = (int) linesOffset;
+        program = new Program(programSize, this::decode);
+    }
+
+    //----{ Opening }-----------------------------------------------------------
+
+    /**
+     * Tells whether a file holds a program image, rather than ByteCode text
+     * @param file File to check
+     * @return true - if the file starts like an image; false - otherwise
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isImage(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return file.length() >= 4 && in.readInt() == MAGIC;
+        }
+    }
+
+    /**
+     * Tells whether the contents of a file are a program image
+     * @param contents The file's contents
+     * @return true - if the contents start like an image; false - otherwise
+     */
+    public static boolean isImage(byte[] contents) {
+        return contents.length >= 4 && ByteBuffer.wrap(contents).getInt() == MAGIC;
+    }
+
+    /**
+     * Opens the image in a file; the program in it is decoded as it runs
+     * @param file The image file
+     * @return The opened image
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a valid image
+     */
+    public static ProgramImage open(File file) throws IOException {
+        try (RandomAccessFile image = new RandomAccessFile(file, "r")) {
+            if (image.length() >= MAP_THRESHOLD)
+                return new ProgramImage(image.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, image.length()));
+
+            byte[] contents = new byte[(int) image.length()];
+            image.readFully(contents);
+            return new ProgramImage(ByteBuffer.wrap(contents));
+        }
+    }
+
+    /**
+     * Opens an image that has already been read
+     * @param contents The image file's contents
+     * @return The opened image
+     * @throws IllegalArgumentException if the contents are not a valid image
+     */
+    public static ProgramImage open(byte[] contents) {
+        return new ProgramImage(ByteBuffer.wrap(contents));
+    }
+
+    /**
+     * Gets the program in the image
+     * @return The linked program
+     */
+    public Program getProgram() {
+        return program;
+    }
+
+    /**
+     * Decodes the ByteCode at the given address
+     */
+    private ByteCode decode(int address) {
+        int entry = programStart + address * ENTRY_SIZE;
+        ByteCode code = tableCode(buffer.getInt(entry));
+        int target = buffer.getInt(entry + 4);
+        return target == NO_TARGET ? code : ((BranchCode) code).resolve(target);
+    }
+
+    /**
+     * Gets an entry of the code table, initiating it the first time
+     */
+    private ByteCode tableCode(int index) {
+        ByteCode code = (ByteCode) TABLE.getAcquire(table, index);
+        if (code == null) {
+            int entry = tableStart + index * ENTRY_SIZE;
+            code = CodeTable.newCode(opcodes[buffer.getInt(entry)]);
+            code.init(constants[buffer.getInt(entry + 4)]);
+            TABLE.setRelease(table, index, code);
+        }
+        return code;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[readCount(buffer, 1)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the number of entries of a section or string
+     * @param entrySize Smallest size of an entry, in bytes
+     * @throws IllegalArgumentException if the rest of the image is too short
+     *         to hold that many entries
+     */
+    private static int readCount(ByteBuffer buffer, int entrySize) {
+        int count = buffer.getInt();
+        if (count < 0 || (long) count * entrySize > buffer.remaining())
+            throw new IllegalArgumentException("Truncated program image");
+        return count;
+    }
+
+    //----{ Source }------------------------------------------------------------
+
+    /**
+     * Tells whether the image was made from a file with the given size and
+     * modification time
+     * @param size Size of the file
+     * @param modified Modification time of the file, in milliseconds
+     * @return true - if both match the file the image was made from
+     */
+    public boolean isImageOf(long size, long modified) {
+        return sourceSize == size && sourceModified == modified;
+    }
+
+    /**
+     * Tells whether the image was made from a file with the given contents
+     * @param hash SHA-256 hash of the file's contents
+     * @return true - if the hash matches the file the image was made from
+     */
+    public boolean isImageOf(byte[] hash) {
+        return MessageDigest.isEqual(sourceHash, hash);
+    }
+
+    /**
+     * Gets the hash of the file the image was made from
+     * @return SHA-256 hash of the file's contents
+     */
+    public byte[] getSourceHash() {
+        return sourceHash.clone();
+    }
+
+    /**
+     * Tells whether the image has a line table
+     * @return true - if the source line of each code is known
+     */
+    public boolean hasLineTable() {
+        return lineCount > 0;
+    }
+
+    /**
+     * Gets the source line a code was compiled from
+     * @param address Address of the code
+     * @return The line's number, or 0 if it is not known
+     */
+    public int getSourceLine(int address) {
+        // Last line starting at or before the address
+        int low = 0, high = lineCount - 1, line = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = linesStart + middle * ENTRY_SIZE;
+            if (buffer.getInt(entry) <= address) {
+                line = buffer.getInt(entry + 4);
+                low = middle + 1;
+            } else
+                high = middle - 1;
+        }
+        return line;
+    }
+
+    //----{ Caching }-----------------------------------------------------------
+
+    /**
+     * Gets the program in the given ByteCode file from its image, when the
+     * image is up to date; otherwise, loads the file and saves a new image.
+     * An image is only up to date if it was made from the file as it is
+     * now: when the file's size and modification time have not changed, or
+     * else when its hash has not.
+     * @param codeFile The ByteCode file
+     * @param directory Directory images are kept in, or null to keep each
+     *                  one next to its ByteCode file
+     * @return The linked program
+     * @throws IOException if the ByteCode file cannot be read
+     * @throws IllegalArgumentException if the file is not a valid program
+     * @see interpreter.ByteCodeLoader#loadCodes()
+     */
+    public static Program load(File codeFile, File directory) throws IOException {
+        // Up to date images are found with java.io alone; starting up NIO's
+        // file system takes longer than loading a small image
+        long size = codeFile.length();
+        long modified = codeFile.lastModified();
+        File imageFile = imageFor(codeFile, directory);
+
+        ProgramImage image = null;
+        try {
+            if (imageFile.isFile())
+                image = open(imageFile);
+        } catch (IOException | IllegalArgumentException e) {
+            // A corrupt or outdated image is rebuilt like a stale one
+        }
+        if (image != null && image.isImageOf(size, modified))
+            return image.getProgram();
+
+        // The file is new or was modified; it is only hashed now, since
+        // hashing costs more than the rest of a small program's start up
+        byte[] contents = Files.readAllBytes(codeFile.toPath());
+        byte[] hash = digest(contents);
+        if (image != null && image.isImageOf(hash)) {
+            try {
+                restamp(imageFile, size, modified);
+            } catch (IOException e) {
+                // The file is just hashed again next time
+            }
+            return image.getProgram();
+        }
+
+        ByteCodeLoader loader = new ByteCodeLoader(new ByteArrayInputStream(contents));
+        Program program = loader.loadCodes();
+        try {
+            write(program, loader.getLineTable(), size, modified, hash, imageFile);
+        } catch (IOException e) {
+            // Without an image, the next run just loads the file again
+        }
+        return program;
+    }
+
+    /**
+     * Gets where the image of a ByteCode file is kept: next to it, with its
+     * extension replaced, or in the given directory, named after its path
+     * @param codeFile The ByteCode file
+     * @param directory Directory images are kept in, or null
+     * @return The image file
+     */
+    public static File imageFor(File codeFile, File directory) {
+        String name = codeFile.getName();
+        if (name.endsWith(".cod"))
+            name = name.substring(0, name.length() - 4);
+        if (directory == null)
+            return new File(codeFile.getAbsoluteFile().getParentFile(), name + EXTENSION);
+
+        // Files with the same name in different directories get different
+        // images; a collision only ever costs a reload, since images are
+        // checked against their file
+        int path = codeFile.getAbsolutePath().hashCode();
+        return new File(directory, name + "-" + Integer.toHexString(path) + EXTENSION);
+    }
+
+    /**
+     * Records a new size and modification time for the file an image was
+     * made from, once its contents are known to be the same
+     */
+    private static void restamp(File image, long size, long modified) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(image, "rw")) {
+            file.seek(8);
+            file.writeLong(size);
+            file.writeLong(modified);
+        }
+    }
+
+    //----{ Writing }-----------------------------------------------------------
+
+    /**
+     * Saves the image of a freshly loaded program; the image is written
+     * aside and moved into place, so a concurrent reader never sees part of it
+     * @param program Program, as linked by the ByteCodeLoader
+     * @param lineTable Source line of the program's codes, as given by the
+     *                  ByteCodeLoader; empty to leave the line table out
+     * @param size Size of the ByteCode file the program was loaded from
+     * @param modified Modification time of that file, in milliseconds
+     * @param hash Hash of that file
+     * @param image File to save the image to
+     * @throws IOException if the image cannot be written
+     * @see interpreter.ByteCodeLoader#getLineTable()
+     */
+    public static void write(Program program, int[] lineTable, long size, long modified, byte[] hash, File image)
+            throws IOException {
+        Map<Opcode, Integer> opcodes = new HashMap<Opcode, Integer>();
+        Map<String, Integer> constants = new HashMap<String, Integer>();
+        Map<String, Integer> table = new HashMap<String, Integer>();
+        List<ByteCode> distinct = new ArrayList<ByteCode>();
+        int[] codes = new int[program.size() * 2];
+        for (int index = 0; index < program.size(); index++) {
+            ByteCode code = program.getCode(index);
+            opcodes.computeIfAbsent(code.getOpcode(), opcode -> opcodes.size());
+            constants.computeIfAbsent(code.getArgs(), args -> constants.size());
+            codes[2 * index] = table.computeIfAbsent(code.getName() + " " + code.getArgs(), key -> {
+                distinct.add(code);
+                return distinct.size() - 1;
+            });
+            codes[2 * index + 1] = code instanceof BranchCode ? ((BranchCode) code).getTarget() : NO_TARGET;
+        }
+
+        Path directory = image.getAbsoluteFile().getParentFile().toPath();
+        Files.createDirectories(directory);
+        Path partial = Files.createTempFile(directory, image.getName(), ".part");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partial)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(size);
+                out.writeLong(modified);
+                out.write(hash);
+                out.writeInt(opcodes.size());
+                out.writeInt(constants.size());
+                out.writeInt(distinct.size());
+                out.writeInt(program.size());
+                out.writeInt(lineTable.length / 2);
+
+                for (Opcode opcode : inOrder(opcodes, new Opcode[opcodes.size()]))
+                    writeString(out, opcode.name());
+                for (String constant : inOrder(constants, new String[constants.size()]))
+                    writeString(out, constant);
+                for (ByteCode code : distinct) {
+                    out.writeInt(opcodes.get(code.getOpcode()));
+                    out.writeInt(constants.get(code.getArgs()));
+                }
+                for (int entry : codes)
+                    out.writeInt(entry);
+                for (int entry : lineTable)
+                    out.writeInt(entry);
+            }
+            Files.move(partial, image.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    /**
+     * Lists the keys of a table by the index each one was given
+     */
+    private static <T> T[] inOrder(Map<T, Integer> indices, T[] keys) {
+        for (Map.Entry<T, Integer> entry : indices.entrySet())
+            keys[entry.getValue()] = entry.getKey();
+        return keys;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    //----{ Hashing }-----------------------------------------------------------
+
+    /**
+     * Hashes the contents of a ByteCode file
+     * @param contents The file's contents
+     * @return SHA-256 digest of the contents
+     */
+    static byte[] digest(byte[] contents) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(contents);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes a digest in hexadecimal
+     * @param digest Digest to write
+     * @return The digest, two hex digits per byte
+     */
+    static String toHex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest)
+            hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+}
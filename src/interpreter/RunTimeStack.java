@@ -1,42 +1,70 @@
 package interpreter;
 
-import java.util.Stack;
-import java.util.Vector;
+import java.io.PrintStream;
+import java.util.Arrays;
 
 
 /**
- * Runtime Stack data structure that contains the values produced by the ByteCodes
+ * Runtime Stack data structure that contains the values produced by the ByteCodes.
+ * Values and frame pointers are kept in primitive int arrays that grow
+ * geometrically, so pushing, loading and storing never box a value, and
+ * popping a frame only moves the top index.
  * @author Enrique Gavidia
  */
 public class RunTimeStack {
-    private Vector<Integer> runStack;
-    private Stack<Integer> framePointers;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int INITIAL_FRAMES = 16;
+
+    private int[] runStack;
+    private int top;
+    private int[] framePointers;
+    private int frameTop;
+
+    // Allocation counters; only touched when a backing array has to grow
+    private int growths;
+    private long allocatedBytes;
 
     /**
      * Create a new RunTime stack
      */
     public RunTimeStack() {
-        runStack = new Vector<Integer>();
-        framePointers = new Stack<Integer>();
-        framePointers.add(0);
+        runStack = new int[INITIAL_CAPACITY];
+        framePointers = new int[INITIAL_FRAMES];
+        allocatedBytes = 4L * (INITIAL_CAPACITY + INITIAL_FRAMES);
+        top = 0;
+        frameTop = 0;
+        framePointers[frameTop++] = 0;
     }
 
     /**
      * Prints out the contents of the stack, via formatted output of the
      * frames in the stack.
+     * @param out Stream to print to
      */
-    public void dump(){
-        System.out.print("[");
-        for (int i = 0; i < runStack.size(); i++) {
-            if (i != 0 && framePointers.contains(i))
-                System.out.print("] [");
+    public void dump(PrintStream out){
+        out.print("[");
+        for (int i = 0; i < top; i++) {
+            if (i != 0 && isFramePointer(i))
+                out.print("] [");
+
+            if (!isFramePointer(i))
+                out.print(",");
+
+            out.print(runStack[i]);
+        }
+        out.println("]");
+    }
 
-            if (!framePointers.contains(i))
-                System.out.print(",");
-            
-            System.out.print(runStack.elementAt(i));
-        }        
-        System.out.println("]");
+    /**
+     * Checks whether a frame starts at the given index of the stack
+     * @param index Index to check
+     * @return true - if a frame starts at the index; false - otherwise
+     */
+    private boolean isFramePointer(int index) {
+        for (int i = 0; i < frameTop; i++)
+            if (framePointers[i] == index)
+                return true;
+        return false;
     }
 
     /**
@@ -44,7 +72,7 @@ public class RunTimeStack {
      * @return Top element of the stack
      */
     public int peek() {
-        return runStack.lastElement();
+        return runStack[top-1];
     }
 
     /**
@@ -53,7 +81,9 @@ public class RunTimeStack {
      * @return The element at the given index
      */
     public int elementAt(int index) {
-        return runStack.elementAt(index);
+        if (index >= top)
+            throw new ArrayIndexOutOfBoundsException(index);
+        return runStack[index];
     }
 
     /**
@@ -61,7 +91,7 @@ public class RunTimeStack {
      * @return The item just removed
      */
     public int pop() {
-        return runStack.remove(runStack.size()-1);
+        return runStack[--top];
     }
 
     /**
@@ -69,21 +99,32 @@ public class RunTimeStack {
      * @param offset Where to create the new frame
      */
     public void newFrameAt(int offset) {
-        framePointers.add(offset);
+        if (frameTop == framePointers.length)
+            framePointers = grow(framePointers);
+        framePointers[frameTop++] = offset;
     }
 
     /**
      * Removes the entire top frame from the stack
      */
     public void popFrame() {
-        // Empty the contents of the frame, and add it's top element back to the 'runStack'
-        int returnValue = runStack.lastElement();
-        int frameIndex = framePointers.pop();
-        int numOfRemovals = runStack.size() - frameIndex;
-        for (int i = 0; i < numOfRemovals; i++)
-            runStack.remove(frameIndex);
+        // Discard the contents of the frame, and move its top element down to
+        // where the frame used to start
+        int returnValue = runStack[top-1];
+        top = framePointers[--frameTop];
+        runStack[top++] = returnValue;
+    }
 
-        runStack.add(returnValue);
+    /**
+     * Replaces the contents of the top frame with the values on top of the
+     * stack, for a function that takes over the frame of its caller
+     * @param numOfArgs Number of values, from the top of the stack, that
+     *                  become the new contents of the frame
+     */
+    public void reuseFrame(int numOfArgs) {
+        int base = framePointers[frameTop-1];
+        System.arraycopy(runStack, top - numOfArgs, runStack, base, numOfArgs);
+        top = base + numOfArgs;
     }
 
     /**
@@ -91,7 +132,7 @@ public class RunTimeStack {
      * @return Starting index of the top frame
      */
     public int peekFrame() {
-        return framePointers.peek();
+        return framePointers[frameTop-1];
     }
 
     /**
@@ -100,7 +141,9 @@ public class RunTimeStack {
      * @return The value just pushed
      */
     public int push(int i) {
-        runStack.add(i);
+        if (top == runStack.length)
+            runStack = grow(runStack);
+        runStack[top++] = i;
         return i;
     }
 
@@ -110,7 +153,7 @@ public class RunTimeStack {
      * @return The value just pushed
      */
     public Integer push(Integer i) {
-        runStack.add(i);
+        push(i.intValue());
         return i;
     }
 
@@ -118,23 +161,31 @@ public class RunTimeStack {
      * Pops the top of the stack, and stores that value at the given offset
      * @param offset Where to store the 'popped' value
      * @return The value just stored
+     * @throws ArrayIndexOutOfBoundsException if the offset is outside the stack
      */
     public int store(int offset) {
         // Overwrite the value at index 'offset' with the top element of the "stack", which is then removed.
-        int frameOffset = framePointers.peek() + offset;
-        runStack.set(frameOffset, runStack.lastElement());
-        return runStack.remove(runStack.size()-1);
+        int index = framePointers[frameTop-1] + offset;
+        if (index < 0 || index >= top)
+            throw new ArrayIndexOutOfBoundsException(index);
+        int value = runStack[--top];
+        runStack[index] = value;
+        return value;
     }
 
     /**
      * Push the value at the given offset, to the top of the stack
      * @param offset The index of the value to be added to the top of the stack
      * @return The value just added
+     * @throws ArrayIndexOutOfBoundsException if the offset is outside the stack
      */
     public int load(int offset) {
-        int frameOffset = framePointers.peek() + offset;
-        runStack.add(runStack.get(frameOffset));
-        return runStack.lastElement();
+        // Values popped off the top are still in the array, so the index is
+        // checked against the top rather than the array's length
+        int index = framePointers[frameTop-1] + offset;
+        if (index < 0 || index >= top)
+            throw new ArrayIndexOutOfBoundsException(index);
+        return push(runStack[index]);
     }
 
     /**
@@ -142,7 +193,7 @@ public class RunTimeStack {
      * @return The size of the stack
      */
     public int size() {
-        return runStack.size();
+        return top;
     }
 
     /**
@@ -150,6 +201,34 @@ public class RunTimeStack {
      * @return number of frames
      */
     public int frames() {
-        return framePointers.size();
+        return frameTop;
+    }
+
+    /**
+     * Gets the number of times a backing array had to be reallocated
+     * @return Number of reallocations
+     */
+    public int getGrowthCount() {
+        return growths;
+    }
+
+    /**
+     * Gets the total number of bytes allocated for the backing arrays,
+     * including the initial ones
+     * @return Bytes allocated
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Doubles the capacity of the given array, and records the allocation
+     * @param array Array to grow
+     * @return A copy of the array with twice the capacity
+     */
+    private int[] grow(int[] array) {
+        growths++;
+        allocatedBytes += 8L * array.length;
+        return Arrays.copyOf(array, array.length * 2);
     }
 }
@@ -0,0 +1,159 @@
+package interpreter;
+
+import java.util.Stack;
+import java.util.Vector;
+
+/**
+ * <pre>
+ *
+ *     Measures the RunTimeStack against the boxed Vector/Stack it replaced,
+ *     under the push/pop/frame traffic of a recursive program:
+ *     1. Make the calls of a recursive fib(n) directly on each stack: every
+ *        call pushes its argument, opens a frame, loads, stores and pops
+ *        values, and pops its frame
+ *     2. Check that both stacks compute the same result
+ *     3. Report the best time of each, and the calls made per second
+ *
+ *     java interpreter.StackBenchmark [n]
+ *
+ *     n defaults to 27, about 630 thousand calls.
+ *
+ * </pre>
+ * @see interpreter.RunTimeStack
+ * @author Enrique Gavidia
+ */
+public class StackBenchmark {
+    private static final int ROUNDS = 5;
+    private static final int DEFAULT_N = 27;
+
+    /**
+     * The operations the benchmark makes, on either stack
+     */
+    private interface Operations {
+        void push(int value);
+        int pop();
+        int load(int offset);
+        void store(int offset);
+        void newFrameAt(int offset);
+        void popFrame();
+        int size();
+    }
+
+    /**
+     * The RunTimeStack used by the VirtualMachine
+     */
+    private static class PrimitiveStack implements Operations {
+        private final RunTimeStack stack = new RunTimeStack();
+
+        public void push(int value) { stack.push(value); }
+        public int pop() { return stack.pop(); }
+        public int load(int offset) { return stack.load(offset); }
+        public void store(int offset) { stack.store(offset); }
+        public void newFrameAt(int offset) { stack.newFrameAt(offset); }
+        public void popFrame() { stack.popFrame(); }
+        public int size() { return stack.size(); }
+    }
+
+    /**
+     * The stack the RunTimeStack used to be: boxed values in a Vector, and
+     * frame pointers in a Stack, with frames popped one value at a time
+     */
+    private static class BoxedStack implements Operations {
+        private final Vector<Integer> runStack = new Vector<Integer>();
+        private final Stack<Integer> framePointers = new Stack<Integer>();
+
+        BoxedStack() {
+            framePointers.add(0);
+        }
+
+        public void push(int value) { runStack.add(value); }
+        public int pop() { return runStack.remove(runStack.size() - 1); }
+        public void newFrameAt(int offset) { framePointers.add(offset); }
+        public int size() { return runStack.size(); }
+
+        public int load(int offset) {
+            runStack.add(runStack.get(framePointers.peek() + offset));
+            return runStack.lastElement();
+        }
+
+        public void store(int offset) {
+            runStack.set(framePointers.peek() + offset, runStack.lastElement());
+            runStack.remove(runStack.size() - 1);
+        }
+
+        public void popFrame() {
+            int returnValue = runStack.lastElement();
+            int frameIndex = framePointers.pop();
+            int numOfRemovals = runStack.size() - frameIndex;
+            for (int i = 0; i < numOfRemovals; i++)
+                runStack.remove(frameIndex);
+            runStack.add(returnValue);
+        }
+    }
+
+    /**
+     * Calls fib(n) the way the compiled X program does, leaving the result
+     * on top of the stack
+     * @return Number of calls made
+     */
+    private static int fib(Operations stack, int n) {
+        // ARGS 1; CALL fib
+        stack.push(n);
+        stack.newFrameAt(stack.size() - 1);
+
+        int calls = 1;
+        if (stack.load(0) <= 1) {
+            stack.pop();
+            stack.push(1);
+        } else {
+            stack.pop();
+            calls += fib(stack, n - 1);
+            calls += fib(stack, n - 2);
+            stack.push(stack.pop() + stack.pop());
+            // STORE into the argument's slot, then LOAD it back as the result
+            stack.store(0);
+            stack.load(0);
+        }
+
+        // RETURN
+        stack.popFrame();
+        return calls;
+    }
+
+    public static void main(String args[]) {
+        int n = DEFAULT_N;
+        try {
+            if (args.length > 0)
+                n = Integer.parseInt(args[0]);
+        } catch (NumberFormatException e) {
+            n = -1;
+        }
+        if (args.length > 1 || n < 0) {
+            System.out.println("***Incorrect usage, try: java interpreter.StackBenchmark [n]");
+            System.exit(1);
+        }
+
+        // The first rounds let the JVM warm up; the best one is reported
+        double primitiveBest = Double.MAX_VALUE, boxedBest = Double.MAX_VALUE;
+        int calls = 0;
+        for (int round = 1; round <= ROUNDS; round++) {
+            PrimitiveStack primitive = new PrimitiveStack();
+            long start = System.nanoTime();
+            calls = fib(primitive, n);
+            double primitiveTime = (System.nanoTime() - start) / 1e6;
+
+            BoxedStack boxed = new BoxedStack();
+            start = System.nanoTime();
+            fib(boxed, n);
+            double boxedTime = (System.nanoTime() - start) / 1e6;
+
+            boolean same = primitive.pop() == boxed.pop();
+            primitiveBest = Math.min(primitiveBest, primitiveTime);
+            boxedBest = Math.min(boxedBest, boxedTime);
+            System.out.printf("round %1$d: primitive %2$.1fms, boxed %3$.1fms, %4$s\n",
+                round, primitiveTime, boxedTime, same ? "same result" : "DIFFERENT RESULT");
+        }
+        System.out.printf("%1$d calls: primitive %2$.1fM calls/s, boxed %3$.1fM calls/s (%4$.2fx)\n",
+            calls, calls / primitiveBest / 1e3, calls / boxedBest / 1e3, boxedBest / primitiveBest);
+    }
+}
@@ -0,0 +1,218 @@
+package interpreter;
+
+import interpreter.bytecodes.ByteCode;
+import interpreter.bytecodes.Operator;
+import java.io.BufferedReader;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.Stack;
+
+
+/**
+ * Virtual Machine that executes the flat encoding of a Program in a single
+ * switch-dispatch loop, instead of calling each ByteCode object in turn.
+ * Produces exactly the same output as the VirtualMachine.
+ * @see interpreter.FlatProgram
+ * @author Enrique Gavidia
+ */
+public class SwitchVirtualMachine extends VirtualMachine {
+    private FlatProgram flatProgram;
+
+    /**
+     * @param program Program object containing the ByteCodes the Virtual Machine
+     *                will run.
+     */
+    public SwitchVirtualMachine(Program program) {
+        super(program);
+        this.flatProgram = new FlatProgram(program);
+    }
+
+    /**
+     * @param program Program object containing the ByteCodes the Virtual Machine
+     *                will run.
+     * @param input Where READ takes its input from, one integer per line
+     * @param output Where WRITE and DUMP send their output
+     */
+    public SwitchVirtualMachine(Program program, BufferedReader input, PrintStream output) {
+        super(program, input, output);
+        this.flatProgram = new FlatProgram(program);
+    }
+
+    /**
+     * Executes the flat encoding of the program. ByteCodes without a flat
+     * encoding are executed through their ByteCode objects, with the program
+     * counter kept in sync around them.
+     */
+    @Override
+    public void executeProgram() {
+        runStack = new RunTimeStack();
+        returnAddrs = new Stack<Integer>();
+        isRunning = true;
+        dump = false;
+
+        int[] opcodes = flatProgram.getOpcodes();
+        int[] operands = flatProgram.getOperands();
+        int[] extras = flatProgram.getExtras();
+        Operator[] operators = flatProgram.getOperators();
+        final RunTimeStack stack = runStack;
+        boolean running = true;
+        boolean dumping = false;
+        boolean patched = false;
+        int pc = 0;
+        int top, lower;
+
+        while (running) {
+            int current = pc;
+            switch (opcodes[pc]) {
+                case FlatProgram.NOP:
+                    break;
+                case FlatProgram.ARGS:
+                    stack.newFrameAt(stack.size() - operands[pc]);
+                    break;
+                case FlatProgram.CALL:
+                    pushReturnAddrs(pc);
+                    pc = operands[pc] - 1;
+                    if (tiers != null)
+                        patched = tiers.countCall(this, pc + 1);
+                    break;
+                case FlatProgram.RETURN:
+                    stack.popFrame();
+                    pc = popReturnAddrs();
+                    break;
+                case FlatProgram.GOTO:
+                    if (tiers != null && operands[pc] <= pc)
+                        patched = profileBackEdge();
+                    pc = operands[pc] - 1;
+                    break;
+                case FlatProgram.FALSEBRANCH:
+                    if (stack.pop() == 0)
+                        pc = operands[pc] - 1;
+                    break;
+                case FlatProgram.LIT:
+                    stack.push(operands[pc]);
+                    break;
+                case FlatProgram.LOAD:
+                    stack.load(operands[pc]);
+                    break;
+                case FlatProgram.STORE:
+                    stack.store(operands[pc]);
+                    break;
+                case FlatProgram.POP:
+                    for (int i = operands[pc]; i > 0; i--)
+                        stack.pop();
+                    break;
+                case FlatProgram.ADD:
+                    top = stack.pop();
+                    stack.push(stack.pop() + top);
+                    break;
+                case FlatProgram.SUB:
+                    top = stack.pop();
+                    stack.push(stack.pop() - top);
+                    break;
+                case FlatProgram.MUL:
+                    top = stack.pop();
+                    stack.push(stack.pop() * top);
+                    break;
+                case FlatProgram.DIV:
+                    top = stack.pop();
+                    stack.push(stack.pop() / top);
+                    break;
+                case FlatProgram.EQ:
+                    top = stack.pop();
+                    stack.push(stack.pop() == top ? 1 : 0);
+                    break;
+                case FlatProgram.NE:
+                    top = stack.pop();
+                    stack.push(stack.pop() != top ? 1 : 0);
+                    break;
+                case FlatProgram.LT:
+                    top = stack.pop();
+                    stack.push(stack.pop() < top ? 1 : 0);
+                    break;
+                case FlatProgram.LE:
+                    top = stack.pop();
+                    stack.push(stack.pop() <= top ? 1 : 0);
+                    break;
+                case FlatProgram.GT:
+                    top = stack.pop();
+                    stack.push(stack.pop() > top ? 1 : 0);
+                    break;
+                case FlatProgram.GE:
+                    top = stack.pop();
+                    stack.push(stack.pop() >= top ? 1 : 0);
+                    break;
+                case FlatProgram.AND:
+                    top = stack.pop();
+                    lower = stack.pop();
+                    stack.push(lower > 0 && top > 0 ? 1 : 0);
+                    break;
+                case FlatProgram.OR:
+                    top = stack.pop();
+                    lower = stack.pop();
+                    stack.push(lower > 0 || top > 0 ? 1 : 0);
+                    break;
+                case FlatProgram.LOAD_LIT_BOP:
+                    lower = stack.load(operands[pc]);
+                    stack.pop();
+                    stack.push(operators[pc].apply(lower, extras[pc]));
+                    break;
+                case FlatProgram.BOP_FALSEBRANCH:
+                    top = stack.pop();
+                    lower = stack.pop();
+                    if (operators[pc].apply(lower, top) == 0)
+                        pc = operands[pc] - 1;
+                    break;
+                case FlatProgram.LIT_RETURN:
+                    stack.push(operands[pc]);
+                    stack.popFrame();
+                    pc = popReturnAddrs();
+                    break;
+                case FlatProgram.ARGS_CALL:
+                    stack.newFrameAt(stack.size() - extras[pc]);
+                    pushReturnAddrs(pc);
+                    pc = operands[pc] - 1;
+                    if (tiers != null)
+                        patched = tiers.countCall(this, pc + 1);
+                    break;
+                case FlatProgram.TAIL_CALL:
+                    if (tiers != null)
+                        patched = profileBackEdge();
+                    stack.reuseFrame(extras[pc]);
+                    pc = operands[pc] - 1;
+                    break;
+                default:
+                    programCounter = pc;
+                    program.getCode(pc).execute(this);
+                    pc = programCounter;
+                    running = isRunning;
+                    dumping = dump;
+                    patched = opcodes != flatProgram.getOpcodes();
+                    break;
+            }
+
+            if (patched) {
+                // A hot function was compiled; pick up the patched calls
+                opcodes = flatProgram.getOpcodes();
+                operands = flatProgram.getOperands();
+                extras = flatProgram.getExtras();
+                operators = flatProgram.getOperators();
+                patched = false;
+            }
+
+            if (dumping)
+                dump(program.getCode(current));
+
+            pc++;
+        }
+    }
+
+    /**
+     * Replaces some of the program's codes, and re-encodes the program
+     * @param patches Maps addresses to the codes that replace the ones there
+     */
+    @Override
+    public void patchProgram(Map<Integer, ByteCode> patches) {
+        super.patchProgram(patches);
+        flatProgram = new FlatProgram(program);
+    }
+}
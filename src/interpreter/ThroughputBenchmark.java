@@ -0,0 +1,126 @@
+package interpreter;
+
+import interpreter.optimizer.Optimizer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <pre>
+ *
+ *     Measures how many executions of one loaded program run per second
+ *     when many of them run at once:
+ *     1. Load and link the program once
+ *     2. Run it once on its own, for the expected output
+ *     3. Run it the given number of times on a pool of threads, every
+ *        execution on its own VM, checking each one's output
+ *
+ *     java interpreter.ThroughputBenchmark [-switch] [-O] &lt;file&gt; &lt;executions&gt; &lt;threads&gt; [input...]
+ *
+ * </pre>
+ * @author Enrique Gavidia
+ */
+public class ThroughputBenchmark {
+    private static final int ROUNDS = 3;
+
+    private final BatchRunner runner;
+    private final String input;
+
+    /**
+     * @param program Program every execution runs
+     * @param switchEngine true - run on the SwitchVirtualMachine
+     * @param input What every execution reads, one integer per line
+     */
+    public ThroughputBenchmark(Program program, boolean switchEngine, String input) {
+        this.runner = new BatchRunner(program, switchEngine, 1);
+        this.input = input;
+    }
+
+    /**
+     * Runs the program once, on a VM of its own
+     * @return Everything the program wrote
+     * @see interpreter.BatchRunner#execute(java.lang.String)
+     */
+    public String execute() {
+        return runner.execute(input);
+    }
+
+    /**
+     * Runs the program many times at once
+     * @param executions Number of executions
+     * @param threads Number of threads running them
+     * @param expected Output every execution has to produce
+     * @return Number of executions whose output differed
+     * @throws InterruptedException if interrupted while waiting
+     * @throws ExecutionException if an execution failed
+     */
+    public int executeConcurrently(int executions, int threads, String expected)
+            throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>(executions);
+            for (int i = 0; i < executions; i++)
+                results.add(pool.submit(this::execute));
+
+            int mismatches = 0;
+            for (Future<String> result : results)
+                if (!result.get().equals(expected))
+                    mismatches++;
+            return mismatches;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public static void main(String args[]) throws Exception {
+        boolean useSwitch = false;
+        Optimizer optimizer = new Optimizer();
+        List<String> positional = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.equals("-switch"))
+                useSwitch = true;
+            else if (arg.equals("-O"))
+                optimizer.enableAll();
+            else
+                positional.add(arg);
+        }
+
+        if (positional.size() < 3) {
+            System.out.println("***Incorrect usage, try: java interpreter.ThroughputBenchmark [-switch] [-O] <file> <executions> <threads> [input...]");
+            System.exit(1);
+        }
+
+        Program program;
+        try {
+            CodeTable.init();
+            program = optimizer.optimize(new ByteCodeLoader(positional.get(0)).loadCodes());
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("**** " + e.getMessage());
+            return;
+        }
+        int executions = Integer.parseInt(positional.get(1));
+        int threads = Integer.parseInt(positional.get(2));
+        String input = "";
+        for (String line : positional.subList(3, positional.size()))
+            input += line + "\n";
+
+        ThroughputBenchmark benchmark = new ThroughputBenchmark(program, useSwitch, input);
+        String expected = benchmark.execute();
+
+        // The first rounds let the JVM warm up; the best one is reported
+        double best = 0;
+        for (int round = 1; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            int mismatches = benchmark.executeConcurrently(executions, threads, expected);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            best = Math.max(best, executions / seconds);
+            System.out.printf("round %1$d: %2$d executions on %3$d threads in %4$.1fms, %5$d mismatched outputs\n",
+                round, executions, threads, seconds * 1e3, mismatches);
+        }
+        System.out.printf("throughput: %1$.0f executions/s\n", best);
+    }
+}
@@ -1,20 +1,44 @@
 package interpreter;
 
 import interpreter.bytecodes.ByteCode;
+import interpreter.jit.TieredCompiler;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinTask;
 
 
 /**
- * Virtual Machine for the X-language compiler
+ * Virtual Machine for the X-language compiler. A VM holds the state of a
+ * single execution: its program counter, stacks and I/O streams. Programs
+ * are never modified once linked, so any number of VMs, on any number of
+ * threads, can run the same Program at once.
  * @author Enrique Gavidia
  */
 public class VirtualMachine {
+    // Shared by every VM reading the standard input, so that no VM buffers
+    // lines another one should have read
+    private static final BufferedReader STANDARD_INPUT =
+        new BufferedReader( new InputStreamReader( System.in ) );
+
     protected Program program;
     protected int programCounter;
     protected RunTimeStack runStack;
     protected Stack<Integer> returnAddrs;
     protected Boolean isRunning;
     protected Boolean dump;
+    protected final BufferedReader input;
+    protected final PrintStream output;
+    protected TieredCompiler tiers;
+    protected MemoCache memoCache;
+    protected ForkJoinEvaluator forks;
+    protected int baseDepth;
+    protected List<ForkJoinTask<Integer>> pendingForks;
 
     /**
      * @param program Program object containing the ByteCodes the Virtual Machine
@@ -22,7 +46,28 @@ public class VirtualMachine {
      * @see interpreter.Program
      */
     public VirtualMachine(Program program) {
+        this(program, STANDARD_INPUT, System.out);
+    }
+
+    /**
+     * Gets the reader over the standard input shared by the VMs created
+     * without an input of their own
+     * @return Reader over the standard input
+     */
+    public static BufferedReader standardInput() {
+        return STANDARD_INPUT;
+    }
+
+    /**
+     * @param program Program object containing the ByteCodes the Virtual Machine
+     *                will run.
+     * @param input Where READ takes its input from, one integer per line
+     * @param output Where WRITE and DUMP send their output
+     */
+    public VirtualMachine(Program program, BufferedReader input, PrintStream output) {
         this.program = program;
+        this.input = input;
+        this.output = output;
     }
 
     /**
@@ -48,13 +93,41 @@ public class VirtualMachine {
         }
     }
 
+    /**
+     * Runs a single function to completion on a new Runtime stack, instead
+     * of the whole program; used to evaluate forked calls
+     * @param entry Address of the function's first code
+     * @param args Arguments to call the function with
+     * @return The value the function returned
+     */
+    public int executeFunction(int entry, int[] args) {
+        runStack = new RunTimeStack();
+        returnAddrs = new Stack<Integer>();
+        isRunning = true;
+        dump = false;
+
+        for (int arg : args)
+            runStack.push(arg);
+        runStack.newFrameAt(0);
+        // The function returns past the end of the program, which stops the VM
+        int exit = program.size();
+        returnAddrs.push(exit - 1);
+        programCounter = entry;
+
+        while (isRunning && programCounter != exit) {
+            program.getCode(programCounter).execute(this);
+            programCounter++;
+        }
+        return runStack.peek();
+    }
+
     /**
      * Displays dump information from the Runtime stack, and the given ByteCode
      * (including special dump instructions)
      * @param code ByteCode object used to obtain dump information
-     * @see interpreter.RunTimeStack#dump()
+     * @see interpreter.RunTimeStack#dump(java.io.PrintStream)
      */
-    private void dump(ByteCode code) {
+    protected void dump(ByteCode code) {
         String codeName = code.getName();
         String output = "";
         if (!codeName.matches("DUMP")) {
@@ -95,8 +168,8 @@ public class VirtualMachine {
             }
             
             // Print the ByteCode's dump output, along with a dump of the Runtime stack
-            System.out.println(output);
-            runStack.dump();
+            this.output.println(output);
+            runStack.dump(this.output);
         }
     }
 
@@ -126,6 +199,183 @@ public class VirtualMachine {
     }
 
 
+    //----{ Tiered compilation }------------------------------------------------
+
+    /**
+     * Enables profiling the program's calls and loops, so that hot functions
+     * get compiled while the program runs
+     * @param tiers Compiler deciding when functions are promoted, or null to
+     *              only interpret
+     * @see interpreter.jit.TieredCompiler
+     */
+    public void setTieredCompiler(TieredCompiler tiers) {
+        this.tiers = tiers;
+    }
+
+    /**
+     * Counts an interpreted call to a function
+     * @param entry Address of the function's first code
+     * @return true - if the program was patched as a result
+     */
+    public boolean profileCall(int entry) {
+        return tiers != null && tiers.countCall(this, entry);
+    }
+
+    /**
+     * Counts a backward jump taken inside the function currently running
+     * @return true - if the program was patched as a result
+     */
+    public boolean profileBackEdge() {
+        return tiers != null && !returnAddrs.isEmpty() && tiers.countBackEdge(this, returnAddrs.peek());
+    }
+
+    /**
+     * Replaces some of the program's codes; addresses stay the same, so
+     * execution continues where it was
+     * @param patches Maps addresses to the codes that replace the ones there
+     * @see interpreter.Program#patch(java.util.Map)
+     */
+    public void patchProgram(Map<Integer, ByteCode> patches) {
+        program = program.patch(patches);
+    }
+
+
+    //----{ Memoization }-------------------------------------------------------
+
+    /**
+     * Sets the cache used to remember the results of pure function calls
+     * @param memoCache Cache to use
+     * @see interpreter.MemoCache
+     */
+    public void setMemoCache(MemoCache memoCache) {
+        this.memoCache = memoCache;
+    }
+
+    /**
+     * Gets the cache used to remember the results of pure function calls,
+     * creating one with the default capacity if none was set
+     * @return The VM's memo cache
+     */
+    public MemoCache getMemoCache() {
+        if (memoCache == null)
+            memoCache = new MemoCache(MemoCache.DEFAULT_CAPACITY);
+        return memoCache;
+    }
+
+    /**
+     * Looks up the cached result of calling a function with the arguments on
+     * top of the Runtime stack; if found, the arguments are replaced by it
+     * @param function Address of the function's first code
+     * @param numOfArgs Number of arguments on top of the Runtime stack
+     * @return true - if the result was cached; false - if the function has
+     *         to be called, and its result stored with memoize()
+     * @see interpreter.MemoCache#lookup(int, interpreter.RunTimeStack, int)
+     */
+    public boolean recallMemoized(int function, int numOfArgs) {
+        MemoCache cache = getMemoCache();
+        if (!cache.lookup(function, runStack, numOfArgs))
+            return false;
+
+        for (int i = 0; i < numOfArgs; i++)
+            runStack.pop();
+        runStack.push(cache.getValue());
+        return true;
+    }
+
+    /**
+     * Caches the result of the last call that recallMemoized() missed
+     * @param result Value the function returned
+     * @see interpreter.MemoCache#store(int)
+     */
+    public void memoize(int result) {
+        getMemoCache().store(result);
+    }
+
+
+    //----{ Fork-join evaluation }---------------------------------------------
+
+    /**
+     * Enables evaluating forked calls in parallel
+     * @param forks Evaluator running the forked calls, or null to run them
+     *              sequentially
+     * @param depth Depth of the calls the VM itself is nested in
+     * @see interpreter.ForkJoinEvaluator
+     */
+    public void setForkJoinEvaluator(ForkJoinEvaluator forks, int depth) {
+        this.forks = forks;
+        this.baseDepth = depth;
+    }
+
+    /**
+     * Forks a call to a pure function, with the arguments on top of the
+     * Runtime stack; the arguments are replaced by a placeholder for the
+     * result, filled in by the matching joinCall()
+     * @param function Address of the function's first code
+     * @param numOfArgs Number of arguments on top of the Runtime stack
+     * @return true - if the call was forked; false - if it has to be made as
+     *         an ordinary call
+     */
+    public boolean forkCall(int function, int numOfArgs) {
+        if (forks == null)
+            return false;
+        if (pendingForks == null)
+            pendingForks = new ArrayList<ForkJoinTask<Integer>>();
+
+        // Calls nested deeper than the cutoff are too small to be worth forking
+        int depth = baseDepth + returnAddrs.size();
+        if (depth >= forks.getCutoff()) {
+            pendingForks.add(null);
+            return false;
+        }
+
+        int[] args = new int[numOfArgs];
+        for (int i = numOfArgs - 1; i >= 0; i--)
+            args[i] = runStack.pop();
+        pendingForks.add(forks.fork(program, function, args, depth));
+        runStack.push(0);
+        return true;
+    }
+
+    /**
+     * Waits for the result of the last call forked, and puts it below the
+     * value on top of the Runtime stack; does nothing if the call was not forked
+     */
+    public void joinCall() {
+        if (forks == null)
+            return;
+
+        ForkJoinTask<Integer> task = pendingForks.remove(pendingForks.size() - 1);
+        if (task == null)
+            return;
+
+        int second = runStack.pop();
+        runStack.pop();
+        runStack.push(forks.join(task));
+        runStack.push(second);
+    }
+
+
+    //----{ I/O methods }-------------------------------------------------------
+
+    /**
+     * Reads an integer typed in by the user
+     * @return The integer read
+     * @throws IOException if the input cannot be read
+     */
+    public int readInput() throws IOException {
+        String num = input.readLine();
+        return Integer.parseInt(num);
+    }
+
+    /**
+     * Writes out an integer on its own line
+     * @param value The integer to write
+     */
+    public void writeOutput(int value) {
+        output.println(value);
+    }
+
+
     //----{ runStack methods }--------------------------------------------------
 
     /**
@@ -204,10 +454,20 @@ public class VirtualMachine {
         runStack.popFrame();
     }
 
+    /**
+     * Replaces the contents of the top Runtime stack frame with the given
+     * number of values from the top of the stack; used for tail calls
+     * @param numOfArgs Number of values that become the frame's contents
+     * @see interpreter.RunTimeStack#reuseFrame(int)
+     */
+    public void reuseRunStackFrame(int numOfArgs) {
+        runStack.reuseFrame(numOfArgs);
+    }
+
     /**
      * Enables or Disables DUMP mode based on the passed value
      * @param doDump Boolean value dictating the state of the DUMP mode
-     * @see interpreter.RunTimeStack#dump()
+     * @see interpreter.RunTimeStack#dump(java.io.PrintStream)
      */
     public void dumpRunStack(Boolean doDump) {
         dump = doDump;
@@ -21,8 +21,21 @@ public class ArgsCode extends ByteCode {
         vm.newRunStackFrameAt(offset);
     }
 
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.ARGS;
+    }
+
     @Override
     public String getArgs() {
         return Integer.toString(numOfArgs);
     }
+
+    /**
+     * Gets the number of arguments passed to the function
+     * @return Number of arguments
+     */
+    public int getNumOfArgs() {
+        return numOfArgs;
+    }
 }
@@ -7,77 +7,36 @@ import interpreter.VirtualMachine;
  * @author Enrique Gavidia
  */
 public class BopCode extends ByteCode {
-    private String operator;
-    private int result;
+    private Operator operator;
     public BopCode(){}
 
     @Override
     public void init(String args) {
-        operator = args;
+        operator = Operator.fromSymbol(args.trim());
     }
 
     @Override
     public void execute(VirtualMachine vm) {
         int topInt = vm.popRunStack();
         int lowerInt = vm.popRunStack();
-        
-        result = computeResult(topInt,lowerInt,operator);
+        vm.pushRunStack(operator.apply(lowerInt, topInt));
+    }
 
-        vm.pushRunStack(result);
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.BOP;
     }
 
     @Override
     public String getArgs() {
-        return operator;
+        return operator.getSymbol();
     }
 
-    private int computeResult(int topInt, int lowerInt, String operation) {
-        int res = 0;
-
-        // Arithmetic operators
-        if (operation.equals("+"))
-            res = lowerInt + topInt;
-        else if (operation.equals("-"))
-            res = lowerInt - topInt;
-        else if (operation.equals("*"))
-            res = lowerInt * topInt;
-        else if (operation.equals("/"))
-            res = lowerInt / topInt;
-
-
-        // Logical operators
-        else if (operation.equals("=="))
-            if (lowerInt == topInt)  res = 1;
-            else  res = 0;
-
-        else if (operation.equals("!="))
-            if (lowerInt != topInt)  res = 1;
-            else  res = 0;
-
-        else if (operation.equals("<="))
-            if (lowerInt <= topInt)  res = 1;
-            else  res = 0;
-
-        else if (operation.equals(">="))
-            if (lowerInt >= topInt)  res = 1;
-            else  res = 0;
-
-        else if (operation.equals("<"))
-            if (lowerInt < topInt)  res = 1;
-            else  res = 0;
-
-        else if (operation.equals(">"))
-            if (lowerInt > topInt)  res = 1;
-            else  res = 0;
-
-        else if (operation.equals("&"))
-            if ((lowerInt > 0) && (topInt > 0))  res = 1;
-            else  res = 0;
-
-        else if (operation.equals("|"))
-            if ((lowerInt > 0) || (topInt > 0))  res = 1;
-            else  res = 0;
-
-        return res;
+    /**
+     * Gets the operator the ByteCode performs
+     * @return Binary operator
+     */
+    public Operator getOperator() {
+        return operator;
     }
 }
@@ -0,0 +1,69 @@
+package interpreter.bytecodes;
+
+
+/**
+ * Abstract class for the ByteCodes that transfer execution to a LABEL.
+ * The label's address is bound once by the Linker, which replaces each
+ * branch with a resolved copy of itself, so executing a branch never has
+ * to look up or parse its destination.
+ * @see interpreter.Linker
+ * @author Enrique Gavidia
+ */
+public abstract class BranchCode extends ByteCode {
+    public static final int UNRESOLVED = -1;
+
+    protected String label;
+    protected final int target;
+
+    protected BranchCode() {
+        this(null, UNRESOLVED);
+    }
+
+    protected BranchCode(String label, int target) {
+        this.label = label;
+        this.target = target;
+    }
+
+    @Override
+    public void init(String args) {
+        label = args;
+    }
+
+    @Override
+    public String getArgs() {
+        return label;
+    }
+
+    /**
+     * Gets the label the ByteCode branches to
+     * @return Destination label
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Gets the resolved address of the ByteCode's destination; execution
+     * continues with the code at this address when the branch is taken
+     * @return Destination address, or UNRESOLVED if the code is not linked yet
+     */
+    public int getTarget() {
+        return target;
+    }
+
+    /**
+     * Tells whether taking the branch executes the destination LABEL itself,
+     * or continues right after it. The difference only shows in DUMP output.
+     * @return true - if the LABEL is executed; false - if it is skipped
+     */
+    public boolean entersLabel() {
+        return true;
+    }
+
+    /**
+     * Creates a copy of the ByteCode bound to the given address
+     * @param target Address of the code to continue execution at
+     * @return The resolved ByteCode
+     */
+    public abstract BranchCode resolve(int target);
+}
@@ -26,14 +26,17 @@ public abstract class ByteCode {
      */
     public abstract String getArgs();
 
+    /**
+     * Gets the Opcode of the actual ByteCode the object represents
+     * @return The ByteCode's Opcode
+     */
+    public abstract Opcode getOpcode();
+
     /**
      * Gets the name of the actual ByteCode the object represents
      * @return Name of the ByteCode
      */
     public String getName() {
-        String codeName = this.getClass().getName().replaceFirst("interpreter.bytecodes.", "").replaceAll("Code", "");
-        if (codeName.startsWith("debugger"))
-            codeName = codeName.replaceFirst("debuggerBytes.", "");
-        return codeName.toUpperCase();
+        return getOpcode().name();
     }
 }
\ No newline at end of file
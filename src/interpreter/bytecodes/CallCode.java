@@ -6,27 +6,28 @@ import interpreter.VirtualMachine;
  * Calls a funtion
  * @author Enrique Gavidia
  */
-public class CallCode extends ByteCode {
-    private String funcName;
+public class CallCode extends BranchCode {
     public CallCode(){}
 
-    @Override
-    public void init(String args) {
-        funcName = args;
+    private CallCode(String label, int target) {
+        super(label, target);
     }
 
     @Override
     public void execute(VirtualMachine vm) {
         int returnAddress = vm.getProgramCounter();
         vm.pushReturnAddrs(returnAddress);
-
-        int goToAddress = Integer.parseInt(funcName.split(" ")[1]);
-        vm.setProgramCounter(goToAddress-1);
+        vm.setProgramCounter(target-1);
+        vm.profileCall(target);
     }
 
     @Override
-    public String getArgs() {
-        return funcName;
+    public BranchCode resolve(int target) {
+        return new CallCode(label, target);
     }
 
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.CALL;
+    }
 }
@@ -23,8 +23,15 @@ public class DumpCode extends ByteCode {
         vm.dumpRunStack(dump);
     }
 
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.DUMP;
+    }
+
     @Override
     public String getArgs() {
-        throw new UnsupportedOperationException("getArgs method not supported by DumpCode.");
+        if (dump == null)
+            return "";
+        return dump ? "ON" : "OFF";
     }
 }
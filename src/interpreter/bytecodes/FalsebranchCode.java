@@ -6,26 +6,32 @@ import interpreter.VirtualMachine;
  * Branches execution based on last computed value
  * @author Enrique Gavidia
  */
-public class FalsebranchCode extends ByteCode{
-    private String label;
+public class FalsebranchCode extends BranchCode {
     public FalsebranchCode(){}
 
-    @Override
-    public void init(String args) {
-        label = args;
+    private FalsebranchCode(String label, int target) {
+        super(label, target);
     }
 
     @Override
     public void execute(VirtualMachine vm) {
         int boolValue = vm.popRunStack();
-        if (boolValue == 0) {
-            int goToAddress = Integer.parseInt(label.split(" ")[1]);
-            vm.setProgramCounter(goToAddress);
-        }
+        if (boolValue == 0)
+            vm.setProgramCounter(target-1);
+    }
+
+    @Override
+    public boolean entersLabel() {
+        return false;
+    }
+
+    @Override
+    public BranchCode resolve(int target) {
+        return new FalsebranchCode(label, target);
     }
 
     @Override
-    public String getArgs() {
-        return label;
+    public Opcode getOpcode() {
+        return Opcode.FALSEBRANCH;
     }
 }
@@ -6,23 +6,27 @@ import interpreter.VirtualMachine;
  * Moves exection to a specified location in the program
  * @author Enrique Gavidia
  */
-public class GotoCode extends ByteCode {
-    private String label;
+public class GotoCode extends BranchCode {
     public GotoCode(){}
 
-    @Override
-    public void init(String args) {
-        label = args;
+    private GotoCode(String label, int target) {
+        super(label, target);
     }
 
     @Override
     public void execute(VirtualMachine vm) {
-        int goToAddress = Integer.parseInt(label.split(" ")[1]);
-        vm.setProgramCounter(goToAddress-1);
+        if (target <= vm.getProgramCounter())
+            vm.profileBackEdge();
+        vm.setProgramCounter(target-1);
+    }
+
+    @Override
+    public BranchCode resolve(int target) {
+        return new GotoCode(label, target);
     }
 
     @Override
-    public String getArgs() {
-        return label;
+    public Opcode getOpcode() {
+        return Opcode.GOTO;
     }
 }
@@ -17,6 +17,11 @@ public class HaltCode extends ByteCode {
         vm.stopRunning();
     }
 
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.HALT;
+    }
+
     @Override
     public String getArgs() {
         return "";
@@ -18,6 +18,11 @@ public class LabelCode extends ByteCode{
     @Override
     public void execute(VirtualMachine vm) {}
 
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.LABEL;
+    }
+
     @Override
     public String getArgs() {
         return label;
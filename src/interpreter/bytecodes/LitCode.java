@@ -26,8 +26,29 @@ public class LitCode extends ByteCode {
         vm.pushRunStack(value);
     }
 
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.LIT;
+    }
+
     @Override
     public String getArgs() {
         return Integer.toString(value)+" "+id;
     }
+
+    /**
+     * Gets the literal value pushed by the ByteCode
+     * @return Literal value
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Gets the variable the ByteCode declares, for the debugger
+     * @return Variable ID, or an empty string if the literal is not a variable
+     */
+    public String getId() {
+        return id;
+    }
 }
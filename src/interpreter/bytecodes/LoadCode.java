@@ -24,8 +24,21 @@ public class LoadCode extends ByteCode {
         vm.loadRunStack(offset);
     }
 
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.LOAD;
+    }
+
     @Override
     public String getArgs() {
         return Integer.toString(offset)+" "+id;
     }
+
+    /**
+     * Gets the offset, within the current frame, of the value to load
+     * @return Frame offset
+     */
+    public int getOffset() {
+        return offset;
+    }
 }
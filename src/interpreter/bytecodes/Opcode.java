@@ -0,0 +1,51 @@
+package interpreter.bytecodes;
+
+
+/**
+ * Enumerates every ByteCode the interpreter understands
+ * @see interpreter.CodeTable
+ * @author Enrique Gavidia
+ */
+public enum Opcode {
+    ARGS, BOP, CALL, DUMP, FALSEBRANCH, GOTO, HALT, LABEL,
+    LIT, LOAD, POP, READ, RETURN, STORE, WRITE,
+
+    // Codes that only carry information for the debugger
+    FORMAL(Kind.DEBUG_INFO), FUNCTION(Kind.DEBUG_INFO), LINE(Kind.DEBUG_INFO),
+
+    // Codes produced by the optimizer and the JIT compiler; these never
+    // appear in ByteCode files
+    LOADLITBOP(Kind.SYNTHETIC), BOPFALSEBRANCH(Kind.SYNTHETIC), LITRETURN(Kind.SYNTHETIC),
+    ARGSCALL(Kind.SYNTHETIC), TAILCALL(Kind.SYNTHETIC), COMPILEDCALL(Kind.SYNTHETIC),
+    MEMOCALL(Kind.SYNTHETIC), MEMOSTORE(Kind.SYNTHETIC), FORKCALL(Kind.SYNTHETIC), JOIN(Kind.SYNTHETIC);
+
+    private enum Kind { NORMAL, DEBUG_INFO, SYNTHETIC }
+
+    private final Kind kind;
+
+    private Opcode() {
+        this(Kind.NORMAL);
+    }
+
+    private Opcode(Kind kind) {
+        this.kind = kind;
+    }
+
+    /**
+     * Tells whether the code only carries information used by the debugger,
+     * and can be left out when a program is not being debugged
+     * @return true - if the code is debugger information; false - otherwise
+     */
+    public boolean isDebugInfo() {
+        return kind == Kind.DEBUG_INFO;
+    }
+
+    /**
+     * Tells whether the code is only ever produced while optimizing or
+     * compiling a loaded program
+     * @return true - if the code cannot appear in ByteCode files; false - otherwise
+     */
+    public boolean isSynthetic() {
+        return kind == Kind.SYNTHETIC;
+    }
+}
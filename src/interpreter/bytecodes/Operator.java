@@ -0,0 +1,92 @@
+package interpreter.bytecodes;
+
+import java.util.HashMap;
+
+
+/**
+ * Binary operators performed by BOP, each with its own implementation
+ * @see interpreter.bytecodes.BopCode
+ * @author Enrique Gavidia
+ */
+public enum Operator {
+    // Arithmetic operators
+    ADD("+") {
+        public int apply(int lower, int top) { return lower + top; }
+    },
+    SUB("-") {
+        public int apply(int lower, int top) { return lower - top; }
+    },
+    MUL("*") {
+        public int apply(int lower, int top) { return lower * top; }
+    },
+    DIV("/") {
+        public int apply(int lower, int top) { return lower / top; }
+    },
+
+    // Logical operators
+    EQ("==") {
+        public int apply(int lower, int top) { return lower == top ? 1 : 0; }
+    },
+    NE("!=") {
+        public int apply(int lower, int top) { return lower != top ? 1 : 0; }
+    },
+    LT("<") {
+        public int apply(int lower, int top) { return lower < top ? 1 : 0; }
+    },
+    LE("<=") {
+        public int apply(int lower, int top) { return lower <= top ? 1 : 0; }
+    },
+    GT(">") {
+        public int apply(int lower, int top) { return lower > top ? 1 : 0; }
+    },
+    GE(">=") {
+        public int apply(int lower, int top) { return lower >= top ? 1 : 0; }
+    },
+    AND("&") {
+        public int apply(int lower, int top) { return (lower > 0) && (top > 0) ? 1 : 0; }
+    },
+    OR("|") {
+        public int apply(int lower, int top) { return (lower > 0) || (top > 0) ? 1 : 0; }
+    };
+
+    private static final HashMap<String, Operator> symbols = new HashMap<String, Operator>();
+    static {
+        for (Operator operator : values())
+            symbols.put(operator.symbol, operator);
+    }
+
+    private final String symbol;
+
+    private Operator(String symbol) {
+        this.symbol = symbol;
+    }
+
+    /**
+     * Performs the operation on the top two values of the Runtime stack
+     * @param lower The value below the top of the stack
+     * @param top The value at the top of the stack
+     * @return Result of the operation
+     */
+    public abstract int apply(int lower, int top);
+
+    /**
+     * Gets the symbol the operator is written with in ByteCode files
+     * @return Operator symbol
+     */
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Gets the operator written with the given symbol
+     * @param symbol Operator symbol, as written in ByteCode files
+     * @return The matching operator
+     * @throws IllegalArgumentException if no operator uses the symbol
+     */
+    public static Operator fromSymbol(String symbol) {
+        Operator operator = symbols.get(symbol);
+        if (operator == null)
+            throw new IllegalArgumentException("Unknown operator '" + symbol + "'");
+        return operator;
+    }
+}
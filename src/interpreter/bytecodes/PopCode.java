@@ -21,9 +21,21 @@ public class PopCode extends ByteCode {
             vm.popRunStack();
     }
 
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.POP;
+    }
+
     @Override
     public String getArgs() {
         return Integer.toString(numOfPops);
     }
 
+    /**
+     * Gets the number of values removed from the Runtime stack
+     * @return Number of values to pop
+     */
+    public int getNumOfPops() {
+        return numOfPops;
+    }
 }
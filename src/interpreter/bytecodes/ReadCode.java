@@ -1,8 +1,6 @@
 package interpreter.bytecodes;
 
 import interpreter.VirtualMachine;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 
 /**
  * Reads input from the user
@@ -17,13 +15,15 @@ public class ReadCode extends ByteCode {
     @Override
     public void execute(VirtualMachine vm) {
         try {
-            BufferedReader in = new BufferedReader( new InputStreamReader( System.in ) );
-            String num = in.readLine();
-            vm.pushRunStack(Integer.parseInt(num));
-            
+            vm.pushRunStack(vm.readInput());
         } catch( java.io.IOException ex ) {}
     }
 
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.READ;
+    }
+
     @Override
     public String getArgs() {
         return "";
@@ -21,6 +21,11 @@ public class ReturnCode extends ByteCode {
         vm.setProgramCounter(vm.popReturnAddrs());
     }
 
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.RETURN;
+    }
+
     @Override
     public String getArgs() {
         return funcName;
@@ -24,8 +24,29 @@ public class StoreCode extends ByteCode {
         vm.storeRunStack(offset);
     }
 
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.STORE;
+    }
+
     @Override
     public String getArgs() {
         return Integer.toString(offset)+" "+id;
     }
+
+    /**
+     * Gets the offset, within the current frame, at which the value is stored
+     * @return Frame offset
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the name of the variable the value is stored in
+     * @return Variable ID
+     */
+    public String getId() {
+        return id;
+    }
 }
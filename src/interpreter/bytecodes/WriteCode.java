@@ -14,7 +14,12 @@ public class WriteCode extends ByteCode {
 
     @Override
     public void execute(VirtualMachine vm) {
-        System.out.println(vm.peekRunStack());
+        vm.writeOutput(vm.peekRunStack());
+    }
+
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.WRITE;
     }
 
     @Override
@@ -0,0 +1,57 @@
+package interpreter.bytecodes.debuggerByteCodes;
+
+import interpreter.VirtualMachine;
+import interpreter.bytecodes.ByteCode;
+import interpreter.bytecodes.Opcode;
+import interpreter.debugger.DebugVM;
+
+/**
+ * Trap patched over the first code of a line with a breakpoint; runs the
+ * code it replaced, then lets the DebugVM stop if the line was entered.
+ * Never read from ByteCode files, and reports the replaced code's Opcode
+ * and arguments, so that the rest of the debugger cannot tell it apart.
+ * @see interpreter.debugger.DebugVM#setBreakPoint(int, boolean)
+ * @author Enrique Gavidia
+ */
+public class BreakpointCode extends ByteCode {
+    private final ByteCode code;
+
+    /**
+     * @param code The code the trap replaces
+     */
+    public BreakpointCode(ByteCode code) {
+        this.code = code;
+    }
+
+    @Override
+    public void init(String args) {
+        throw new UnsupportedOperationException("init method not supported by BreakpointCode.");
+    }
+
+    @Override
+    public void execute(VirtualMachine vm) {
+        execute((DebugVM) vm);
+    }
+
+    public void execute(DebugVM vm) {
+        vm.executeTrapped(code);
+    }
+
+    /**
+     * Gets the code the trap replaced
+     * @return The original code
+     */
+    public ByteCode getCode() {
+        return code;
+    }
+
+    @Override
+    public Opcode getOpcode() {
+        return code.getOpcode();
+    }
+
+    @Override
+    public String getArgs() {
+        return code.getArgs();
+    }
+}
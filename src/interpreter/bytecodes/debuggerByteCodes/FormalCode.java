@@ -2,6 +2,7 @@ package interpreter.bytecodes.debuggerByteCodes;
 
 import interpreter.VirtualMachine;
 import interpreter.bytecodes.ByteCode;
+import interpreter.bytecodes.Opcode;
 import interpreter.debugger.DebugVM;
 
 /**
@@ -24,9 +25,23 @@ public class FormalCode extends ByteCode {
     }
 
     public void execute(DebugVM vm) {
-        vm.addRecordEntry(id, offset + vm.runStackSize() - 1);
+        // The offset counts from the start of the function's frame
+        vm.addRecordEntry(vm.getFrameStart() + offset);
     }
-    
+
+    /**
+     * Gets the name of the formal argument
+     * @return Variable ID
+     */
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.FORMAL;
+    }
+
     @Override
     public String getArgs() {
         return id + " " + offset;
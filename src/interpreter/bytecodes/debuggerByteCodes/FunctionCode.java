@@ -2,6 +2,7 @@ package interpreter.bytecodes.debuggerByteCodes;
 
 import interpreter.VirtualMachine;
 import interpreter.bytecodes.ByteCode;
+import interpreter.bytecodes.Opcode;
 import interpreter.debugger.DebugVM;
 
 /**
@@ -29,6 +30,19 @@ public class FunctionCode extends ByteCode {
         vm.setCurrentLine(startLine);
     }
 
+    /**
+     * Gets the source line the function starts on
+     * @return Line number, or -1 for intrinsic functions
+     */
+    public int getStartLine() {
+        return startLine;
+    }
+
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.FUNCTION;
+    }
+
     @Override
     public String getArgs() {
         return funcName + " " + startLine + " " + endLine;
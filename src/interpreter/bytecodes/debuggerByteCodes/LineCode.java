@@ -2,6 +2,7 @@ package interpreter.bytecodes.debuggerByteCodes;
 
 import interpreter.VirtualMachine;
 import interpreter.bytecodes.ByteCode;
+import interpreter.bytecodes.Opcode;
 import interpreter.debugger.DebugVM;
 
 /**
@@ -25,6 +26,19 @@ public class LineCode extends ByteCode {
         vm.setCurrentLine(lineNumber);
     }
 
+    /**
+     * Gets the source line the code starts
+     * @return Line number, or -1 for code without a source line
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.LINE;
+    }
+
     @Override
     public String getArgs() {
         return "" + lineNumber;
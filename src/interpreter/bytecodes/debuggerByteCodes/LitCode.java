@@ -21,7 +21,7 @@ public class LitCode extends interpreter.bytecodes.LitCode {
         // only add it to the function record if it is an actual declared variable
         if (!id.isEmpty()) {
             int offset = vm.runStackSize() - 1;
-            vm.addRecordEntry(id, offset);
+            vm.addRecordEntry(offset);
         }
     }
 }
@@ -0,0 +1,58 @@
+package interpreter.bytecodes.debuggerByteCodes;
+
+import interpreter.VirtualMachine;
+import interpreter.bytecodes.ByteCode;
+import interpreter.bytecodes.Opcode;
+import interpreter.bytecodes.StoreCode;
+import interpreter.debugger.DebugVM;
+
+/**
+ * Patched over a STORE that can write to the watched variable; stores the
+ * value like the code it replaced, and lets the DebugVM stop if the store
+ * hit the variable's slot. Never read from ByteCode files, and reports the
+ * replaced code's Opcode and arguments.
+ * @see interpreter.debugger.DebugVM#setWatch(String)
+ * @author Enrique Gavidia
+ */
+public class WatchedStoreCode extends ByteCode {
+    private final StoreCode code;
+
+    /**
+     * @param code The STORE the watch replaces
+     */
+    public WatchedStoreCode(StoreCode code) {
+        this.code = code;
+    }
+
+    @Override
+    public void init(String args) {
+        throw new UnsupportedOperationException("init method not supported by WatchedStoreCode.");
+    }
+
+    @Override
+    public void execute(VirtualMachine vm) {
+        execute((DebugVM) vm);
+    }
+
+    public void execute(DebugVM vm) {
+        vm.storeWatched(code.getOffset());
+    }
+
+    /**
+     * Gets the STORE the watch replaced
+     * @return The original code
+     */
+    public StoreCode getCode() {
+        return code;
+    }
+
+    @Override
+    public Opcode getOpcode() {
+        return code.getOpcode();
+    }
+
+    @Override
+    public String getArgs() {
+        return code.getArgs();
+    }
+}
@@ -0,0 +1,56 @@
+package interpreter.bytecodes.fusedByteCodes;
+
+import interpreter.VirtualMachine;
+import interpreter.bytecodes.BranchCode;
+import interpreter.bytecodes.Opcode;
+
+/**
+ * Superinstruction for 'ARGS n; CALL f'; sets up the new frame and calls
+ * the function
+ * @author Enrique Gavidia
+ * @see interpreter.optimizer.SuperInstructionPass
+ */
+public class ArgsCallCode extends BranchCode {
+    private final int numOfArgs;
+
+    public ArgsCallCode(int numOfArgs, String label, int target) {
+        super(label, target);
+        this.numOfArgs = numOfArgs;
+    }
+
+    @Override
+    public void init(String args) {
+        throw new UnsupportedOperationException("init method not supported by ArgsCallCode.");
+    }
+
+    @Override
+    public void execute(VirtualMachine vm) {
+        vm.newRunStackFrameAt(vm.runStackSize() - numOfArgs);
+        vm.pushReturnAddrs(vm.getProgramCounter());
+        vm.setProgramCounter(target-1);
+        vm.profileCall(target);
+    }
+
+    @Override
+    public BranchCode resolve(int target) {
+        return new ArgsCallCode(numOfArgs, label, target);
+    }
+
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.ARGSCALL;
+    }
+
+    @Override
+    public String getArgs() {
+        return numOfArgs + " " + label;
+    }
+
+    /**
+     * Gets the number of arguments passed to the function
+     * @return Number of arguments
+     */
+    public int getNumOfArgs() {
+        return numOfArgs;
+    }
+}
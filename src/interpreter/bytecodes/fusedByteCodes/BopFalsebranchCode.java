@@ -0,0 +1,57 @@
+package interpreter.bytecodes.fusedByteCodes;
+
+import interpreter.VirtualMachine;
+import interpreter.bytecodes.BranchCode;
+import interpreter.bytecodes.Opcode;
+import interpreter.bytecodes.Operator;
+
+/**
+ * Superinstruction for 'BOP op; FALSEBRANCH L'; branches on the result of
+ * the operation without pushing it
+ * @author Enrique Gavidia
+ * @see interpreter.optimizer.SuperInstructionPass
+ */
+public class BopFalsebranchCode extends BranchCode {
+    private final Operator operator;
+
+    public BopFalsebranchCode(Operator operator, String label, int target) {
+        super(label, target);
+        this.operator = operator;
+    }
+
+    @Override
+    public void init(String args) {
+        throw new UnsupportedOperationException("init method not supported by BopFalsebranchCode.");
+    }
+
+    @Override
+    public void execute(VirtualMachine vm) {
+        int topInt = vm.popRunStack();
+        int lowerInt = vm.popRunStack();
+        if (operator.apply(lowerInt, topInt) == 0)
+            vm.setProgramCounter(target-1);
+    }
+
+    @Override
+    public BranchCode resolve(int target) {
+        return new BopFalsebranchCode(operator, label, target);
+    }
+
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.BOPFALSEBRANCH;
+    }
+
+    @Override
+    public String getArgs() {
+        return operator.getSymbol() + " " + label;
+    }
+
+    /**
+     * Gets the operator the ByteCode performs
+     * @return Binary operator
+     */
+    public Operator getOperator() {
+        return operator;
+    }
+}
@@ -0,0 +1,62 @@
+package interpreter.bytecodes.fusedByteCodes;
+
+import interpreter.VirtualMachine;
+import interpreter.bytecodes.BranchCode;
+import interpreter.bytecodes.Opcode;
+
+/**
+ * Replaces 'ARGS n; CALL f' for a pure call whose result is combined with
+ * that of a second, independent call. The call is handed to the VM's
+ * ForkJoinEvaluator, leaving a placeholder for its result that the JOIN
+ * after the second call fills in; if the VM does not fork it, this is an
+ * ordinary call.
+ * @author Enrique Gavidia
+ * @see interpreter.optimizer.ForkJoinPass
+ */
+public class ForkCallCode extends BranchCode {
+    private final int numOfArgs;
+
+    public ForkCallCode(int numOfArgs, String label, int target) {
+        super(label, target);
+        this.numOfArgs = numOfArgs;
+    }
+
+    @Override
+    public void init(String args) {
+        throw new UnsupportedOperationException("init method not supported by ForkCallCode.");
+    }
+
+    @Override
+    public void execute(VirtualMachine vm) {
+        if (vm.forkCall(target, numOfArgs))
+            return;
+
+        vm.newRunStackFrameAt(vm.runStackSize() - numOfArgs);
+        vm.pushReturnAddrs(vm.getProgramCounter());
+        vm.setProgramCounter(target-1);
+        vm.profileCall(target);
+    }
+
+    @Override
+    public BranchCode resolve(int target) {
+        return new ForkCallCode(numOfArgs, label, target);
+    }
+
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.FORKCALL;
+    }
+
+    @Override
+    public String getArgs() {
+        return numOfArgs + " " + label;
+    }
+
+    /**
+     * Gets the number of arguments passed to the function
+     * @return Number of arguments
+     */
+    public int getNumOfArgs() {
+        return numOfArgs;
+    }
+}
@@ -0,0 +1,35 @@
+package interpreter.bytecodes.fusedByteCodes;
+
+import interpreter.VirtualMachine;
+import interpreter.bytecodes.ByteCode;
+import interpreter.bytecodes.Opcode;
+
+/**
+ * Follows the second of two sibling calls; waits for the call forked by the
+ * matching FORKCALL, and puts its result below the second call's
+ * @author Enrique Gavidia
+ * @see interpreter.bytecodes.fusedByteCodes.ForkCallCode
+ */
+public class JoinCode extends ByteCode {
+    public JoinCode() {}
+
+    @Override
+    public void init(String args) {
+        throw new UnsupportedOperationException("init method not supported by JoinCode.");
+    }
+
+    @Override
+    public void execute(VirtualMachine vm) {
+        vm.joinCall();
+    }
+
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.JOIN;
+    }
+
+    @Override
+    public String getArgs() {
+        return "";
+    }
+}
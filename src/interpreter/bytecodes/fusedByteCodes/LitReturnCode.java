@@ -0,0 +1,50 @@
+package interpreter.bytecodes.fusedByteCodes;
+
+import interpreter.VirtualMachine;
+import interpreter.bytecodes.ByteCode;
+import interpreter.bytecodes.Opcode;
+
+/**
+ * Superinstruction for 'LIT v; RETURN'; returns a literal from a function
+ * @author Enrique Gavidia
+ * @see interpreter.optimizer.SuperInstructionPass
+ */
+public class LitReturnCode extends ByteCode {
+    private final int value;
+    private final String funcName;
+
+    public LitReturnCode(int value, String funcName) {
+        this.value = value;
+        this.funcName = funcName;
+    }
+
+    @Override
+    public void init(String args) {
+        throw new UnsupportedOperationException("init method not supported by LitReturnCode.");
+    }
+
+    @Override
+    public void execute(VirtualMachine vm) {
+        vm.pushRunStack(value);
+        vm.popRunStackFrame();
+        vm.setProgramCounter(vm.popReturnAddrs());
+    }
+
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.LITRETURN;
+    }
+
+    @Override
+    public String getArgs() {
+        return value + " " + funcName;
+    }
+
+    /**
+     * Gets the literal value used by the ByteCode
+     * @return Literal value
+     */
+    public int getValue() {
+        return value;
+    }
+}
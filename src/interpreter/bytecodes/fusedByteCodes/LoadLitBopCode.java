@@ -0,0 +1,70 @@
+package interpreter.bytecodes.fusedByteCodes;
+
+import interpreter.VirtualMachine;
+import interpreter.bytecodes.ByteCode;
+import interpreter.bytecodes.Opcode;
+import interpreter.bytecodes.Operator;
+
+/**
+ * Superinstruction for 'LOAD n; LIT k; BOP op'; applies the operator to a
+ * frame value and a literal
+ * @author Enrique Gavidia
+ * @see interpreter.optimizer.SuperInstructionPass
+ */
+public class LoadLitBopCode extends ByteCode {
+    private final int offset;
+    private final int value;
+    private final Operator operator;
+
+    public LoadLitBopCode(int offset, int value, Operator operator) {
+        this.offset = offset;
+        this.value = value;
+        this.operator = operator;
+    }
+
+    @Override
+    public void init(String args) {
+        throw new UnsupportedOperationException("init method not supported by LoadLitBopCode.");
+    }
+
+    @Override
+    public void execute(VirtualMachine vm) {
+        int lowerInt = vm.loadRunStack(offset);
+        vm.popRunStack();
+        vm.pushRunStack(operator.apply(lowerInt, value));
+    }
+
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.LOADLITBOP;
+    }
+
+    @Override
+    public String getArgs() {
+        return offset + " " + value + " " + operator.getSymbol();
+    }
+
+    /**
+     * Gets the offset, within the current frame, of the value to load
+     * @return Frame offset
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the literal value used by the ByteCode
+     * @return Literal value
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Gets the operator the ByteCode performs
+     * @return Binary operator
+     */
+    public Operator getOperator() {
+        return operator;
+    }
+}
@@ -0,0 +1,64 @@
+package interpreter.bytecodes.fusedByteCodes;
+
+import interpreter.VirtualMachine;
+import interpreter.bytecodes.BranchCode;
+import interpreter.bytecodes.Opcode;
+
+/**
+ * Replaces 'ARGS n; CALL f' for a pure function f. If the VM's memo cache
+ * holds the result of calling f with the same arguments, the arguments are
+ * replaced by that result and the following MEMOSTORE is skipped; otherwise
+ * the function is called, and the MEMOSTORE it returns to caches its result.
+ * @author Enrique Gavidia
+ * @see interpreter.optimizer.MemoizationPass
+ */
+public class MemoCallCode extends BranchCode {
+    private final int numOfArgs;
+
+    public MemoCallCode(int numOfArgs, String label, int target) {
+        super(label, target);
+        this.numOfArgs = numOfArgs;
+    }
+
+    @Override
+    public void init(String args) {
+        throw new UnsupportedOperationException("init method not supported by MemoCallCode.");
+    }
+
+    @Override
+    public void execute(VirtualMachine vm) {
+        int pc = vm.getProgramCounter();
+        if (vm.recallMemoized(target, numOfArgs)) {
+            vm.setProgramCounter(pc+1);
+            return;
+        }
+
+        vm.newRunStackFrameAt(vm.runStackSize() - numOfArgs);
+        vm.pushReturnAddrs(pc);
+        vm.setProgramCounter(target-1);
+        vm.profileCall(target);
+    }
+
+    @Override
+    public BranchCode resolve(int target) {
+        return new MemoCallCode(numOfArgs, label, target);
+    }
+
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.MEMOCALL;
+    }
+
+    @Override
+    public String getArgs() {
+        return numOfArgs + " " + label;
+    }
+
+    /**
+     * Gets the number of arguments passed to the function
+     * @return Number of arguments
+     */
+    public int getNumOfArgs() {
+        return numOfArgs;
+    }
+}
@@ -0,0 +1,38 @@
+package interpreter.bytecodes.fusedByteCodes;
+
+import interpreter.VirtualMachine;
+import interpreter.bytecodes.ByteCode;
+import interpreter.bytecodes.Opcode;
+
+/**
+ * Follows a MEMOCALL; caches the value the called function just returned
+ * @author Enrique Gavidia
+ * @see interpreter.bytecodes.fusedByteCodes.MemoCallCode
+ */
+public class MemoStoreCode extends ByteCode {
+    private final String funcName;
+
+    public MemoStoreCode(String funcName) {
+        this.funcName = funcName;
+    }
+
+    @Override
+    public void init(String args) {
+        throw new UnsupportedOperationException("init method not supported by MemoStoreCode.");
+    }
+
+    @Override
+    public void execute(VirtualMachine vm) {
+        vm.memoize(vm.peekRunStack());
+    }
+
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.MEMOSTORE;
+    }
+
+    @Override
+    public String getArgs() {
+        return funcName;
+    }
+}
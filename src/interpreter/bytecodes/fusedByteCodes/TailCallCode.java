@@ -0,0 +1,59 @@
+package interpreter.bytecodes.fusedByteCodes;
+
+import interpreter.VirtualMachine;
+import interpreter.bytecodes.BranchCode;
+import interpreter.bytecodes.Opcode;
+
+/**
+ * Replaces 'ARGS n; CALL f' when the call is followed by a RETURN; the
+ * arguments are moved down to the start of the current frame, which the
+ * called function then takes over. No return address is pushed, so the
+ * function returns straight to the caller of the current one.
+ * @author Enrique Gavidia
+ * @see interpreter.optimizer.TailCallPass
+ */
+public class TailCallCode extends BranchCode {
+    private final int numOfArgs;
+
+    public TailCallCode(int numOfArgs, String label, int target) {
+        super(label, target);
+        this.numOfArgs = numOfArgs;
+    }
+
+    @Override
+    public void init(String args) {
+        throw new UnsupportedOperationException("init method not supported by TailCallCode.");
+    }
+
+    @Override
+    public void execute(VirtualMachine vm) {
+        // A tail call loops within the current frame, so it is profiled as
+        // a back edge
+        vm.profileBackEdge();
+        vm.reuseRunStackFrame(numOfArgs);
+        vm.setProgramCounter(target-1);
+    }
+
+    @Override
+    public BranchCode resolve(int target) {
+        return new TailCallCode(numOfArgs, label, target);
+    }
+
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.TAILCALL;
+    }
+
+    @Override
+    public String getArgs() {
+        return numOfArgs + " " + label;
+    }
+
+    /**
+     * Gets the number of arguments passed to the function
+     * @return Number of arguments
+     */
+    public int getNumOfArgs() {
+        return numOfArgs;
+    }
+}
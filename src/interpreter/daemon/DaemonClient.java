@@ -0,0 +1,98 @@
+package interpreter.daemon;
+
+import interpreter.Interpreter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <pre>
+ *
+ *     Drop-in replacement for the command line interpreter, that has a
+ *     running InterpreterDaemon do the work:
+ *     1. Connect to the daemon; with no daemon running, interpret the
+ *        program in this JVM instead
+ *     2. Send the arguments, with file paths made absolute, and everything
+ *        on the standard input
+ *     3. Copy the program's output as it arrives, and exit with its status
+ *
+ *     java interpreter.daemon.DaemonClient [-socket=&lt;path&gt;] &lt;interpreter arguments&gt;
+ *
+ *     The standard input is read to its end before the program starts.
+ *
+ * </pre>
+ * @see interpreter.daemon.InterpreterDaemon
+ * @author Enrique Gavidia
+ */
+public class DaemonClient {
+
+    /**
+     * Makes the paths of files the daemon has to open absolute, since the
+     * daemon runs in a directory of its own
+     */
+    private static String resolve(String arg) {
+        if (arg.startsWith("-batch="))
+            return "-batch=" + Paths.get(arg.substring(7)).toAbsolutePath();
+        if (arg.startsWith("-image="))
+            return "-image=" + Paths.get(arg.substring(7)).toAbsolutePath();
+        if (!arg.startsWith("-"))
+            return Paths.get(arg).toAbsolutePath().toString();
+        return arg;
+    }
+
+    public static void main(String args[]) throws IOException {
+        Path socket = Protocol.defaultSocket();
+        List<String> forwarded = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.startsWith("-socket="))
+                socket = Paths.get(arg.substring(8));
+            else
+                forwarded.add(resolve(arg));
+        }
+
+        SocketChannel daemon;
+        try {
+            daemon = SocketChannel.open(StandardProtocolFamily.UNIX);
+            daemon.connect(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            Interpreter.main(forwarded.toArray(new String[0]));
+            return;
+        }
+
+        try (SocketChannel client = daemon) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+            out.writeInt(forwarded.size());
+            for (String arg : forwarded)
+                out.writeUTF(arg);
+            byte[] stdin = System.in.readAllBytes();
+            out.writeInt(stdin.length);
+            out.write(stdin);
+            out.flush();
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+            while (true) {
+                byte type = in.readByte();
+                if (type == Protocol.EXIT) {
+                    int status = in.readInt();
+                    System.out.flush();
+                    System.exit(status);
+                }
+
+                PrintStream stream = type == Protocol.ERRORS ? System.err : System.out;
+                stream.write(in.readNBytes(in.readInt()));
+                stream.flush();
+            }
+        }
+    }
+}
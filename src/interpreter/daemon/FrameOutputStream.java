@@ -0,0 +1,45 @@
+package interpreter.daemon;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * Stream that sends what is written to it to a client, one frame per flush
+ * @see interpreter.daemon.Protocol
+ * @author Enrique Gavidia
+ */
+class FrameOutputStream extends OutputStream {
+    private final DataOutputStream client;
+    private final byte type;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    /**
+     * @param client Stream to the client
+     * @param type Kind of frame sent, OUTPUT or ERRORS
+     */
+    FrameOutputStream(DataOutputStream client, byte type) {
+        this.client = client;
+        this.type = type;
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        pending.write(b);
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) {
+        pending.write(bytes, offset, length);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (pending.size() == 0)
+            return;
+        Protocol.writeFrame(client, type, pending.toByteArray(), pending.size());
+        pending.reset();
+    }
+}
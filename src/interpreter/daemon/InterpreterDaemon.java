@@ -0,0 +1,191 @@
+package interpreter.daemon;
+
+import interpreter.CodeTable;
+import interpreter.Interpreter;
+import interpreter.ProgramCache;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <pre>
+ *
+ *     Keeps a JVM running the interpreter warm, so that programs do not pay
+ *     for starting one every time:
+ *     1. Listen on a Unix domain socket
+ *     2. For each request, configure an Interpreter with the request's
+ *        arguments, as if given on the command line
+ *     3. Run it on a pool of workers, with the request's standard input,
+ *        streaming its output back to the client
+ *
+ *     Linked programs are kept in a cache shared by every request, so each
+ *     ByteCode file is only parsed again when it changes.
+ *
+ *     java interpreter.daemon.InterpreterDaemon [-socket=&lt;path&gt;] [-workers=&lt;n&gt;] [-cache=&lt;megabytes&gt;]
+ *
+ * </pre>
+ * @see interpreter.daemon.DaemonClient
+ * @author Enrique Gavidia
+ */
+public class InterpreterDaemon {
+    private final Path socket;
+    private final ExecutorService workers;
+    private final ProgramCache programs;
+    private long served;
+
+    /**
+     * @param socket Path of the socket to listen on
+     * @param workers Number of requests served at once
+     * @param programs Cache of the programs requests run
+     */
+    public InterpreterDaemon(Path socket, int workers, ProgramCache programs) {
+        this.socket = socket;
+        this.workers = Executors.newFixedThreadPool(workers);
+        this.programs = programs;
+    }
+
+    /**
+     * Accepts requests until the JVM is stopped
+     * @throws IOException if the socket cannot be listened on
+     */
+    public void listen() throws IOException {
+        CodeTable.init();
+
+        // A socket left behind by a daemon that was killed blocks the bind
+        Files.deleteIfExists(socket);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(socket);
+                } catch (IOException e) {}
+            }));
+            System.out.println("****Listening on " + socket + "****");
+
+            while (true) {
+                SocketChannel client = server.accept();
+                long request = ++served;
+                workers.execute(() -> serve(client, request));
+            }
+        }
+    }
+
+    /**
+     * Reads a request from a client, runs it, and sends back the results
+     * @param channel Connection to the client
+     * @param request Number of the request, counted from 1 as accepted
+     */
+    private void serve(SocketChannel channel, long request) {
+        try (SocketChannel client = channel) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+
+            String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i++)
+                args[i] = in.readUTF();
+            byte[] stdin = in.readNBytes(in.readInt());
+
+            PrintStream output = new PrintStream(new FrameOutputStream(out, Protocol.OUTPUT), true);
+            PrintStream errors = new PrintStream(new FrameOutputStream(out, Protocol.ERRORS), true);
+            int status = execute(args, stdin, output, errors);
+            output.flush();
+            errors.flush();
+
+            synchronized (out) {
+                out.writeByte(Protocol.EXIT);
+                out.writeInt(status);
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("**** request " + request + ": " + e);
+        }
+    }
+
+    /**
+     * Runs a single request
+     * @return The exit status the command line interpreter would have had
+     */
+    private int execute(String[] args, byte[] stdin, PrintStream output, PrintStream errors) {
+        if (Arrays.asList(args).contains("-d")) {
+            errors.println("****The debugger cannot run in the daemon; run it directly****");
+            return 1;
+        }
+
+        Interpreter interpreter = Interpreter.fromArgs(args, output);
+        if (interpreter == null)
+            return 1;
+
+        // A program read from the standard input takes all of it, as it
+        // would on the command line
+        ByteArrayInputStream in = new ByteArrayInputStream(stdin);
+        BufferedReader input = new BufferedReader(new InputStreamReader(in));
+        interpreter.setStreams(input, output, errors);
+        interpreter.setProgramInput(in);
+        interpreter.setProgramCache(programs);
+        try {
+            interpreter.run();
+            return 0;
+        } catch (RuntimeException | StackOverflowError e) {
+            errors.println("Exception: " + e);
+            return 1;
+        }
+    }
+
+    public static void main(String args[]) {
+        Path socket = Protocol.defaultSocket();
+        int workers = Runtime.getRuntime().availableProcessors();
+        long cacheBudget = ProgramCache.DEFAULT_BUDGET;
+        boolean validArgs = true;
+        for (String arg : args) {
+            if (arg.startsWith("-socket="))
+                socket = Paths.get(arg.substring(8));
+            else if (arg.startsWith("-workers=")) {
+                try {
+                    workers = Integer.parseInt(arg.substring(9));
+                    validArgs &= workers > 0;
+                } catch (NumberFormatException e) {
+                    validArgs = false;
+                }
+            }
+            else if (arg.startsWith("-cache=")) {
+                try {
+                    cacheBudget = Long.parseLong(arg.substring(7)) << 20;
+                    validArgs &= cacheBudget >= 0;
+                } catch (NumberFormatException e) {
+                    validArgs = false;
+                }
+            }
+            else
+                validArgs = false;
+        }
+
+        if (!validArgs) {
+            System.out.println("***Incorrect usage, try: java interpreter.daemon.InterpreterDaemon [-socket=<path>] [-workers=<n>] [-cache=<megabytes>]");
+            System.exit(1);
+        }
+
+        try {
+            new InterpreterDaemon(socket, workers, new ProgramCache(cacheBudget)).listen();
+        } catch (IOException e) {
+            System.out.println("**** " + e);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package interpreter.daemon;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+
+/**
+ * Wire format spoken between the DaemonClient and the InterpreterDaemon.
+ * <pre>
+ *     request:   int argc, argc x UTF argument, int length, length x byte stdin
+ *     response:  any number of frames: byte OUTPUT|ERRORS, int length, length x byte
+ *                followed by: byte EXIT, int status
+ * </pre>
+ * @author Enrique Gavidia
+ */
+final class Protocol {
+    static final byte OUTPUT = 'O';
+    static final byte ERRORS = 'E';
+    static final byte EXIT = 'X';
+
+    private Protocol() {}
+
+    /**
+     * Gets the socket the daemon listens on, unless told otherwise
+     * @return Path of the default socket
+     */
+    static Path defaultSocket() {
+        return Paths.get(System.getProperty("java.io.tmpdir"), "x-interpreter.sock");
+    }
+
+    /**
+     * Writes a single frame of a response
+     * @param out Stream to the client
+     * @param type OUTPUT or ERRORS
+     * @param bytes Buffer holding the frame's contents
+     * @param length Number of bytes from the buffer to send
+     * @throws IOException if the client cannot be written to
+     */
+    static void writeFrame(DataOutputStream out, byte type, byte[] bytes, int length) throws IOException {
+        synchronized (out) {
+            out.writeByte(type);
+            out.writeInt(length);
+            out.write(bytes, 0, length);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package interpreter.debugger;
+
+import interpreter.bytecodes.Operator;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides whether a breakpoint stops the program when its line is entered.
+ * Expressions are compiled once, when the breakpoint is set, into a tree of
+ * closures over the variables of the function being executed; they are only
+ * evaluated when the breakpoint's trap finds its line entered.
+ * <pre>
+ *
+ *     expression := or
+ *     or         := and { '|' and }
+ *     and        := relation { '&amp;' relation }
+ *     relation   := sum [ ('==' | '!=' | '&lt;' | '&lt;=' | '&gt;' | '&gt;=') sum ]
+ *     sum        := product { ('+' | '-') product }
+ *     product    := unary { ('*' | '/') unary }
+ *     unary      := ('-' | '!') unary | primary
+ *     primary    := number | 'true' | 'false' | variable | '(' expression ')'
+ *
+ * </pre>
+ * Operators behave like the BOP codes of the same symbol, so a condition
+ * holds when it evaluates to a value greater than 0.
+ * @see interpreter.debugger.DebugVM#setBreakPoint(int, BreakCondition)
+ * @author Enrique Gavidia
+ */
+public class BreakCondition {
+    /**
+     * A compiled expression, evaluated in the function being executed
+     */
+    private interface Expression {
+        int evaluate(DebugVM vm);
+    }
+
+    private final String description;
+    private final Expression expression;
+    private int skipsLeft;
+
+    private BreakCondition(String description, Expression expression, int skips) {
+        this.description = description;
+        this.expression = expression;
+        this.skipsLeft = skips;
+    }
+
+    /**
+     * Compiles a condition that stops the program whenever the expression holds
+     * @param source The expression, over the variables in scope at the breakpoint
+     * @return The compiled condition
+     * @throws IllegalArgumentException if the expression cannot be parsed
+     */
+    public static BreakCondition compile(String source) {
+        Parser parser = new Parser(source);
+        Expression expression = parser.parseExpression();
+        if (!parser.atEnd())
+            throw new IllegalArgumentException("Unexpected '" + parser.peek() + "' in condition '" + source + "'");
+        return new BreakCondition("if " + source.trim(), expression, 0);
+    }
+
+    /**
+     * Creates a condition that lets the line be entered the given number of
+     * times, then stops the program every time after that
+     * @param count Number of times to skip the breakpoint
+     * @return The condition
+     */
+    public static BreakCondition after(int count) {
+        return new BreakCondition("after " + count, null, count);
+    }
+
+    /**
+     * Tells whether the breakpoint should stop the program; called once
+     * every time its line is entered
+     * @param vm The DebugVM whose current function the condition is evaluated in
+     * @return true - stop; false - keep running
+     * @throws IllegalStateException if a variable is not in scope
+     * @throws ArithmeticException if the expression divides by zero
+     */
+    public boolean test(DebugVM vm) {
+        if (skipsLeft > 0) {
+            skipsLeft--;
+            return false;
+        }
+        return expression == null || expression.evaluate(vm) > 0;
+    }
+
+    /**
+     * Returns the condition as the user gave it
+     * @return "if &lt;expression&gt;" or "after &lt;count&gt;"
+     */
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    //----{ Parser }------------------------------------------------------------
+    /**
+     * Recursive descent parser turning the tokens of an expression into closures
+     */
+    private static class Parser {
+        private final String source;
+        private final List<String> tokens = new ArrayList<String>();
+        private int position;
+
+        Parser(String source) {
+            this.source = source;
+            int index = 0;
+            while (index < source.length()) {
+                char c = source.charAt(index);
+                int end = index + 1;
+                if (Character.isWhitespace(c)) {
+                    index++;
+                    continue;
+                } else if (Character.isLetterOrDigit(c) || c == '_') {
+                    while (end < source.length() && (Character.isLetterOrDigit(source.charAt(end)) || source.charAt(end) == '_'))
+                        end++;
+                } else if ("=!<>".indexOf(c) >= 0 && end < source.length() && source.charAt(end) == '=')
+                    end++;
+                tokens.add(source.substring(index, end));
+                index = end;
+            }
+        }
+
+        boolean atEnd() {
+            return position == tokens.size();
+        }
+
+        String peek() {
+            return atEnd() ? "" : tokens.get(position);
+        }
+
+        /**
+         * Consumes the next token if it is one of the given symbols
+         * @return The symbol consumed, or null if the next token is none of them
+         */
+        private String accept(String... symbols) {
+            for (String symbol : symbols)
+                if (peek().equals(symbol)) {
+                    position++;
+                    return symbol;
+                }
+            return null;
+        }
+
+        private void expect(String symbol) {
+            if (accept(symbol) == null)
+                throw new IllegalArgumentException("Expected '" + symbol + "' in condition '" + source + "'");
+        }
+
+        Expression parseExpression() {
+            Expression lower = parseAnd();
+            while (accept("|") != null)
+                lower = binary(Operator.OR, lower, parseAnd());
+            return lower;
+        }
+
+        private Expression parseAnd() {
+            Expression lower = parseRelation();
+            while (accept("&") != null)
+                lower = binary(Operator.AND, lower, parseRelation());
+            return lower;
+        }
+
+        private Expression parseRelation() {
+            Expression lower = parseSum();
+            String symbol = accept("==", "!=", "<", "<=", ">", ">=");
+            if (symbol != null)
+                lower = binary(Operator.fromSymbol(symbol), lower, parseSum());
+            return lower;
+        }
+
+        private Expression parseSum() {
+            Expression lower = parseProduct();
+            for (String symbol; (symbol = accept("+", "-")) != null; )
+                lower = binary(Operator.fromSymbol(symbol), lower, parseProduct());
+            return lower;
+        }
+
+        private Expression parseProduct() {
+            Expression lower = parseUnary();
+            for (String symbol; (symbol = accept("*", "/")) != null; )
+                lower = binary(Operator.fromSymbol(symbol), lower, parseUnary());
+            return lower;
+        }
+
+        private Expression parseUnary() {
+            if (accept("-") != null) {
+                Expression operand = parseUnary();
+                return vm -> -operand.evaluate(vm);
+            }
+            if (accept("!") != null) {
+                Expression operand = parseUnary();
+                return vm -> operand.evaluate(vm) > 0 ? 0 : 1;
+            }
+            return parsePrimary();
+        }
+
+        private Expression parsePrimary() {
+            if (accept("(") != null) {
+                Expression inner = parseExpression();
+                expect(")");
+                return inner;
+            }
+
+            String token = peek();
+            if (token.matches("\\d+")) {
+                position++;
+                int value;
+                try {
+                    value = Integer.parseInt(token);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Number " + token + " is too large in condition '" + source + "'");
+                }
+                return vm -> value;
+            } else if (token.equals("true") || token.equals("false")) {
+                position++;
+                int value = token.equals("true") ? 1 : 0;
+                return vm -> value;
+            } else if (token.matches("[A-Za-z_]\\w*")) {
+                position++;
+                return vm -> vm.getVariableValue(token);
+            }
+
+            if (atEnd())
+                throw new IllegalArgumentException("Condition '" + source + "' ends unexpectedly");
+            throw new IllegalArgumentException("Unexpected '" + token + "' in condition '" + source + "'");
+        }
+
+        private static Expression binary(Operator operator, Expression lower, Expression top) {
+            return vm -> operator.apply(lower.evaluate(vm), top.evaluate(vm));
+        }
+    }
+}
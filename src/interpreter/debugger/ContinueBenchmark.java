@@ -0,0 +1,123 @@
+package interpreter.debugger;
+
+import interpreter.ByteCodeLoader;
+import interpreter.CodeTable;
+import interpreter.Program;
+import interpreter.VirtualMachine;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <pre>
+ *
+ *     Measures how much slower a program runs under the debugger's continue
+ *     than on the plain VirtualMachine:
+ *     1. Load the program twice: with its debugger codes, and without them
+ *     2. Run it on the VirtualMachine
+ *     3. Run it on the DebugVM, continuing from every breakpoint until it
+ *        ends, and compare the two times
+ *
+ *     java interpreter.debugger.ContinueBenchmark [-brk=&lt;line&gt;[,&lt;line&gt;...]] [-if=&lt;condition&gt;] &lt;program&gt; [input...]
+ *
+ *     The program is given like to the debugger, without its extension; a
+ *     condition makes every breakpoint a conditional one.
+ *
+ * </pre>
+ * @author Enrique Gavidia
+ */
+public class ContinueBenchmark {
+    private static final int ROUNDS = 5;
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    public static void main(String args[]) throws IOException {
+        List<Integer> breakPoints = new ArrayList<Integer>();
+        List<String> positional = new ArrayList<String>();
+        String condition = null;
+        boolean validArgs = true;
+        for (String arg : args) {
+            try {
+                if (arg.startsWith("-brk="))
+                    for (String line : arg.substring(5).split(","))
+                        breakPoints.add(Integer.parseInt(line));
+                else if (arg.startsWith("-if="))
+                    condition = arg.substring(4);
+                else
+                    positional.add(arg);
+            } catch (NumberFormatException e) {
+                validArgs = false;
+            }
+        }
+
+        if (positional.isEmpty() || !validArgs) {
+            System.out.println("***Incorrect usage, try: java interpreter.debugger.ContinueBenchmark [-brk=<line>[,<line>...]] [-if=<condition>] <program> [input...]");
+            System.exit(1);
+        }
+
+        String name = positional.get(0);
+        String input = "";
+        for (String line : positional.subList(1, positional.size()))
+            input += line + "\n";
+
+        Program plain, debug;
+        List<SourceLineEntry> sourceCode;
+        try {
+            CodeTable.init();
+            plain = new ByteCodeLoader(name + ".x.cod").loadCodes();
+            debug = new DebugByteCodeLoader(name + ".x.cod").loadCodes();
+            sourceCode = SourceCodeLoader.load(name + ".x");
+            // Checks the condition parses before any round runs
+            if (condition != null)
+                BreakCondition.compile(condition);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("**** " + e.getMessage());
+            return;
+        }
+
+        // The first rounds let the JVM warm up; the best one is reported
+        double plainBest = Double.MAX_VALUE, debugBest = Double.MAX_VALUE;
+        int stops = 0;
+        for (int round = 1; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            new VirtualMachine(plain, new BufferedReader(new StringReader(input)), DISCARD).executeProgram();
+            double plainTime = (System.nanoTime() - start) / 1e6;
+
+            DebugVM vm = new DebugVM(debug, sourceCode, new BufferedReader(new StringReader(input)), DISCARD);
+            for (int line : breakPoints) {
+                // Conditions count the times their line is entered, so every round compiles its own
+                boolean set = false;
+                if (line >= 1 && line <= sourceCode.size())
+                    set = condition == null ? vm.setBreakPoint(line - 1, true)
+                                            : vm.setBreakPoint(line - 1, BreakCondition.compile(condition));
+                if (!set)
+                    System.out.println("Error: cannot set breakpoint on line " + line + ".");
+            }
+
+            // The debugger prints where it stopped, and what READ asks for
+            PrintStream console = System.out;
+            System.setOut(DISCARD);
+            start = System.nanoTime();
+            stops = 0;
+            try {
+                while (vm.isRunning()) {
+                    vm.setStepMode(DebugVM.StepMode.CONTINUE);
+                    vm.executeProgram();
+                    stops++;
+                }
+            } finally {
+                System.setOut(console);
+            }
+            double debugTime = (System.nanoTime() - start) / 1e6;
+
+            plainBest = Math.min(plainBest, plainTime);
+            debugBest = Math.min(debugBest, debugTime);
+            System.out.printf("round %1$d: plain %2$.1fms, continue %3$.1fms (%4$d stops)\n",
+                round, plainTime, debugTime, stops - 1);
+        }
+        System.out.printf("continue runs %1$.2fx as long as the plain VM\n", debugBest / plainBest);
+    }
+}
@@ -2,6 +2,8 @@ package interpreter.debugger;
 
 import interpreter.ByteCodeLoader;
 import interpreter.CodeTable;
+import interpreter.bytecodes.ByteCode;
+import interpreter.bytecodes.Opcode;
 import java.io.IOException;
 
 /**
@@ -14,16 +16,13 @@ public class DebugByteCodeLoader extends ByteCodeLoader {
     }
 
     /**
-     * Decides whether a specialized Debug ByteCode is needed, and returns the
-     * appropriate ByteCode class name
-     * @param code Code string read from code file
-     * @return ByteCode class name
+     * Creates the specialized Debug ByteCode for the given Opcode when there is
+     * one, and the normal ByteCode otherwise
+     * @param opcode Opcode read from the code file
+     * @return A new, uninitiated ByteCode
      */
     @Override
-    protected String getCodeClass(String code) {
-        if (code.matches("FORMAL|FUNCTION|LINE|LIT|POP|RETURN"))
-            return "debuggerByteCodes." + CodeTable.get(code);
-        else
-            return CodeTable.get(code);
+    protected ByteCode newCode(Opcode opcode) {
+        return CodeTable.newDebugCode(opcode);
     }
 }
@@ -4,7 +4,20 @@ import interpreter.Program;
 import interpreter.RunTimeStack;
 import interpreter.VirtualMachine;
 import interpreter.bytecodes.ByteCode;
+import interpreter.bytecodes.Opcode;
+import interpreter.bytecodes.StoreCode;
+import interpreter.bytecodes.debuggerByteCodes.BreakpointCode;
+import interpreter.bytecodes.debuggerByteCodes.FunctionCode;
+import interpreter.bytecodes.debuggerByteCodes.LineCode;
+import interpreter.bytecodes.debuggerByteCodes.WatchedStoreCode;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 
@@ -13,14 +26,51 @@ import java.util.Stack;
  * @author Enrique Gavidia
  */
 public class DebugVM extends VirtualMachine {
-    private Stack<FunctionEnvironmentRecord> environmentStack;
+    /**
+     * How far executeProgram runs before handing control back to the debugger
+     */
+    public enum StepMode {
+        // Until a breakpoint is reached
+        CONTINUE,
+        // Until the current line is left
+        OVER,
+        // Until the current line is left, or a function is entered
+        INTO,
+        // Until the current function returns, or a breakpoint is reached
+        OUT
+    }
+
+    // Function records, reused by every function entered at the same depth
+    private FunctionEnvironmentRecord[] environmentStack;
+    private int environmentDepth;
+    // Layout of the function declared at each address, and the layout and
+    // slot of each variable declared at each address
+    private FrameLayout[] layouts;
+    private FrameLayout[] declaredIn;
+    private int[] slots;
+    // The program without breakpoints, and the addresses of the codes that
+    // can enter each source line
+    private Program original;
+    private int[][] lineAddresses;
+    private boolean breakPointHit;
     private List<SourceLineEntry> sourceCode;
     private ByteCode currentByteCode;
-    private String stepMethod;
+    private StepMode stepMode;
+    // Lines with a breakpoint set, and the conditions of those that have
+    // one, by line number
+    private final BitSet breakPoints = new BitSet();
+    private BreakCondition[] breakConditions;
+    // The watched variable, the runtime stack slot it is stored in, the depth
+    // of the record that declares it, and the addresses of the patched STOREs
+    private String watchedVariable;
+    private int watchedSlot = -1;
+    private int watchDepth;
+    private int[] watchedStores = new int[0];
     private String readPrompt;
     private String traceString;
     private boolean trace;
     private boolean lineChanged;
+    private boolean tailCalled;
 
     /**
      * Creates a new DebugVM instance
@@ -28,24 +78,45 @@ public class DebugVM extends VirtualMachine {
      * @param sourceCode The original source code for the program
      */
     public DebugVM(Program program, List<SourceLineEntry> sourceCode) {
-        super(program);
+        this(program, sourceCode, VirtualMachine.standardInput(), System.out);
+    }
+
+    /**
+     * Creates a new DebugVM instance that reads and writes the given streams
+     * @param program The program object to be executed
+     * @param sourceCode The original source code for the program
+     * @param input Where READ and the debugger's commands are read from
+     * @param output Where WRITE and DUMP send their output
+     */
+    public DebugVM(Program program, List<SourceLineEntry> sourceCode, BufferedReader input, PrintStream output) {
+        super(program, input, output);
         this.isRunning = true;
         this.programCounter = 0;
         this.currentByteCode = null;
         this.readPrompt = "";
         this.runStack = new RunTimeStack();
         this.returnAddrs = new Stack<Integer>();
-        this.environmentStack = new Stack<FunctionEnvironmentRecord>();
+        this.environmentStack = new FunctionEnvironmentRecord[16];
+        this.environmentDepth = 0;
+
+        // Work out the variables of every function up front, so that function
+        // records only have to be filled with offsets
+        this.layouts = new FrameLayout[Math.max(program.size(), 1)];
+        this.declaredIn = new FrameLayout[program.size()];
+        this.slots = new int[program.size()];
+        FrameLayout.layOut(program, layouts, declaredIn, slots);
+        this.original = program;
+        this.lineAddresses = findLineAddresses(program, sourceCode.size());
+        this.breakConditions = new BreakCondition[sourceCode.size() + 1];
 
         // This inserts a 'dummy' function record to allow access to all the source
         // code prior to executing any byteCodes; this is done to prevent unnecessary
         // checking in the source-code methods themselves
-        FunctionEnvironmentRecord main = new FunctionEnvironmentRecord();
+        FunctionEnvironmentRecord main = pushFunctionRecord(0);
         main.setName("main");
         main.setStartLine(1);
         main.setEndLine(sourceCode.size());
         main.setCurrentLine(1);
-        this.environmentStack.add(main);
 
         this.sourceCode = sourceCode;
         this.lineChanged = false;
@@ -57,11 +128,17 @@ public class DebugVM extends VirtualMachine {
      * Executes the program's bytecodes according to the specified stepping method
      */
     public void executeProgram() {
-        int envStackSize = environmentStack.size();
+        if (stepMode == StepMode.CONTINUE) {
+            continueToBreakPoint();
+            return;
+        }
+
+        int envStackSize = environmentDepth;
+        breakPointHit = false;
         while (checkStepCondition(envStackSize) && isRunning) {
 
             currentByteCode = program.getCode(programCounter);
-            if (currentByteCode.getName().matches("READ"))
+            if (currentByteCode.getOpcode() == Opcode.READ)
                 System.out.print(readPrompt);
 
             currentByteCode.execute(this);
@@ -70,11 +147,84 @@ public class DebugVM extends VirtualMachine {
 
         // Once executing is done, reset the step method, and print the trace output
         // if tracing is on, and a non-intrinsic function was just entered/exited
-        stepMethod = null;
-        if (trace && environmentStack.size() != envStackSize && environmentStack.peek().getStartLine() > 0)
+        stepMode = null;
+        if (trace && environmentDepth != envStackSize && currentRecord().getStartLine() > 0)
+            System.out.println(traceString);
+    }
+
+    /**
+     * Runs the program until a breakpoint's trap finds its line entered;
+     * nothing is checked between instructions
+     */
+    private void continueToBreakPoint() {
+        int envStackSize = environmentDepth;
+        breakPointHit = false;
+        while (!breakPointHit && isRunning) {
+            currentByteCode = program.getCode(programCounter);
+            if (currentByteCode.getOpcode() == Opcode.READ)
+                System.out.print(readPrompt);
+
+            currentByteCode.execute(this);
+            programCounter++;
+        }
+        lineChanged = false;
+
+        stepMode = null;
+        if (trace && environmentDepth != envStackSize && currentRecord().getStartLine() > 0)
             System.out.println(traceString);
     }
 
+    /**
+     * Runs a code that a breakpoint's trap replaced, and stops a continue or
+     * a step out if the code entered the breakpoint's line, and the
+     * breakpoint's condition holds. For use by BreakpointCode.
+     * @param code The code the trap replaced
+     */
+    public void executeTrapped(ByteCode code) {
+        lineChanged = false;
+        code.execute(this);
+        int line = getCurrentLine();
+        if (!lineChanged || !isBreakPointSet(line))
+            return;
+
+        // A condition on a function's first line is about its arguments
+        if (breakConditions[line] != null && code.getOpcode() == Opcode.FUNCTION)
+            bindFormals();
+        if (conditionHolds(line))
+            breakPointHit = true;
+    }
+
+    /**
+     * Runs the FORMAL codes that follow the FUNCTION code just executed, so
+     * that the function's arguments are in its record
+     */
+    private void bindFormals() {
+        while (programCounter + 1 < program.size()
+                && program.getCode(programCounter + 1).getOpcode() == Opcode.FORMAL) {
+            programCounter++;
+            currentByteCode = program.getCode(programCounter);
+            currentByteCode.execute(this);
+        }
+    }
+
+    /**
+     * Evaluates the condition of the breakpoint on the given line; a
+     * condition that cannot be evaluated stops the program
+     * @param line Line of the breakpoint
+     * @return true - if the breakpoint has no condition, or its condition holds
+     */
+    private boolean conditionHolds(int line) {
+        BreakCondition condition = breakConditions[line];
+        if (condition == null)
+            return true;
+        try {
+            return condition.test(this);
+        } catch (IllegalStateException | ArithmeticException e) {
+            System.out.println("Error: cannot evaluate '" + condition + "' on line " + line + ": " + e.getMessage());
+            return true;
+        }
+    }
+
     /**
      * Tells whether or not the program is still being executed
      * @return true - if program is still being executed; false - if program has finished executing
@@ -83,6 +233,16 @@ public class DebugVM extends VirtualMachine {
         return isRunning;
     }
 
+    /**
+     * Reads a line typed in by the user, from the same input the program
+     * reads its integers from
+     * @return The line read, or null at the end of the input
+     * @throws IOException if the input cannot be read
+     */
+    public String readCommand() throws IOException {
+        return input.readLine();
+    }
+
     /**
      * Allows an external User Interface layer to set the display prompt
      * that's shown whenever the program requires user input
@@ -94,49 +254,46 @@ public class DebugVM extends VirtualMachine {
 
     //----{ Stepping Methods }--------------------------------------------------
     /**
-     * Used to set the method by which to step through the code; a step method
+     * Used to set the method by which to step through the code; a step mode
      * must be set before executing any code.
-     * Accepts: "continue", "out","into","over"
-     * @param step
+     * @param mode How far the next executeProgram runs
      */
-    public void setStepMethod(String step) {
-        if (step.matches("continue|out|into|over"))
-            stepMethod = step;
+    public void setStepMode(StepMode mode) {
+        stepMode = mode;
     }
 
     /**
      * Used to test when to end the main fetch-execute cycle based on the type
-     * of step performed.
+     * of step performed; continue runs without these checks, and stops at
+     * breakpoint traps instead.
      * @param envStackSize The original size of the Environment Stack when the
      *                     fetch-execute cycle was entered.
      * @return A boolean value based on the step condition, dictating whether the
      *         fetch-execute cycle will continue or not.
      */
     private boolean checkStepCondition(int envStackSize) {
-        boolean condition = false;
-        if (stepMethod.matches("continue")) {
-            condition = !isBreakPointSet(getCurrentLine()) || envStackSize == environmentStack.size() || !lineChanged;
-            //System.out.println("CurrentLine: "+getCurrentLine()+"\n"+"lineChanged: "+lineChanged+"\n"+"Breakpoint? "+ isBreakPointSet(getCurrentLine()));
-            if (isBreakPointSet(getCurrentLine()) && lineChanged)
-                condition = false;
-
-        } else if (stepMethod.matches("out")) {
-            condition = environmentStack.size() >= envStackSize;
-            if (isBreakPointSet(getCurrentLine()) && lineChanged)
-                condition = false;
-
-        } else if (stepMethod.matches("into")) {
-            condition = environmentStack.size() <= envStackSize;
-            // If stepping into a non-intrinsic function, allow for the FormalCode to be read in
-            if (!condition && currentByteCode.getName().matches("FUNCTION") && environmentStack.peek().getStartLine() > 0)
+        boolean condition;
+        switch (stepMode) {
+            case OUT:
+                condition = environmentDepth >= envStackSize && !breakPointHit;
+                break;
+
+            case INTO:
+                condition = environmentDepth <= envStackSize;
+                // If stepping into a non-intrinsic function, allow for the FormalCode to be read in
+                if (!condition && currentByteCode.getOpcode() == Opcode.FUNCTION && currentRecord().getStartLine() > 0)
                     condition = true;
+                break;
 
-        } else if (stepMethod.matches("over"))
-            condition = !lineChanged;
+            case OVER:
+                condition = !lineChanged;
+                break;
 
-        if (lineChanged)
-            lineChanged = false;
+            default:
+                condition = false;
+        }
 
+        lineChanged = false;
         return condition;
     }
 
@@ -146,7 +303,7 @@ public class DebugVM extends VirtualMachine {
      * @return The current line number
      */
     public int getCurrentLine() {
-         return  environmentStack.peek().getCurrentLine();
+         return  currentRecord().getCurrentLine();
     }
 
     /**
@@ -157,11 +314,9 @@ public class DebugVM extends VirtualMachine {
     public void setCurrentLine(int lineNumber) {
         // Only switch lines if it's to a possible source location, and if 
         // another funcion isn't about to be called
-        if(lineNumber >= 0 && environmentStack.size() == runStack.frames() + 1) {
+        if(lineNumber >= 0 && environmentDepth == runStack.frames() + 1) {
             // Update the current line of the top Function Environment Record
-            FunctionEnvironmentRecord record = environmentStack.pop();
-            record.setCurrentLine(lineNumber);
-            environmentStack.add(record);
+            currentRecord().setCurrentLine(lineNumber);
             lineChanged = true;
         }
     }
@@ -190,10 +345,7 @@ public class DebugVM extends VirtualMachine {
      * @return A boolean describing whether a breakpoint is set or not
      */
     public boolean isBreakPointSet(int line) {
-        if (line > 0)
-            return sourceCode.get(line - 1).isBreakPointSet();
-        else
-            return false;
+        return line > 0 && breakPoints.get(line);
     }
 
     /**
@@ -204,16 +356,98 @@ public class DebugVM extends VirtualMachine {
      * @return A boolean value describing whether the operation was successful or not.
      */
     public boolean setBreakPoint(int lineNumber, boolean breakPoint) {
-        SourceLineEntry sourceLine = sourceCode.get(lineNumber);
-        String line = sourceLine.getSourceLine();
+        String line = sourceCode.get(lineNumber).getSourceLine();
         if (isValidBreakPoint(line)) {         
-            sourceLine.setBreakPoint(breakPoint);
+            breakPoints.set(lineNumber + 1, breakPoint);
+            breakConditions[lineNumber + 1] = null;
+            patchBreakPoint(lineNumber + 1, breakPoint);
             return true;
         } else {
             return false;
         }
     }
 
+    /**
+     * Sets a BreakPoint at the given line that only stops the program when
+     * its condition holds
+     * @param lineNumber The line on which to set the breakpoint
+     * @param condition Condition tested every time the line is entered
+     * @return A boolean value describing whether the operation was successful or not.
+     */
+    public boolean setBreakPoint(int lineNumber, BreakCondition condition) {
+        if (!setBreakPoint(lineNumber, true))
+            return false;
+        breakConditions[lineNumber + 1] = condition;
+        return true;
+    }
+
+    /**
+     * Gets the condition of the breakpoint on the given line
+     * @param line Line of the breakpoint
+     * @return The condition, or null if the breakpoint always stops
+     */
+    public BreakCondition getBreakCondition(int line) {
+        return breakConditions[line];
+    }
+
+    /**
+     * Swaps traps in for the codes that enter the given line, or puts the
+     * original codes back
+     * @param line The line of the breakpoint
+     * @param breakPoint true - set traps; false - restore the original codes
+     */
+    private void patchBreakPoint(int line, boolean breakPoint) {
+        if (lineAddresses[line].length == 0)
+            return;
+
+        Map<Integer, ByteCode> patches = new HashMap<Integer, ByteCode>();
+        for (int address : lineAddresses[line]) {
+            ByteCode code = original.getCode(address);
+            patches.put(address, breakPoint ? new BreakpointCode(code) : code);
+        }
+        program = program.patch(patches);
+    }
+
+    /**
+     * Finds the codes that can make each source line the current one: its
+     * LINE codes, and the FUNCTION codes of the functions starting on it
+     * @param program Program to inspect
+     * @param sourceSize Number of lines in the source code
+     * @return The addresses of the codes, indexed by line number
+     */
+    private static int[][] findLineAddresses(Program program, int sourceSize) {
+        int[] counts = new int[sourceSize + 1];
+        for (int address = 0; address < program.size(); address++) {
+            int line = lineEnteredBy(program.getCode(address));
+            if (line > 0 && line <= sourceSize)
+                counts[line]++;
+        }
+
+        int[][] addresses = new int[sourceSize + 1][];
+        for (int line = 0; line <= sourceSize; line++) {
+            addresses[line] = new int[counts[line]];
+            counts[line] = 0;
+        }
+        for (int address = 0; address < program.size(); address++) {
+            int line = lineEnteredBy(program.getCode(address));
+            if (line > 0 && line <= sourceSize)
+                addresses[line][counts[line]++] = address;
+        }
+        return addresses;
+    }
+
+    /**
+     * Gets the line a code makes the current one
+     * @return The line number, or -1 if the code does not change lines
+     */
+    private static int lineEnteredBy(ByteCode code) {
+        if (code instanceof LineCode)
+            return ((LineCode) code).getLineNumber();
+        if (code instanceof FunctionCode)
+            return ((FunctionCode) code).getStartLine();
+        return -1;
+    }
+
     /**
      * Checks whether a breakpoint can be set on the given line
      * @param line The line on which a breakpoint is to be set
@@ -226,6 +460,95 @@ public class DebugVM extends VirtualMachine {
                line.contains("return");
     }
 
+    //----{ Watch Methods }-----------------------------------------------------
+    /**
+     * Watches a variable of the current function, replacing any previous
+     * watch. Only the STORE codes that name the variable at its frame offset
+     * are swapped for WatchedStoreCodes, so other stores run as before.
+     * @param var Variable ID
+     * @return false if the variable is not in scope
+     */
+    public boolean setWatch(String var) {
+        int slot = currentRecord().getVariableOffset(var);
+        if (slot < 0)
+            return false;
+        clearWatch();
+
+        int offset = slot - runStack.peekFrame();
+        Map<Integer, ByteCode> patches = new HashMap<Integer, ByteCode>();
+        for (int address = 0; address < original.size(); address++) {
+            ByteCode code = original.getCode(address);
+            if (code instanceof StoreCode && ((StoreCode) code).getOffset() == offset
+                    && ((StoreCode) code).getId().equals(var))
+                patches.put(address, new WatchedStoreCode((StoreCode) code));
+        }
+        program = program.patch(patches);
+
+        watchedStores = new int[patches.size()];
+        int index = 0;
+        for (int address : patches.keySet())
+            watchedStores[index++] = address;
+        watchedVariable = var;
+        watchedSlot = slot;
+        watchDepth = environmentDepth;
+        return true;
+    }
+
+    /**
+     * Stops watching the watched variable, and puts the original STORE codes back
+     */
+    public void clearWatch() {
+        if (watchedVariable == null)
+            return;
+
+        Map<Integer, ByteCode> patches = new HashMap<Integer, ByteCode>();
+        for (int address : watchedStores)
+            patches.put(address, original.getCode(address));
+        program = program.patch(patches);
+        watchedStores = new int[0];
+        watchedVariable = null;
+        watchedSlot = -1;
+    }
+
+    /**
+     * Returns the name of the watched variable
+     * @return Variable ID, or null if no variable is watched
+     */
+    public String getWatchedVariable() {
+        return watchedVariable;
+    }
+
+    /**
+     * Stores the top of the Runtime stack like a STORE would, and stops a
+     * continue or a step out if the value went into the watched variable.
+     * For use by WatchedStoreCode.
+     * @param offset Where to store the 'popped' value, within the current frame
+     */
+    public void storeWatched(int offset) {
+        if (runStack.peekFrame() + offset != watchedSlot) {
+            storeRunStack(offset);
+            return;
+        }
+
+        int oldValue = runStack.elementAt(watchedSlot);
+        int newValue = storeRunStack(offset);
+        int line = getCurrentLine();
+        String output = "Watch " + watchedVariable + ": " + oldValue + " -> " + newValue + " on line " + line;
+        if (line > 0 && line <= sourceCode.size())
+            output += ": " + getSourceLine(line).trim();
+        System.out.println(output);
+        breakPointHit = true;
+    }
+
+    /**
+     * Ends the watch once its variable is gone from the Runtime stack, since
+     * its slot will be reused by other values
+     */
+    private void endWatch() {
+        System.out.println("Watch " + watchedVariable + ": out of scope, no longer watched");
+        clearWatch();
+    }
+
     //----{ Trace Methods }-----------------------------------------------------
     /**
      * Turns function tracing ON/OFF
@@ -242,8 +565,8 @@ public class DebugVM extends VirtualMachine {
      *               output accordingly
      */
     private void logTrace(boolean isExit) {
-        String funcName = environmentStack.peek().getName().split("<<")[0];
-        for (int space = 0; space < environmentStack.size(); space++)
+        String funcName = currentRecord().getName().split("<<")[0];
+        for (int space = 0; space < environmentDepth; space++)
             traceString += " ";
 
         if (isExit) {
@@ -265,10 +588,13 @@ public class DebugVM extends VirtualMachine {
      */
     public void printCallStack() {
         String callStack = "";
-        for (int index = environmentStack.size() - 1; index > 0; index--) {
-            FunctionEnvironmentRecord func = environmentStack.elementAt(index);
+        for (int index = environmentDepth - 1; index > 0; index--) {
+            FunctionEnvironmentRecord func = environmentStack[index];
             String funcName = func.getName().split("<<")[0];
-            callStack += funcName + ": " + func.getCurrentLine() + "\n";
+            callStack += funcName + ": " + func.getCurrentLine();
+            if (func.getElidedFrames() > 0)
+                callStack += "  (tail call, " + func.getElidedFrames() + " frame(s) elided)";
+            callStack += "\n";
         }
         System.out.println(callStack);
     }
@@ -283,40 +609,89 @@ public class DebugVM extends VirtualMachine {
      * @see interpreter.debugger.FunctionEnvironmentRecord
      */
     public void addFunctionRecord(String name, int startLine, int endLine) {
-        FunctionEnvironmentRecord record = new FunctionEnvironmentRecord();
+        // A function entered through a tail call takes the place of its caller
+        int elidedFrames = 0;
+        if (tailCalled) {
+            if (watchedVariable != null && environmentDepth == watchDepth)
+                endWatch();
+            elidedFrames = environmentStack[--environmentDepth].getElidedFrames() + 1;
+            tailCalled = false;
+        }
+        int currentLine = getCurrentLine();
+
+        FunctionEnvironmentRecord record = pushFunctionRecord(programCounter);
+        record.setElidedFrames(elidedFrames);
         record.setName(name);
         record.setStartLine(startLine);
         record.setEndLine(endLine);
-        record.setCurrentLine(getCurrentLine());
-        environmentStack.add(record);
+        record.setCurrentLine(currentLine);
 
         // Don't trace if entering an intrinsic function
-        if (trace && environmentStack.peek().getStartLine() > 0)
+        if (trace && currentRecord().getStartLine() > 0)
             logTrace(false);
     }
 
+    /**
+     * Reuses the top frame for a tail call; the caller's function record is
+     * replaced once the called function declares itself
+     * @param numOfArgs Number of values that become the frame's contents
+     */
+    @Override
+    public void reuseRunStackFrame(int numOfArgs) {
+        super.reuseRunStackFrame(numOfArgs);
+        tailCalled = true;
+    }
+
     /**
      * Removes the top function Environment record
      */
     public void popFunctionRecord() {
         // Don't trace if exiting an intrinsic function
-        if (trace && environmentStack.peek().getStartLine() > 0)
+        if (trace && currentRecord().getStartLine() > 0)
             logTrace(true);
 
-        environmentStack.pop();
+        if (watchedVariable != null && environmentDepth == watchDepth)
+            endWatch();
+        environmentDepth--;
+    }
+
+    /**
+     * Returns the record of the function being executed
+     * @return The top record of the Environment Stack
+     */
+    private FunctionEnvironmentRecord currentRecord() {
+        return environmentStack[environmentDepth - 1];
+    }
+
+    /**
+     * Takes the next function record from the pool, and pushes it onto the
+     * Environment Stack
+     * @param address Address of the function's FUNCTION code
+     * @return The cleared record
+     */
+    private FunctionEnvironmentRecord pushFunctionRecord(int address) {
+        if (environmentDepth == environmentStack.length)
+            environmentStack = Arrays.copyOf(environmentStack, 2 * environmentDepth);
+        FunctionEnvironmentRecord record = environmentStack[environmentDepth];
+        if (record == null)
+            record = environmentStack[environmentDepth] = new FunctionEnvironmentRecord();
+        record.begin(layouts[address]);
+        environmentDepth++;
+        return record;
     }
 
     //----{ Function Record Methods }-------------------------------------------
     /**
-     * Adds an entry to the current Function Environment Record
-     * @param id The ID of the entry being entered
+     * Adds the variable declared by the current code to the current Function
+     * Environment Record; declarations laid out for another function than
+     * the current one are left out
      * @param offset The entry's offset in the runtime stack
-     * @see interpreter.debugger.FunctionEnvironmentRecord#enter(java.lang.String, int)
+     * @see interpreter.debugger.FunctionEnvironmentRecord#enter(int, int)
      */
-    public void addRecordEntry(String id, int offset) {
-        FunctionEnvironmentRecord record = environmentStack.pop();
-        record.enter(id, offset);
-        environmentStack.add(record);
+    public void addRecordEntry(int offset) {
+        FunctionEnvironmentRecord record = currentRecord();
+        if (declaredIn[programCounter] == record.getLayout())
+            record.enter(slots[programCounter], offset);
     }
 
     /**
@@ -325,9 +700,17 @@ public class DebugVM extends VirtualMachine {
      * @see interpreter.debugger.FunctionEnvironmentRecord#pop(int)
      */
     public void popRecordEntries(int numberOfPops) {
-        FunctionEnvironmentRecord record = environmentStack.pop();
-        record.pop(numberOfPops);
-        environmentStack.add(record);
+        currentRecord().pop(numberOfPops);
+        if (watchedVariable != null && watchedSlot >= runStack.size())
+            endWatch();
+    }
+
+    /**
+     * Returns where the current function's frame starts in the runtime stack
+     * @return Offset of the frame's first value
+     */
+    public int getFrameStart() {
+        return runStack.peekFrame();
     }
 
     /**
@@ -335,7 +718,7 @@ public class DebugVM extends VirtualMachine {
      * @return Line number
      */
     public int getFirstFunctionLine() {
-        return environmentStack.peek().getStartLine();
+        return currentRecord().getStartLine();
     }
 
     /**
@@ -343,7 +726,7 @@ public class DebugVM extends VirtualMachine {
      * @return Line number
      */
     public int getLastFunctionLine() {
-        return environmentStack.peek().getEndLine();
+        return currentRecord().getEndLine();
     }
 
     /**
@@ -351,7 +734,7 @@ public class DebugVM extends VirtualMachine {
      * @return Funciton name
      */
     public String getCurrentFunctionName() {
-        return environmentStack.peek().getName().split("<<")[0];
+        return currentRecord().getName().split("<<")[0];
     }
 
     /**
@@ -360,16 +743,19 @@ public class DebugVM extends VirtualMachine {
      * @see interpreter.debugger.FunctionEnvironmentRecord#getVariables()
      */
     public Set<String> getFunctionVariables() {
-        return environmentStack.peek().getVariables();
+        return currentRecord().getVariables();
     }
 
     /**
      * Gets the value for a given variable name in the current function
      * @param var Variable ID
      * @return Variable's value
+     * @throws IllegalStateException if the variable is not in scope
      */
     public int getVariableValue(String var) {
-        int offset = environmentStack.peek().getVariableOffset(var);
+        int offset = currentRecord().getVariableOffset(var);
+        if (offset < 0)
+            throw new IllegalStateException(var + " is not in scope");
         return runStack.elementAt(offset);
     }
 }
@@ -0,0 +1,127 @@
+package interpreter.debugger;
+
+import interpreter.Program;
+import interpreter.bytecodes.BranchCode;
+import interpreter.bytecodes.ByteCode;
+import interpreter.bytecodes.Opcode;
+import interpreter.bytecodes.debuggerByteCodes.FormalCode;
+import interpreter.bytecodes.debuggerByteCodes.LitCode;
+import interpreter.optimizer.ControlFlow;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The variables a function declares, worked out once before the program
+ * runs. Every FORMAL and named LIT the function can execute gets a slot,
+ * so that entering the function only has to record the runtime stack
+ * offsets of its variables, not their names.
+ * @see interpreter.debugger.FunctionEnvironmentRecord
+ * @author Enrique Gavidia
+ */
+public class FrameLayout {
+    private final String[] names;
+
+    private FrameLayout(List<String> names) {
+        this.names = names.toArray(new String[0]);
+    }
+
+    /**
+     * Returns the number of slots in the layout
+     * @return Number of variable declarations in the function
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Returns the name of the variable declared in the given slot
+     * @param slot Slot of the variable
+     * @return Variable ID
+     */
+    public String getName(int slot) {
+        return names[slot];
+    }
+
+    /**
+     * Lays out the variables of every function in a program. A function is
+     * made up of the codes that can run after its FUNCTION code, up to the
+     * FUNCTION codes of the functions it calls; the codes that can run
+     * before any FUNCTION code make up the layout at address 0.
+     * @param program Program to lay out
+     * @param layouts Filled with the layout of the function declared at
+     *                each address, for every FUNCTION code and address 0
+     * @param declaredIn Filled with the layout each variable declaration
+     *                   belongs to, indexed by the address of the declaration
+     * @param slots Filled with the slot of each variable declaration, or -1
+     *              for the codes that declare nothing
+     */
+    public static void layOut(Program program, FrameLayout[] layouts, FrameLayout[] declaredIn, int[] slots) {
+        Arrays.fill(slots, -1);
+        for (int entry = 0; entry < program.size(); entry++)
+            if (program.getCode(entry).getOpcode() == Opcode.FUNCTION)
+                layouts[entry] = layOutFunction(program, entry, declaredIn, slots);
+        if (program.size() > 0 && layouts[0] == null)
+            layouts[0] = layOutFunction(program, 0, declaredIn, slots);
+    }
+
+    /**
+     * Gives a slot to every declaration reachable from the function's entry
+     * that has none yet
+     */
+    private static FrameLayout layOutFunction(Program program, int entry, FrameLayout[] declaredIn, int[] slots) {
+        List<String> names = new ArrayList<String>();
+        List<Integer> declarations = new ArrayList<Integer>();
+        boolean[] reached = new boolean[program.size()];
+        int[] worklist = new int[program.size()];
+        int pending = 0;
+        reached[entry] = true;
+        worklist[pending++] = entry;
+
+        while (pending > 0) {
+            int index = worklist[--pending];
+            ByteCode code = program.getCode(index);
+
+            // Another FUNCTION code starts a record of its own
+            if (index != entry && code.getOpcode() == Opcode.FUNCTION)
+                continue;
+
+            String id = declaredId(code);
+            if (id != null && slots[index] < 0) {
+                slots[index] = names.size();
+                names.add(id);
+                declarations.add(index);
+            }
+
+            int next = index + 1;
+            if (ControlFlow.fallsThrough(code) && next < reached.length && !reached[next]) {
+                reached[next] = true;
+                worklist[pending++] = next;
+            }
+            if (code instanceof BranchCode) {
+                int target = ((BranchCode) code).getTarget();
+                if (target < reached.length && !reached[target]) {
+                    reached[target] = true;
+                    worklist[pending++] = target;
+                }
+            }
+        }
+
+        FrameLayout layout = new FrameLayout(names);
+        for (int index : declarations)
+            declaredIn[index] = layout;
+        return layout;
+    }
+
+    /**
+     * Gets the variable a code declares
+     * @return The variable ID, or null if the code declares none
+     */
+    private static String declaredId(ByteCode code) {
+        if (code instanceof FormalCode)
+            return ((FormalCode) code).getId();
+        if (code instanceof LitCode && !((LitCode) code).getId().isEmpty())
+            return ((LitCode) code).getId();
+        return null;
+    }
+}
@@ -1,31 +1,57 @@
 package interpreter.debugger;
 
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
- * Used to store line and variable information for functions
+ * Used to store line and variable information for functions. Records are
+ * reused for every function entered at the same depth, so entering a
+ * function allocates nothing once its layout fits in the record.
  * @author Enrique Gavidia
  */
 public class FunctionEnvironmentRecord {
-    private DebugSymbolTable table;
+    private FrameLayout layout;
+    // Slot and runtime stack offset of the variables in scope, in the order
+    // they were declared; later ones shadow earlier ones of the same name
+    private int[] slots = new int[4];
+    private int[] offsets = new int[4];
+    private int declared;
     private int startLine, endLine, currentLine;
+    private int elidedFrames;
     private String name;
 
     /**
-     * Creates a new function record; used when a new function is entered.
+     * Clears the record for a function that is being entered
+     * @param layout Layout of the function's variables
      */
-    public FunctionEnvironmentRecord() {
-        table = new DebugSymbolTable();
-        table.beginScope();
+    public void begin(FrameLayout layout) {
+        this.layout = layout;
+        declared = 0;
+        elidedFrames = 0;
+    }
+
+    /**
+     * Returns the layout of the function's variables
+     * @return The layout the record was begun with
+     */
+    public FrameLayout getLayout() {
+        return layout;
     }
 
     /**
      * Enters a variable entry into the function record
-     * @param id The variable's ID
+     * @param slot The variable's slot in the function's layout
      * @param offset The offset of the variable in the runtime stack
      */
-    public void enter(String id, int offset) {
-        table.put(id, offset);
+    public void enter(int slot, int offset) {
+        if (declared == slots.length) {
+            slots = Arrays.copyOf(slots, 2 * declared);
+            offsets = Arrays.copyOf(offsets, 2 * declared);
+        }
+        slots[declared] = slot;
+        offsets[declared] = offset;
+        declared++;
     }
 
     /**
@@ -60,12 +86,21 @@ public class FunctionEnvironmentRecord {
         this.name = name;
     }
 
+    /**
+     * Sets how many frames this function replaced through tail calls; the
+     * records of those frames are gone from the Environment Stack
+     * @param frames Number of elided frames
+     */
+    public void setElidedFrames(int frames) {
+        elidedFrames = frames;
+    }
+
     /**
      * Pops the given number of entries from the record
      * @param numOfPops Number of entries to remove
      */
     public void pop(int numOfPops) {
-        table.popValues(numOfPops);
+        declared = Math.max(0, declared - numOfPops);
     }
 
 
@@ -101,21 +136,34 @@ public class FunctionEnvironmentRecord {
         return currentLine;
     }
 
+    /**
+     * Returns how many frames this function replaced through tail calls
+     * @return Number of elided frames
+     */
+    public int getElidedFrames() {
+        return elidedFrames;
+    }
+
     /**
      * Returns a set of the variable IDs currently stored in the function record
-     * @return Set of variable IDs
-     * @see interpreter.debugger.DebugSymbolTable#keys()
+     * @return Set of variable IDs, in the order they were declared
      */
     public Set<String> getVariables() {
-        return table.keys();
+        Set<String> variables = new LinkedHashSet<String>();
+        for (int entry = 0; entry < declared; entry++)
+            variables.add(layout.getName(slots[entry]));
+        return variables;
     }
 
     /**
      * Returns the offset (in the runtime stack) at which the given variable is stored
      * @param var The variable ID whose offset is requested
-     * @return The offset of the given variable ID
+     * @return The offset of the given variable ID, or -1 if it is not in scope
      */
     public int getVariableOffset(String var) {
-        return table.get(var);
+        for (int entry = declared - 1; entry >= 0; entry--)
+            if (layout.getName(slots[entry]).equals(var))
+                return offsets[entry];
+        return -1;
     }
 }
@@ -33,7 +33,7 @@ public class SourceCodeLoader {
         List<SourceLineEntry> sourceCode = new Vector<SourceLineEntry>();
         SourceLineEntry line;
         while (programFile.ready())
-            sourceCode.add( new SourceLineEntry(programFile.readLine(), false) );
+            sourceCode.add( new SourceLineEntry(programFile.readLine()) );
 
         return sourceCode;
     }
@@ -1,9 +1,9 @@
 package interpreter.debugger.ui;
 
+import interpreter.debugger.BreakCondition;
 import interpreter.debugger.DebugVM;
-import java.io.BufferedReader;
+import interpreter.debugger.DebugVM.StepMode;
 import java.io.IOException;
-import java.io.InputStreamReader;
 
 /**
  * Commandline-based User Interface for the X-Debugger
@@ -35,8 +35,7 @@ public class DebuggerUI {
         while (!exit && vm.isRunning()) {
             try {
                 System.out.print(">> ");
-                BufferedReader input = new BufferedReader( new InputStreamReader( System.in ) );
-                command = input.readLine().toLowerCase();
+                command = vm.readCommand().toLowerCase();
                 executeCommand(command);
             } catch (IOException ex) {}
         }
@@ -69,8 +68,14 @@ public class DebuggerUI {
             listBreakPoints();
         else if (command.matches("brk") && arg.matches("[\\d+\\s*]+"))
             setBreakPoint(arg);
+        else if (command.matches("brk") && arg.matches("\\d+\\s+(if|after)\\s+.+"))
+            setConditionalBreakPoint(arg);
         else if (command.matches("clr") && arg.matches("[\\d+\\s*]+"))
             clearBreakPoint(arg);
+        else if (command.matches("watch") && arg.matches("\\w+"))
+            setWatch(arg);
+        else if (command.matches("unwatch"))
+            clearWatch();
         else if (command.matches("src"))
             displayFunctionSource();
         else if (command.matches("vars"))
@@ -105,10 +110,18 @@ public class DebuggerUI {
             "in", "Step into the function on the current line")
         + String.format(format,
             "brk N", "Sets a breakpoint at the N-th line of the source code; accepts multiple line numbers")
+        + String.format(format,
+            "brk N if E", "Sets a breakpoint at the N-th line that only stops when the expression E holds")
+        + String.format(format,
+            "brk N after C", "Sets a breakpoint at the N-th line that lets the line be reached C times before stopping")
         + String.format(format,
             "clr N", "Clears the breakpoint at the N-th line of the source code; accepts multiple line numbers")
         + String.format(format,
             "brklst", "Displays a list of the current breakpoint locations")
+        + String.format(format,
+            "watch V", "Stops the program whenever the variable V of the current function is written to")
+        + String.format(format,
+            "unwatch", "Stops watching the watched variable")
         + String.format(format,
             "src", "Displays the source code for the current function")
         + String.format(format,
@@ -127,69 +140,131 @@ public class DebuggerUI {
         String[] lines = lineNumbers.split(" ");
         String successOutput = "";
         for (String line : lines) {
-            int lineNumber = Integer.parseInt(line);
+            int lineNumber = parseLineNumber(line);
 
-            if (lineNumber <= vm.getSourceSize()) {
+            if (lineNumber > 0) {
                 boolean success = vm.setBreakPoint(lineNumber - 1, true);
                 if (success)
                     successOutput += lineNumber + " ";
                 else
                     System.out.println("Error: cannot set breakpoint on line " + lineNumber + ".");
             } else
-                System.out.println("Error: line " + lineNumber + " does not exist.");
+                System.out.println("Error: line " + line + " does not exist.");
         }
 
         if (!successOutput.isEmpty())
             System.out.println("BreakPts set: " + successOutput);
     }
 
+    private static void setConditionalBreakPoint(String arg) {
+        String[] parts = arg.split("\\s+", 3);
+        int lineNumber = parseLineNumber(parts[0]);
+        if (lineNumber < 0) {
+            System.out.println("Error: line " + parts[0] + " does not exist.");
+            return;
+        }
+
+        BreakCondition condition;
+        try {
+            if (parts[1].equals("if"))
+                condition = BreakCondition.compile(parts[2]);
+            else if (parts[2].trim().matches("\\d{1,9}"))
+                condition = BreakCondition.after(Integer.parseInt(parts[2].trim()));
+            else {
+                System.out.println("Error: 'after' takes a number of times to skip the breakpoint.");
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage() + ".");
+            return;
+        }
+
+        if (vm.setBreakPoint(lineNumber - 1, condition))
+            System.out.println("BreakPts set: " + lineNumber + " (" + condition + ")");
+        else
+            System.out.println("Error: cannot set breakpoint on line " + lineNumber + ".");
+    }
+
     private static void clearBreakPoint(String lineNumbers) {
         String[] lines = lineNumbers.split(" ");
         String successOutput = "";
         for (String line : lines) {
-            int lineNumber = Integer.parseInt(line);
+            int lineNumber = parseLineNumber(line);
 
-            if (lineNumber <= vm.getSourceSize()) {
+            if (lineNumber > 0) {
                 boolean success = vm.setBreakPoint(lineNumber - 1, false);
                 if (success)
                     successOutput += lineNumber + " ";
             } else
-                System.out.println("Error: line " + lineNumber + " does not exist.");
+                System.out.println("Error: line " + line + " does not exist.");
         }
 
         if (!successOutput.isEmpty())
             System.out.println("BreakPts cleared: " + successOutput);
     }
 
+    /**
+     * Parses a line number typed in by the user
+     * @param line The line number, as typed
+     * @return The line number, or -1 if it is not a line of the source code
+     */
+    private static int parseLineNumber(String line) {
+        try {
+            int lineNumber = Integer.parseInt(line.trim());
+            return lineNumber >= 1 && lineNumber <= vm.getSourceSize() ? lineNumber : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     private static void listBreakPoints() {
         String breakpoints = "";
         for (int line = 1; line <= vm.getSourceSize(); line++)
-            if (vm.isBreakPointSet(line))
+            if (vm.isBreakPointSet(line)) {
                 breakpoints += line + " ";
+                if (vm.getBreakCondition(line) != null)
+                    breakpoints += "(" + vm.getBreakCondition(line) + ") ";
+            }
 
         System.out.println("Current BreakPts: " + breakpoints);
     }
 
-    private static void performStep(String stepMethod) {
-        vm.setStepMethod(stepMethod);
+    private static void setWatch(String var) {
+        if (vm.setWatch(var))
+            System.out.println("Watching: " + var);
+        else
+            System.out.println("Error: " + var + " is not in scope.");
+    }
+
+    private static void clearWatch() {
+        String var = vm.getWatchedVariable();
+        if (var != null) {
+            vm.clearWatch();
+            System.out.println("No longer watching: " + var);
+        } else
+            System.out.println("Error: no variable is being watched.");
+    }
+
+    private static void performStep(StepMode stepMode) {
+        vm.setStepMode(stepMode);
         vm.executeProgram();
         displayFunctionSource();
     }
 
     private static void cont() {
-        performStep("continue");
+        performStep(StepMode.CONTINUE);
     }
 
     private static void stepOver() {
-        performStep("over");
+        performStep(StepMode.OVER);
     }
 
     private static void stepOut() {
-        performStep("out");
+        performStep(StepMode.OUT);
     }
 
     private static void stepInto() {
-        performStep("into");
+        performStep(StepMode.INTO);
     }
 
     private static void displayFunctionSource() {
@@ -0,0 +1,200 @@
+package interpreter.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+
+/**
+ * Minimal writer for JVM class files holding nothing but static methods.
+ * Classes are written with major version 49, whose verifier infers the
+ * types of locals itself, so no StackMapTable has to be computed.
+ * @author Enrique Gavidia
+ */
+class ClassFile {
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int MAJOR_VERSION = 49;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final HashMap<String, Integer> poolIndexes = new HashMap<String, Integer>();
+    private int poolCount = 1;
+
+    private final String className;
+    private final int thisClass;
+    private final int superClass;
+    private final int codeAttribute;
+    private final List<byte[]> methods = new ArrayList<byte[]>();
+
+    /**
+     * Starts a new class
+     * @param className Internal name of the class, e.g. "interpreter/jit/Foo"
+     */
+    ClassFile(String className) {
+        this.className = className;
+        this.thisClass = classConstant(className);
+        this.superClass = classConstant("java/lang/Object");
+        this.codeAttribute = utf8Constant("Code");
+    }
+
+    /**
+     * Gets the internal name of the class being written
+     * @return Class name
+     */
+    String getClassName() {
+        return className;
+    }
+
+    //----{ Constant Pool }-----------------------------------------------------
+
+    int utf8Constant(String value) {
+        Integer index = poolIndexes.get("U" + value);
+        if (index != null)
+            return index;
+
+        try {
+            pool.writeByte(CONSTANT_UTF8);
+            pool.writeUTF(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return register("U" + value);
+    }
+
+    int integerConstant(int value) {
+        Integer index = poolIndexes.get("I" + value);
+        if (index != null)
+            return index;
+
+        try {
+            pool.writeByte(CONSTANT_INTEGER);
+            pool.writeInt(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return register("I" + value);
+    }
+
+    int classConstant(String name) {
+        Integer index = poolIndexes.get("C" + name);
+        if (index != null)
+            return index;
+
+        int nameIndex = utf8Constant(name);
+        try {
+            pool.writeByte(CONSTANT_CLASS);
+            pool.writeShort(nameIndex);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return register("C" + name);
+    }
+
+    int methodConstant(String owner, String name, String descriptor) {
+        String key = "M" + owner + "." + name + descriptor;
+        Integer index = poolIndexes.get(key);
+        if (index != null)
+            return index;
+
+        int classIndex = classConstant(owner);
+        int nameIndex = utf8Constant(name);
+        int descriptorIndex = utf8Constant(descriptor);
+        try {
+            pool.writeByte(CONSTANT_NAME_AND_TYPE);
+            pool.writeShort(nameIndex);
+            pool.writeShort(descriptorIndex);
+            int nameAndType = register("N" + name + descriptor);
+
+            pool.writeByte(CONSTANT_METHODREF);
+            pool.writeShort(classIndex);
+            pool.writeShort(nameAndType);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return register(key);
+    }
+
+    private int register(String key) {
+        poolIndexes.put(key, poolCount);
+        return poolCount++;
+    }
+
+    //----{ Methods }-----------------------------------------------------------
+
+    /**
+     * Adds a public static method to the class
+     * @param name Method name
+     * @param descriptor Method descriptor, e.g. "(II)I"
+     * @param code The method's finished code
+     */
+    void addStaticMethod(String name, String descriptor, CodeBuilder code) {
+        int nameIndex = utf8Constant(name);
+        int descriptorIndex = utf8Constant(descriptor);
+        byte[] bytecode = code.toByteArray();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(ACC_PUBLIC | ACC_STATIC);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+            out.writeShort(1);
+
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + bytecode.length);
+            out.writeShort(code.getMaxStack());
+            out.writeShort(code.getMaxLocals());
+            out.writeInt(bytecode.length);
+            out.write(bytecode);
+            out.writeShort(0);      // exception table
+            out.writeShort(0);      // code attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    /**
+     * Writes out the finished class file
+     * @return The bytes of the class file
+     */
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+            out.writeShort(poolCount);
+            pool.flush();
+            poolBytes.writeTo(out);
+
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);      // interfaces
+            out.writeShort(0);      // fields
+            out.writeShort(methods.size());
+            for (byte[] method : methods)
+                out.write(method);
+            out.writeShort(0);      // class attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
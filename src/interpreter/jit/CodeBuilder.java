@@ -0,0 +1,243 @@
+package interpreter.jit;
+
+import java.util.Arrays;
+
+
+/**
+ * Emits the JVM instructions of a single method, using only int locals.
+ * Branches refer to labels, which may be placed after the branches that
+ * use them.
+ * @author Enrique Gavidia
+ */
+class CodeBuilder {
+    // JVM opcodes
+    static final int ICONST_0 = 0x03;
+    static final int ICONST_1 = 0x04;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int ALOAD_0 = 0x2a;
+    static final int ISTORE = 0x36;
+    static final int POP = 0x57;
+    static final int IADD = 0x60;
+    static final int ISUB = 0x64;
+    static final int IMUL = 0x68;
+    static final int IDIV = 0x6c;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int IF_ICMPEQ = 0x9f;
+    static final int IF_ICMPNE = 0xa0;
+    static final int IF_ICMPLT = 0xa1;
+    static final int IF_ICMPGE = 0xa2;
+    static final int IF_ICMPGT = 0xa3;
+    static final int IF_ICMPLE = 0xa4;
+    static final int GOTO = 0xa7;
+    static final int IRETURN = 0xac;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESTATIC = 0xb8;
+    static final int WIDE = 0xc4;
+
+    // Branch offsets are signed 16 bit values, measured from the branch
+    static final int MAX_CODE_LENGTH = 32767;
+
+    private final ClassFile classFile;
+    private byte[] code = new byte[256];
+    private int length;
+    private int maxStack = 2;   // enough for the operands of any BOP
+    private int maxLocals;
+
+    private int[] labels = new int[16];
+    private int labelCount;
+    private int[] fixups = new int[16];     // pairs of (branch position, label)
+    private int fixupCount;
+
+    CodeBuilder(ClassFile classFile, int maxLocals) {
+        this.classFile = classFile;
+        this.maxLocals = maxLocals;
+    }
+
+    //----{ Labels }------------------------------------------------------------
+
+    /**
+     * Creates a label that has not been placed yet
+     * @return The new label
+     */
+    int newLabel() {
+        if (labelCount == labels.length)
+            labels = Arrays.copyOf(labels, labelCount * 2);
+        labels[labelCount] = -1;
+        return labelCount++;
+    }
+
+    /**
+     * Places the label at the current position of the code
+     * @param label The label to place
+     */
+    void placeLabel(int label) {
+        labels[label] = length;
+    }
+
+    //----{ Instructions }------------------------------------------------------
+
+    void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            op(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            op(BIPUSH);
+            u1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            op(SIPUSH);
+            u2(value);
+        } else {
+            op(LDC_W);
+            u2(classFile.integerConstant(value));
+        }
+    }
+
+    void loadInt(int local) {
+        localOp(ILOAD, local);
+    }
+
+    void storeInt(int local) {
+        localOp(ISTORE, local);
+    }
+
+    void loadThis() {
+        op(ALOAD_0);
+    }
+
+    /**
+     * Emits an instruction without operands, such as IADD or ICONST_1
+     * @param opcode The instruction's opcode
+     */
+    void simple(int opcode) {
+        op(opcode);
+    }
+
+    /**
+     * Emits a conditional or unconditional branch to the given label
+     * @param opcode One of the IF* opcodes, or GOTO
+     * @param label Destination label
+     */
+    void branch(int opcode, int label) {
+        if (fixupCount + 2 > fixups.length)
+            fixups = Arrays.copyOf(fixups, fixups.length * 2);
+        fixups[fixupCount++] = length;
+        fixups[fixupCount++] = label;
+        op(opcode);
+        u2(0);
+    }
+
+    void returnInt() {
+        op(IRETURN);
+    }
+
+    /**
+     * Emits a call to a static method
+     * @param owner Internal name of the class declaring the method
+     * @param name Method name
+     * @param descriptor Method descriptor
+     * @param arguments Number of stack slots the arguments take
+     */
+    void invokeStatic(String owner, String name, String descriptor, int arguments) {
+        op(INVOKESTATIC);
+        u2(classFile.methodConstant(owner, name, descriptor));
+        reserveStack(arguments);
+    }
+
+    /**
+     * Emits a call to an instance method
+     * @param owner Internal name of the class declaring the method
+     * @param name Method name
+     * @param descriptor Method descriptor
+     * @param arguments Number of stack slots the receiver and arguments take
+     */
+    void invokeVirtual(String owner, String name, String descriptor, int arguments) {
+        op(INVOKEVIRTUAL);
+        u2(classFile.methodConstant(owner, name, descriptor));
+        reserveStack(arguments);
+    }
+
+    //----{ Output }------------------------------------------------------------
+
+    /**
+     * Gets the current length of the code
+     * @return Length in bytes
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * Makes sure the method's operand stack can hold the given number of values
+     * @param slots Number of stack slots needed at some point in the method
+     */
+    void reserveStack(int slots) {
+        maxStack = Math.max(maxStack, slots);
+    }
+
+    int getMaxStack() {
+        return maxStack;
+    }
+
+    int getMaxLocals() {
+        return maxLocals;
+    }
+
+    /**
+     * Resolves the branches and returns the finished code
+     * @return The method's bytecode
+     * @throws IllegalStateException if a label was never placed, or the code
+     *         is too long for 16 bit branch offsets
+     */
+    byte[] toByteArray() {
+        if (length > MAX_CODE_LENGTH)
+            throw new IllegalStateException("method code too long: " + length + " bytes");
+
+        for (int i = 0; i < fixupCount; i += 2) {
+            int position = fixups[i];
+            int target = labels[fixups[i + 1]];
+            if (target < 0)
+                throw new IllegalStateException("label " + fixups[i + 1] + " was never placed");
+
+            int offset = target - position;
+            code[position + 1] = (byte) (offset >> 8);
+            code[position + 2] = (byte) offset;
+        }
+        return Arrays.copyOf(code, length);
+    }
+
+    //----{ Encoding }----------------------------------------------------------
+
+    private void localOp(int opcode, int local) {
+        if (local > 255) {
+            op(WIDE);
+            op(opcode);
+            u2(local);
+        } else {
+            op(opcode);
+            u1(local);
+        }
+        maxLocals = Math.max(maxLocals, local + 1);
+    }
+
+    private void op(int opcode) {
+        u1(opcode);
+    }
+
+    private void u1(int value) {
+        if (length == code.length)
+            code = Arrays.copyOf(code, length * 2);
+        code[length++] = (byte) value;
+    }
+
+    private void u2(int value) {
+        u1(value >> 8);
+        u1(value);
+    }
+}
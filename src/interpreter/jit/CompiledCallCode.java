@@ -0,0 +1,70 @@
+package interpreter.jit;
+
+import interpreter.VirtualMachine;
+import interpreter.bytecodes.ByteCode;
+import interpreter.bytecodes.Opcode;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Calls a function that was compiled to JVM bytecode. Replaces either a
+ * CALL, whose frame was already set up by the preceding ARGS, or an ARGSCALL.
+ * The compiled function takes its arguments off the Runtime stack, and
+ * its result is pushed in their place.
+ * @author Enrique Gavidia
+ * @see interpreter.jit.JitCompiler
+ */
+public class CompiledCallCode extends ByteCode {
+    private final String funcName;
+    private final MethodHandle entry;
+    private final boolean framed;
+
+    /**
+     * @param funcName Label of the function being called
+     * @param entry Handle taking the VirtualMachine, and returning the result
+     *              of the function
+     * @param framed true - if the code replaces a CALL, and so has to remove
+     *               the frame created by ARGS
+     */
+    CompiledCallCode(String funcName, MethodHandle entry, boolean framed) {
+        this.funcName = funcName;
+        this.entry = entry;
+        this.framed = framed;
+    }
+
+    @Override
+    public void init(String args) {
+        throw new UnsupportedOperationException("init method not supported by CompiledCallCode.");
+    }
+
+    @Override
+    public void execute(VirtualMachine vm) {
+        vm.pushRunStack(invoke(vm));
+        if (framed)
+            vm.popRunStackFrame();
+    }
+
+    /**
+     * Runs the compiled function, which takes its arguments off the Runtime stack
+     * @param vm The VM making the call
+     * @return The function's result
+     */
+    int invoke(VirtualMachine vm) {
+        try {
+            return (int) entry.invokeExact(vm);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("compiled function '" + funcName + "' failed", e);
+        }
+    }
+
+    @Override
+    public Opcode getOpcode() {
+        return Opcode.COMPILEDCALL;
+    }
+
+    @Override
+    public String getArgs() {
+        return funcName;
+    }
+}
@@ -0,0 +1,36 @@
+package interpreter.jit;
+
+import interpreter.VirtualMachine;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Replaces a FORKCALL to a function that was compiled to JVM bytecode. The
+ * call is still offered to the VM's ForkJoinEvaluator first; if the VM does
+ * not fork it, the compiled function is called instead.
+ * @author Enrique Gavidia
+ * @see interpreter.bytecodes.fusedByteCodes.ForkCallCode
+ */
+public class CompiledForkCallCode extends CompiledCallCode {
+    private final int function;
+    private final int numOfArgs;
+
+    /**
+     * @param funcName Label of the function being called
+     * @param entry Handle taking the VirtualMachine, and returning the result
+     *              of the function
+     * @param function Address of the function's first code, as forked
+     * @param numOfArgs Number of arguments passed to the function
+     */
+    CompiledForkCallCode(String funcName, MethodHandle entry, int function, int numOfArgs) {
+        super(funcName, entry, false);
+        this.function = function;
+        this.numOfArgs = numOfArgs;
+    }
+
+    @Override
+    public void execute(VirtualMachine vm) {
+        if (vm.forkCall(function, numOfArgs))
+            return;
+        vm.pushRunStack(invoke(vm));
+    }
+}
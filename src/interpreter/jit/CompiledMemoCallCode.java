@@ -0,0 +1,39 @@
+package interpreter.jit;
+
+import interpreter.VirtualMachine;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Replaces a MEMOCALL to a function that was compiled to JVM bytecode. If
+ * the VM's memo cache holds the result, the arguments are replaced by it
+ * and the following MEMOSTORE is skipped; otherwise the compiled function
+ * is called, and the MEMOSTORE caches its result.
+ * @author Enrique Gavidia
+ * @see interpreter.bytecodes.fusedByteCodes.MemoCallCode
+ */
+public class CompiledMemoCallCode extends CompiledCallCode {
+    private final int function;
+    private final int numOfArgs;
+
+    /**
+     * @param funcName Label of the function being called
+     * @param entry Handle taking the VirtualMachine, and returning the result
+     *              of the function
+     * @param function Address of the function's first code, as cached
+     * @param numOfArgs Number of arguments passed to the function
+     */
+    CompiledMemoCallCode(String funcName, MethodHandle entry, int function, int numOfArgs) {
+        super(funcName, entry, false);
+        this.function = function;
+        this.numOfArgs = numOfArgs;
+    }
+
+    @Override
+    public void execute(VirtualMachine vm) {
+        if (vm.recallMemoized(function, numOfArgs)) {
+            vm.setProgramCounter(vm.getProgramCounter() + 1);
+            return;
+        }
+        vm.pushRunStack(invoke(vm));
+    }
+}
@@ -0,0 +1,626 @@
+package interpreter.jit;
+
+import interpreter.Program;
+import interpreter.VirtualMachine;
+import interpreter.bytecodes.*;
+import interpreter.bytecodes.fusedByteCodes.*;
+import interpreter.optimizer.ControlFlow;
+import interpreter.optimizer.FunctionAnalysis;
+import interpreter.optimizer.FunctionInfo;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Compiles the functions of a linked Program to JVM bytecode, so that the
+ * JVM's own JIT can turn them into machine code.
+ * <p>
+ * Every function is translated into a static method of a hidden class.
+ * The stack height at each code of an X function is known statically, so
+ * each slot of the function's frame becomes a local variable of the method,
+ * and the function's arguments become the method's parameters. Calls between
+ * compiled functions are plain JVM calls, and the program's own calls to
+ * them are patched into CompiledCallCodes.
+ * <p>
+ * Memoized calls keep using the VM's memo cache. Forked calls are only
+ * forked by interpreted code; compiled functions make them one after the
+ * other. Functions using codes that cannot be translated (HALT, or a CALL
+ * without its ARGS), with inconsistent stack heights, or calling functions
+ * that cannot be compiled, are left to be interpreted.
+ * @author Enrique Gavidia
+ */
+public class JitCompiler {
+    private static final String CLASS_NAME = "interpreter/jit/CompiledFunctions";
+    private static final String VM_CLASS = "interpreter/VirtualMachine";
+    private static final String VM_DESCRIPTOR = "L" + VM_CLASS + ";";
+
+    private String statistics = "";
+    private Map<Integer, Function> lastFunctions = new TreeMap<Integer, Function>();
+
+    /**
+     * A function of the program, along with what the compiler made of it
+     */
+    private static class Function {
+        final int entry;
+        final String label;
+        final int arity;
+        final int[] heights;
+        final int maxHeight;
+        final List<Integer> callees;
+        String rejection;
+
+        String methodName;
+        MethodHandle handle;
+
+        /**
+         * @param info The function, already analyzed
+         */
+        Function(FunctionInfo info) {
+            this.entry = info.getEntry();
+            this.label = info.getLabel();
+            this.arity = info.getArity();
+            this.heights = info.getHeights();
+            this.maxHeight = info.getMaxHeight();
+            this.callees = info.getCallees();
+            this.rejection = info.getProblem();
+        }
+
+        String descriptor() {
+            String descriptor = "(" + VM_DESCRIPTOR;
+            for (int i = 0; i < arity; i++)
+                descriptor += "I";
+            return descriptor + ")I";
+        }
+    }
+
+    /**
+     * Compiles every function of the given program that can be compiled
+     * @param program Linked program to compile
+     * @return A copy of the program whose calls to compiled functions are
+     *         replaced by CompiledCallCodes; the program itself if nothing
+     *         could be compiled
+     */
+    public Program compile(Program program) {
+        Map<Integer, ByteCode> patches = compile(program, null);
+        return patches.isEmpty() ? program : program.patch(patches);
+    }
+
+    /**
+     * Compiles a single function, along with every function it calls
+     * @param program Linked program the function belongs to; calls that
+     *                were already patched are not recognized as calls
+     * @param entry Address of the function's first code
+     * @return Replacements for every call, in the program, to the compiled
+     *         functions; empty if the function could not be compiled
+     */
+    public Map<Integer, ByteCode> compileFunction(Program program, int entry) {
+        return compile(program, entry);
+    }
+
+    /**
+     * Compiles the function at 'root' and its callees, or every function if
+     * 'root' is null
+     * @return Replacements for the calls to the compiled functions
+     */
+    private Map<Integer, ByteCode> compile(Program program, Integer root) {
+        Map<Integer, ByteCode> patches = new HashMap<Integer, ByteCode>();
+        if (ControlFlow.containsDump(program)) {
+            statistics = "jit: skipped, program uses DUMP\n";
+            return patches;
+        }
+
+        Map<Integer, Function> functions = selectFunctions(program, root);
+        byte[] classBytes;
+        while (true) {
+            rejectCallers(functions);
+            try {
+                classBytes = generate(program, functions);
+                break;
+            } catch (MethodTooLargeException e) {
+                e.function.rejection = "compiled code too large";
+            }
+        }
+
+        int compiled = 0;
+        for (Function function : functions.values())
+            if (function.rejection == null)
+                compiled++;
+
+        if (compiled > 0) {
+            try {
+                defineClass(classBytes, functions);
+                patches = patchCalls(program, functions);
+            } catch (LinkageError | ReflectiveOperationException e) {
+                System.err.println("jit: could not load compiled code, interpreting instead: " + e);
+                compiled = 0;
+            }
+        }
+
+        statistics = String.format("jit: compiled %1$d of %2$d functions, patched %3$d call sites\n",
+            compiled, functions.size(), patches.size());
+        for (Function function : functions.values())
+            if (function.rejection != null)
+                statistics += "     " + function.label + ": " + function.rejection + "\n";
+
+        return patches;
+    }
+
+    /**
+     * Gets the label of the function starting at the given address, as used
+     * by the most recent compilation
+     * @param entry Address of the function's first code
+     * @return The function's label, or the address if it was not looked at
+     */
+    public String getFunctionLabel(int entry) {
+        Function function = lastFunctions.get(entry);
+        return function == null ? "instruction " + entry : function.label;
+    }
+
+    /**
+     * Tells why the function starting at the given address could not be
+     * compiled by the most recent compilation
+     * @param entry Address of the function's first code
+     * @return The reason, or null if the function was compiled
+     */
+    public String getRejection(int entry) {
+        Function function = lastFunctions.get(entry);
+        return function == null ? "not a function" : function.rejection;
+    }
+
+    /**
+     * Reports what was compiled during the last compilation, and why the
+     * remaining functions were not
+     * @return Formatted statistics
+     */
+    public String getStatistics() {
+        return statistics;
+    }
+
+    //----{ Analysis }----------------------------------------------------------
+
+    /**
+     * Finds and analyzes the functions to compile: every function, or only
+     * the one at 'root' and those it calls, directly or not
+     */
+    private Map<Integer, Function> selectFunctions(Program program, Integer root) {
+        Map<Integer, FunctionInfo> functions = FunctionAnalysis.findFunctions(program);
+        Map<Integer, Function> selected = new TreeMap<Integer, Function>();
+        List<Integer> pending = new ArrayList<Integer>();
+        if (root == null)
+            pending.addAll(functions.keySet());
+        else if (functions.containsKey(root))
+            pending.add(root);
+
+        while (!pending.isEmpty()) {
+            FunctionInfo info = functions.get(pending.remove(pending.size() - 1));
+            if (selected.containsKey(info.getEntry()))
+                continue;
+
+            FunctionAnalysis.analyze(program, info, functions);
+            selected.put(info.getEntry(), new Function(info));
+            pending.addAll(info.getCallees());
+        }
+
+        lastFunctions = selected;
+        return selected;
+    }
+
+    /**
+     * Rejects every function that calls a rejected function, until only
+     * functions whose callees are all compiled are left
+     */
+    private void rejectCallers(Map<Integer, Function> functions) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Function function : functions.values()) {
+                if (function.rejection != null)
+                    continue;
+                for (int entry : function.callees) {
+                    Function callee = functions.get(entry);
+                    if (callee.rejection != null) {
+                        function.rejection = "calls " + callee.label + ", which is not compiled";
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    //----{ Code Generation }---------------------------------------------------
+
+    /**
+     * Thrown when the code generated for a function does not fit in a method
+     */
+    private static class MethodTooLargeException extends Exception {
+        private static final long serialVersionUID = 1L;
+        final Function function;
+
+        MethodTooLargeException(Function function) {
+            this.function = function;
+        }
+    }
+
+    /**
+     * Generates the class holding every function that was not rejected,
+     * along with the bridge methods the interpreter calls them through
+     */
+    private byte[] generate(Program program, Map<Integer, Function> functions)
+            throws MethodTooLargeException {
+        ClassFile classFile = new ClassFile(CLASS_NAME);
+        for (Function function : functions.values())
+            function.methodName = methodName(function);
+
+        for (Function function : functions.values()) {
+            if (function.rejection != null)
+                continue;
+
+            CodeBuilder code = new CodeBuilder(classFile, function.maxHeight + 2);
+            try {
+                generateFunction(program, function, functions, code);
+                classFile.addStaticMethod(function.methodName, function.descriptor(), code);
+            } catch (IllegalStateException e) {
+                throw new MethodTooLargeException(function);
+            }
+
+            // enter$f(vm): takes the arguments off the Runtime stack and calls f
+            CodeBuilder bridge = new CodeBuilder(classFile, function.arity + 1);
+            for (int slot = function.arity - 1; slot >= 0; slot--) {
+                bridge.loadThis();
+                bridge.invokeVirtual(VM_CLASS, "popRunStack", "()I", 1);
+                bridge.storeInt(local(slot));
+            }
+            bridge.loadThis();
+            for (int slot = 0; slot < function.arity; slot++)
+                bridge.loadInt(local(slot));
+            bridge.invokeStatic(CLASS_NAME, function.methodName, function.descriptor(), function.arity + 1);
+            bridge.returnInt();
+            classFile.addStaticMethod("enter$" + function.methodName, "(" + VM_DESCRIPTOR + ")I", bridge);
+        }
+        return classFile.toByteArray();
+    }
+
+    /**
+     * Translates the codes of a function, in address order, keeping the
+     * value of each stack slot in its own local variable
+     */
+    private void generateFunction(Program program, Function function, Map<Integer, Function> functions,
+            CodeBuilder code) {
+        int[] heights = function.heights;
+        int[] labels = new int[program.size()];
+        for (int index = 0; index < labels.length; index++)
+            labels[index] = heights[index] >= 0 ? code.newLabel() : -1;
+
+        int first = 0;
+        while (heights[first] < 0)
+            first++;
+        if (first != function.entry)
+            code.branch(CodeBuilder.GOTO, labels[function.entry]);
+
+        int index = first;
+        while (index < heights.length) {
+            code.placeLabel(labels[index]);
+            ByteCode current = program.getCode(index);
+            int height = heights[index];
+            int next = index + 1;
+
+            switch (current.getOpcode()) {
+                case LABEL:
+                    break;
+                case LIT:
+                    code.pushInt(((LitCode) current).getValue());
+                    code.storeInt(local(height));
+                    break;
+                case LOAD:
+                    code.loadInt(local(((LoadCode) current).getOffset()));
+                    code.storeInt(local(height));
+                    break;
+                case STORE:
+                    code.loadInt(local(height - 1));
+                    code.storeInt(local(((StoreCode) current).getOffset()));
+                    break;
+                case POP:
+                    break;
+                case BOP:
+                    code.loadInt(local(height - 2));
+                    code.loadInt(local(height - 1));
+                    applyOperator(code, ((BopCode) current).getOperator(), local(function.maxHeight));
+                    code.storeInt(local(height - 2));
+                    break;
+                case LOADLITBOP:
+                    LoadLitBopCode loadLitBop = (LoadLitBopCode) current;
+                    code.loadInt(local(loadLitBop.getOffset()));
+                    code.pushInt(loadLitBop.getValue());
+                    applyOperator(code, loadLitBop.getOperator(), local(function.maxHeight));
+                    code.storeInt(local(height));
+                    break;
+                case READ:
+                    code.loadThis();
+                    code.invokeVirtual(VM_CLASS, "readInput", "()I", 1);
+                    code.storeInt(local(height));
+                    break;
+                case WRITE:
+                    code.loadThis();
+                    code.loadInt(local(height - 1));
+                    code.invokeVirtual(VM_CLASS, "writeOutput", "(I)V", 2);
+                    break;
+                case GOTO:
+                    code.branch(CodeBuilder.GOTO, labels[((BranchCode) current).getTarget()]);
+                    break;
+                case FALSEBRANCH:
+                    code.loadInt(local(height - 1));
+                    code.branch(CodeBuilder.IFEQ, labels[((BranchCode) current).getTarget()]);
+                    break;
+                case BOPFALSEBRANCH:
+                    code.loadInt(local(height - 2));
+                    code.loadInt(local(height - 1));
+                    branchIfFalse(code, ((BopFalsebranchCode) current).getOperator(),
+                        labels[((BranchCode) current).getTarget()], local(function.maxHeight));
+                    break;
+                case MEMOCALL:
+                    // Looks the arguments up in the VM's memo cache; a cached
+                    // result skips the MEMOSTORE, like the interpreted code
+                    Function memoCallee = functions.get(((BranchCode) current).getTarget());
+                    int firstMemoArg = height - memoCallee.arity;
+                    int missed = code.newLabel();
+                    for (int slot = firstMemoArg; slot < height; slot++) {
+                        code.loadThis();
+                        code.loadInt(local(slot));
+                        code.invokeVirtual(VM_CLASS, "pushRunStack", "(I)I", 2);
+                        code.simple(CodeBuilder.POP);
+                    }
+                    code.loadThis();
+                    code.pushInt(memoCallee.entry);
+                    code.pushInt(memoCallee.arity);
+                    code.invokeVirtual(VM_CLASS, "recallMemoized", "(II)Z", 3);
+                    code.branch(CodeBuilder.IFEQ, missed);
+                    code.loadThis();
+                    code.invokeVirtual(VM_CLASS, "popRunStack", "()I", 1);
+                    code.storeInt(local(firstMemoArg));
+                    code.branch(CodeBuilder.GOTO, labels[index + 2]);
+
+                    code.placeLabel(missed);
+                    for (int slot = firstMemoArg; slot < height; slot++) {
+                        code.loadThis();
+                        code.invokeVirtual(VM_CLASS, "popRunStack", "()I", 1);
+                        code.simple(CodeBuilder.POP);
+                    }
+                    callFunction(code, memoCallee, height);
+                    break;
+                case MEMOSTORE:
+                    code.loadThis();
+                    code.loadInt(local(height - 1));
+                    code.invokeVirtual(VM_CLASS, "memoize", "(I)V", 2);
+                    break;
+                case JOIN:
+                    // FORKCALL made an ordinary call, so there is nothing to wait for
+                    break;
+                case ARGS:
+                case ARGSCALL:
+                case FORKCALL:
+                    // Compiled code makes forked calls one after the other
+                    BranchCode call;
+                    if (current.getOpcode() == Opcode.ARGS) {
+                        call = (BranchCode) program.getCode(index + 1);
+                        next++;
+                    } else {
+                        call = (BranchCode) current;
+                    }
+                    callFunction(code, functions.get(call.getTarget()), height);
+                    break;
+                case TAILCALL:
+                    Function tailCallee = functions.get(((BranchCode) current).getTarget());
+                    int firstTailArg = height - tailCallee.arity;
+                    if (tailCallee == function) {
+                        // Self recursion becomes a loop: the arguments
+                        // replace the parameters, and the method starts over
+                        code.reserveStack(tailCallee.arity);
+                        for (int slot = firstTailArg; slot < height; slot++)
+                            code.loadInt(local(slot));
+                        for (int slot = tailCallee.arity - 1; slot >= 0; slot--)
+                            code.storeInt(local(slot));
+                        code.branch(CodeBuilder.GOTO, labels[function.entry]);
+                    } else {
+                        code.loadThis();
+                        for (int slot = firstTailArg; slot < height; slot++)
+                            code.loadInt(local(slot));
+                        code.invokeStatic(CLASS_NAME, tailCallee.methodName, tailCallee.descriptor(),
+                            tailCallee.arity + 1);
+                        code.returnInt();
+                    }
+                    break;
+                case RETURN:
+                    code.loadInt(local(height - 1));
+                    code.returnInt();
+                    break;
+                case LITRETURN:
+                    code.pushInt(((LitReturnCode) current).getValue());
+                    code.returnInt();
+                    break;
+                default:
+                    throw new IllegalStateException("unexpected " + current.getName());
+            }
+
+            // Find the next code to translate, and jump to the successor if
+            // it is not the code that follows in the method
+            int following = index + 1;
+            while (following < heights.length && heights[following] < 0)
+                following++;
+            if (ControlFlow.fallsThrough(current) && next != following)
+                code.branch(CodeBuilder.GOTO, labels[next]);
+            index = following;
+        }
+    }
+
+    /**
+     * Calls a compiled function with the arguments in the slots just below
+     * 'height', and puts its result in the slot of the first argument
+     */
+    private static void callFunction(CodeBuilder code, Function callee, int height) {
+        int firstArg = height - callee.arity;
+        code.loadThis();
+        for (int slot = firstArg; slot < height; slot++)
+            code.loadInt(local(slot));
+        code.invokeStatic(CLASS_NAME, callee.methodName, callee.descriptor(), callee.arity + 1);
+        code.storeInt(local(firstArg));
+    }
+
+    /**
+     * Applies an operator to the two values on top of the JVM stack,
+     * leaving the result in their place
+     * @param scratch A local variable that can be overwritten
+     */
+    private static void applyOperator(CodeBuilder code, Operator operator, int scratch) {
+        int isTrue, end;
+        switch (operator) {
+            case ADD:
+                code.simple(CodeBuilder.IADD);
+                return;
+            case SUB:
+                code.simple(CodeBuilder.ISUB);
+                return;
+            case MUL:
+                code.simple(CodeBuilder.IMUL);
+                return;
+            case DIV:
+                code.simple(CodeBuilder.IDIV);
+                return;
+            case AND:
+                // lower > 0 && top > 0
+                int isFalse = code.newLabel();
+                end = code.newLabel();
+                code.storeInt(scratch);
+                code.branch(CodeBuilder.IFLE, isFalse);
+                code.loadInt(scratch);
+                code.branch(CodeBuilder.IFLE, isFalse);
+                code.simple(CodeBuilder.ICONST_1);
+                code.branch(CodeBuilder.GOTO, end);
+                code.placeLabel(isFalse);
+                code.simple(CodeBuilder.ICONST_0);
+                code.placeLabel(end);
+                return;
+            case OR:
+                // lower > 0 || top > 0
+                isTrue = code.newLabel();
+                end = code.newLabel();
+                code.storeInt(scratch);
+                code.branch(CodeBuilder.IFGT, isTrue);
+                code.loadInt(scratch);
+                code.branch(CodeBuilder.IFGT, isTrue);
+                code.simple(CodeBuilder.ICONST_0);
+                code.branch(CodeBuilder.GOTO, end);
+                code.placeLabel(isTrue);
+                code.simple(CodeBuilder.ICONST_1);
+                code.placeLabel(end);
+                return;
+            default:
+                isTrue = code.newLabel();
+                end = code.newLabel();
+                code.branch(comparison(operator), isTrue);
+                code.simple(CodeBuilder.ICONST_0);
+                code.branch(CodeBuilder.GOTO, end);
+                code.placeLabel(isTrue);
+                code.simple(CodeBuilder.ICONST_1);
+                code.placeLabel(end);
+        }
+    }
+
+    /**
+     * Applies an operator to the two values on top of the JVM stack, and
+     * jumps to the label if the result is false; comparisons branch directly
+     * on the inverse comparison
+     * @param scratch A local variable that can be overwritten
+     */
+    private static void branchIfFalse(CodeBuilder code, Operator operator, int label, int scratch) {
+        switch (operator) {
+            case EQ: code.branch(CodeBuilder.IF_ICMPNE, label); break;
+            case NE: code.branch(CodeBuilder.IF_ICMPEQ, label); break;
+            case LT: code.branch(CodeBuilder.IF_ICMPGE, label); break;
+            case LE: code.branch(CodeBuilder.IF_ICMPGT, label); break;
+            case GT: code.branch(CodeBuilder.IF_ICMPLE, label); break;
+            case GE: code.branch(CodeBuilder.IF_ICMPLT, label); break;
+            default:
+                applyOperator(code, operator, scratch);
+                code.branch(CodeBuilder.IFEQ, label);
+        }
+    }
+
+    /**
+     * Gets the JVM instruction that jumps when the comparison holds
+     */
+    private static int comparison(Operator operator) {
+        switch (operator) {
+            case EQ: return CodeBuilder.IF_ICMPEQ;
+            case NE: return CodeBuilder.IF_ICMPNE;
+            case LT: return CodeBuilder.IF_ICMPLT;
+            case LE: return CodeBuilder.IF_ICMPLE;
+            case GT: return CodeBuilder.IF_ICMPGT;
+            default: return CodeBuilder.IF_ICMPGE;
+        }
+    }
+
+    /**
+     * Gets the local variable holding the given slot of the frame; local 0
+     * holds the VirtualMachine
+     */
+    private static int local(int slot) {
+        return slot + 1;
+    }
+
+    /**
+     * Turns a function label, such as 'fib<<2>>', into a valid method name
+     */
+    private static String methodName(Function function) {
+        return function.label.replaceAll("[^A-Za-z0-9_]", "_") + "$" + function.entry;
+    }
+
+    //----{ Loading }-----------------------------------------------------------
+
+    /**
+     * Defines the generated class, and looks up the bridge of every compiled function
+     */
+    private void defineClass(byte[] classBytes, Map<Integer, Function> functions)
+            throws ReflectiveOperationException {
+        MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classBytes, true);
+        MethodType bridgeType = MethodType.methodType(int.class, VirtualMachine.class);
+        for (Function function : functions.values())
+            if (function.rejection == null)
+                function.handle = lookup.findStatic(lookup.lookupClass(), "enter$" + function.methodName, bridgeType);
+    }
+
+    /**
+     * Replaces every call to a compiled function with a CompiledCallCode, or
+     * with a CompiledMemoCallCode for memoized calls, and a
+     * CompiledForkCallCode for forked ones
+     */
+    private Map<Integer, ByteCode> patchCalls(Program program, Map<Integer, Function> functions) {
+        Map<Integer, ByteCode> patches = new HashMap<Integer, ByteCode>();
+        for (int index = 0; index < program.size(); index++) {
+            ByteCode code = program.getCode(index);
+            Opcode opcode = code.getOpcode();
+            if (opcode != Opcode.CALL && opcode != Opcode.ARGSCALL && opcode != Opcode.MEMOCALL
+                    && opcode != Opcode.FORKCALL)
+                continue;
+
+            Function function = functions.get(((BranchCode) code).getTarget());
+            if (function == null || function.rejection != null)
+                continue;
+            if (opcode == Opcode.MEMOCALL)
+                patches.put(index, new CompiledMemoCallCode(function.label, function.handle, function.entry,
+                    function.arity));
+            else if (opcode == Opcode.FORKCALL)
+                patches.put(index, new CompiledForkCallCode(function.label, function.handle, function.entry,
+                    function.arity));
+            else
+                patches.put(index, new CompiledCallCode(function.label, function.handle, opcode == Opcode.CALL));
+        }
+        return patches;
+    }
+}
@@ -0,0 +1,138 @@
+package interpreter.jit;
+
+import interpreter.Program;
+import interpreter.VirtualMachine;
+import interpreter.bytecodes.BranchCode;
+import interpreter.bytecodes.ByteCode;
+import interpreter.optimizer.ControlFlow;
+import java.io.PrintStream;
+import java.util.Map;
+
+
+/**
+ * Promotes hot functions from the interpreter to compiled code while the
+ * program runs. The VirtualMachine reports every interpreted call, and every
+ * backward GOTO taken inside a function; once a function has been called
+ * 'callThreshold' times, or has looped 'backEdgeThreshold' times, it is
+ * compiled along with its callees, and the calls to it are patched.
+ * <p>
+ * A function that is promoted because of a loop keeps running interpreted
+ * until it returns; only the calls made after the promotion run compiled.
+ * @author Enrique Gavidia
+ * @see interpreter.jit.JitCompiler
+ */
+public class TieredCompiler {
+    public static final int DEFAULT_CALL_THRESHOLD = 1000;
+    public static final int DEFAULT_BACK_EDGE_THRESHOLD = 10000;
+
+    private final Program original;
+    private final JitCompiler compiler;
+    private final int callThreshold;
+    private final int backEdgeThreshold;
+    private final boolean enabled;
+    private PrintStream log;
+    private final long startTime;
+
+    // Counters, indexed by the address of each function's first code
+    private final int[] calls;
+    private final int[] backEdges;
+    private final boolean[] tried;
+
+    private int promoted, rejected, patchedCalls;
+
+    /**
+     * @param program The linked program the VM starts out running; its calls
+     *                must not have been patched yet
+     * @param callThreshold Number of calls after which a function is compiled
+     * @param backEdgeThreshold Number of backward jumps after which the
+     *                          function containing them is compiled
+     */
+    public TieredCompiler(Program program, int callThreshold, int backEdgeThreshold) {
+        this.original = program;
+        this.compiler = new JitCompiler();
+        this.callThreshold = callThreshold;
+        this.backEdgeThreshold = backEdgeThreshold;
+        this.enabled = !ControlFlow.containsDump(program);
+        this.calls = new int[program.size()];
+        this.backEdges = new int[program.size()];
+        this.tried = new boolean[program.size()];
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Sets where each promotion is reported
+     * @param log Stream for the tier log, or null to keep quiet
+     */
+    public void setLog(PrintStream log) {
+        this.log = log;
+    }
+
+    //----{ Profiling }---------------------------------------------------------
+
+    /**
+     * Counts an interpreted call, promoting the function once it is hot
+     * @param vm The VM making the call
+     * @param entry Address of the called function's first code
+     * @return true - if the VM's program was patched
+     */
+    public boolean countCall(VirtualMachine vm, int entry) {
+        return ++calls[entry] == callThreshold && promote(vm, entry, callThreshold + " calls");
+    }
+
+    /**
+     * Counts a backward jump taken inside a function, promoting the
+     * function once it is hot
+     * @param vm The VM making the jump
+     * @param returnAddress Address of the CALL that entered the function
+     * @return true - if the VM's program was patched
+     */
+    public boolean countBackEdge(VirtualMachine vm, int returnAddress) {
+        ByteCode call = original.getCode(returnAddress);
+        if (!(call instanceof BranchCode))
+            return false;
+
+        int entry = ((BranchCode) call).getTarget();
+        return ++backEdges[entry] == backEdgeThreshold && promote(vm, entry, backEdgeThreshold + " back edges");
+    }
+
+    /**
+     * Compiles the function and patches the calls to it in the VM's program
+     * @return true - if the function was compiled
+     */
+    private boolean promote(VirtualMachine vm, int entry, String reason) {
+        if (!enabled || tried[entry])
+            return false;
+        tried[entry] = true;
+
+        Map<Integer, ByteCode> patches = compiler.compileFunction(original, entry);
+        String label = compiler.getFunctionLabel(entry);
+        if (patches.isEmpty()) {
+            rejected++;
+            log("kept " + label + " interpreted after " + reason + ": " + compiler.getRejection(entry));
+            return false;
+        }
+
+        vm.patchProgram(patches);
+        promoted++;
+        patchedCalls += patches.size();
+        log("promoted " + label + " after " + reason + ", patched " + patches.size() + " call sites");
+        return true;
+    }
+
+    private void log(String message) {
+        if (log != null)
+            log.printf("tier [%1$6.1fms] %2$s\n", (System.nanoTime() - startTime) / 1e6, message);
+    }
+
+    /**
+     * Summarizes the promotions made so far
+     * @return Formatted statistics
+     */
+    public String getStatistics() {
+        if (!enabled)
+            return "tier: disabled, program uses DUMP\n";
+        return String.format("tier: %1$d functions promoted, %2$d kept interpreted, %3$d call sites patched"
+            + " (thresholds: %4$d calls, %5$d back edges)\n",
+            promoted, rejected, patchedCalls, callThreshold, backEdgeThreshold);
+    }
+}
@@ -0,0 +1,99 @@
+package interpreter.optimizer;
+
+import interpreter.Program;
+import interpreter.bytecodes.*;
+
+
+/**
+ * Evaluates operations over constants ahead of time:
+ * <pre>
+ *     LIT a; LIT b; BOP op        ->  LIT (a op b)
+ *     LIT a; FALSEBRANCH L        ->  nothing if a != 0, GOTO L otherwise
+ * </pre>
+ * Folding repeats until no more sequences are found, so nested constant
+ * expressions collapse into one LIT. Divisions by a constant zero are left
+ * alone, so that they still fail at run time.
+ * @author Enrique Gavidia
+ */
+public class ConstantFoldingPass implements Pass {
+    private int foldedOperations, foldedBranches;
+
+    @Override
+    public String getName() {
+        return "fold";
+    }
+
+    @Override
+    public Program apply(Program program) {
+        foldedOperations = foldedBranches = 0;
+        int folded;
+        do {
+            folded = foldedOperations + foldedBranches;
+            program = foldOnce(program);
+        } while (folded != foldedOperations + foldedBranches);
+
+        return program;
+    }
+
+    /**
+     * Makes a single pass over the program, folding the sequences found
+     * @param program Program to fold
+     * @return The folded program
+     */
+    private Program foldOnce(Program program) {
+        int size = program.size();
+        boolean[] isTarget = ControlFlow.jumpTargets(program);
+        Rewriter rewriter = new Rewriter(program);
+
+        int index = 0;
+        while (index < size) {
+            ByteCode code = program.getCode(index);
+            ByteCode next = index + 1 < size && !isTarget[index + 1] ? program.getCode(index + 1) : null;
+            ByteCode third = next != null && index + 2 < size && !isTarget[index + 2] ? program.getCode(index + 2) : null;
+
+            if (is(code, Opcode.LIT) && is(next, Opcode.LIT) && is(third, Opcode.BOP)
+                    && canFold(((BopCode) third).getOperator(), ((LitCode) next).getValue())) {
+                int lowerInt = ((LitCode) code).getValue();
+                int topInt = ((LitCode) next).getValue();
+                int result = ((BopCode) third).getOperator().apply(lowerInt, topInt);
+
+                LitCode lit = new LitCode();
+                lit.init(Integer.toString(result));
+                rewriter.emit(lit, index, 3);
+                index += 3;
+                foldedOperations++;
+            } else if (is(code, Opcode.LIT) && is(next, Opcode.FALSEBRANCH)) {
+                if (((LitCode) code).getValue() != 0) {
+                    // The branch is never taken
+                    rewriter.drop(index);
+                    rewriter.drop(index + 1);
+                } else {
+                    BranchCode branch = (BranchCode) next;
+                    GotoCode jump = new GotoCode();
+                    jump.init(branch.getLabel());
+                    rewriter.emit(jump.resolve(branch.getTarget()), index, 2);
+                }
+                index += 2;
+                foldedBranches++;
+            } else {
+                rewriter.keep(index);
+                index++;
+            }
+        }
+
+        return rewriter.finish();
+    }
+
+    private static boolean canFold(Operator operator, int topInt) {
+        return !(operator == Operator.DIV && topInt == 0);
+    }
+
+    private static boolean is(ByteCode code, Opcode opcode) {
+        return code != null && code.getOpcode() == opcode;
+    }
+
+    @Override
+    public String getStatistics() {
+        return foldedOperations + " operations, " + foldedBranches + " constant branches folded";
+    }
+}
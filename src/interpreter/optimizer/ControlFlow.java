@@ -0,0 +1,114 @@
+package interpreter.optimizer;
+
+import interpreter.Program;
+import interpreter.bytecodes.BranchCode;
+import interpreter.bytecodes.ByteCode;
+import interpreter.bytecodes.Opcode;
+
+
+/**
+ * Control flow queries over linked Programs, shared by the optimizer passes
+ * @author Enrique Gavidia
+ */
+public class ControlFlow {
+    private ControlFlow() {}
+
+    /**
+     * Marks every address that execution can jump to: branch targets, and
+     * the codes right after CALLs, where functions return to
+     * @param program Program to inspect
+     * @return Array telling whether each address, up to the program's size,
+     *         is a jump destination
+     */
+    public static boolean[] jumpTargets(Program program) {
+        boolean[] isTarget = new boolean[program.size() + 1];
+        for (int index = 0; index < program.size(); index++) {
+            ByteCode code = program.getCode(index);
+            if (code instanceof BranchCode)
+                isTarget[((BranchCode) code).getTarget()] = true;
+            if (isCall(code))
+                isTarget[index + 1] = true;
+        }
+        return isTarget;
+    }
+
+    /**
+     * Finds every code that can be executed when starting from the given address
+     * @param program Program to inspect
+     * @param entry Address execution starts at
+     * @return Array telling whether each address is reachable
+     */
+    public static boolean[] reachable(Program program, int entry) {
+        boolean[] reached = new boolean[program.size()];
+        int[] worklist = new int[program.size()];
+        int pending = 0;
+        reached[entry] = true;
+        worklist[pending++] = entry;
+
+        while (pending > 0) {
+            int index = worklist[--pending];
+            ByteCode code = program.getCode(index);
+
+            if (fallsThrough(code))
+                pending = visit(index + 1, reached, worklist, pending);
+            if (code instanceof BranchCode)
+                pending = visit(((BranchCode) code).getTarget(), reached, worklist, pending);
+        }
+        return reached;
+    }
+
+    /**
+     * Adds an address to the worklist of 'reachable', unless it was already reached
+     * @return The new number of pending addresses
+     */
+    private static int visit(int index, boolean[] reached, int[] worklist, int pending) {
+        if (index < reached.length && !reached[index]) {
+            reached[index] = true;
+            worklist[pending++] = index;
+        }
+        return pending;
+    }
+
+    /**
+     * Tells whether execution can continue with the code following the
+     * given one; CALLs count as falling through, since the function returns there
+     * @param code ByteCode to check
+     * @return true - if the next code can be executed after this one
+     */
+    public static boolean fallsThrough(ByteCode code) {
+        switch (code.getOpcode()) {
+            case GOTO:
+            case RETURN:
+            case HALT:
+            case LITRETURN:
+            case TAILCALL:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Tells whether the given code calls a function
+     * @param code ByteCode to check
+     * @return true - if the code is a CALL or a superinstruction ending in one
+     */
+    public static boolean isCall(ByteCode code) {
+        Opcode opcode = code.getOpcode();
+        return opcode == Opcode.CALL || opcode == Opcode.ARGSCALL || opcode == Opcode.MEMOCALL
+            || opcode == Opcode.FORKCALL;
+    }
+
+    /**
+     * Tells whether the given program contains a DUMP code. Passes leave
+     * these programs untouched, since DUMP output lists every code executed.
+     * @param program Program to inspect
+     * @return true - if the program uses DUMP
+     */
+    public static boolean containsDump(Program program) {
+        for (int index = 0; index < program.size(); index++)
+            if (program.getCode(index).getOpcode() == Opcode.DUMP)
+                return true;
+        return false;
+    }
+}
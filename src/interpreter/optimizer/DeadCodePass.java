@@ -0,0 +1,59 @@
+package interpreter.optimizer;
+
+import interpreter.Program;
+import interpreter.bytecodes.BranchCode;
+import interpreter.bytecodes.ByteCode;
+import interpreter.bytecodes.Opcode;
+import interpreter.bytecodes.PopCode;
+
+
+/**
+ * Removes codes that can never be executed, such as the 'POP 0; GOTO' left
+ * after a RETURN, along with codes that have no effect: 'POP 0', and GOTOs
+ * to the code right after them
+ * @author Enrique Gavidia
+ */
+public class DeadCodePass implements Pass {
+    private int unreachable, noOps;
+
+    @Override
+    public String getName() {
+        return "dce";
+    }
+
+    @Override
+    public Program apply(Program program) {
+        unreachable = noOps = 0;
+        if (program.size() == 0)
+            return program;
+
+        boolean[] reached = ControlFlow.reachable(program, 0);
+        Rewriter rewriter = new Rewriter(program);
+        for (int index = 0; index < program.size(); index++) {
+            if (!reached[index]) {
+                rewriter.drop(index);
+                unreachable++;
+            } else if (isNoOp(program.getCode(index), index)) {
+                rewriter.drop(index);
+                noOps++;
+            } else {
+                rewriter.keep(index);
+            }
+        }
+
+        return rewriter.finish();
+    }
+
+    private static boolean isNoOp(ByteCode code, int index) {
+        if (code.getOpcode() == Opcode.POP)
+            return ((PopCode) code).getNumOfPops() == 0;
+        if (code.getOpcode() == Opcode.GOTO)
+            return ((BranchCode) code).getTarget() == index + 1;
+        return false;
+    }
+
+    @Override
+    public String getStatistics() {
+        return unreachable + " unreachable, " + noOps + " no-op codes removed";
+    }
+}
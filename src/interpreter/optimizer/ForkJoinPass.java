@@ -0,0 +1,186 @@
+package interpreter.optimizer;
+
+import interpreter.Program;
+import interpreter.bytecodes.*;
+import interpreter.bytecodes.fusedByteCodes.ForkCallCode;
+import interpreter.bytecodes.fusedByteCodes.JoinCode;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Lets sibling calls to pure functions run in parallel. When the operands of
+ * a BOP are both results of pure calls, and the arguments of the second call
+ * only depend on the slots of the current frame below the first call's
+ * result, the first call is forked:
+ * <pre>
+ *     ARGS a; CALL f; ...; ARGS b; CALL g; BOP op
+ *         ->  FORKCALL a f; ...; ARGS b; CALL g; JOIN; BOP op
+ * </pre>
+ * where '...' only contains LOADs, LITs and BOPs pushing the b arguments.
+ * The slots' heights are only known inside the functions FunctionAnalysis
+ * could analyze, so calls anywhere else are never forked.
+ * While the second call runs, the first one is evaluated by the VM's
+ * ForkJoinEvaluator; JOIN waits for its result. Without an evaluator, or
+ * past its cutoff, FORKCALL is an ordinary call and JOIN does nothing.
+ * @see interpreter.ForkJoinEvaluator
+ * @see interpreter.optimizer.PurityAnalysis
+ * @author Enrique Gavidia
+ */
+public class ForkJoinPass implements Pass {
+    private int forkedCalls;
+
+    @Override
+    public String getName() {
+        return "fork";
+    }
+
+    /**
+     * Replaces the forkable sibling calls found in the given program
+     * @param program Linked program to optimize
+     * @return A new, relinked program with the sibling calls forked
+     */
+    @Override
+    public Program apply(Program program) {
+        forkedCalls = 0;
+        int size = program.size();
+        boolean[] isTarget = branchTargets(program);
+        int[] heights = frameHeights(program);
+        Set<Integer> pure = PurityAnalysis.findPureFunctions(program);
+        Rewriter rewriter = new Rewriter(program);
+
+        int index = 0;
+        while (index < size) {
+            int join = -1;
+            if (isPureCall(program, index, isTarget, pure) && heights[index] >= 0) {
+                // The first call's result takes the slot of its first argument
+                int resultSlot = heights[index] - ((ArgsCode) program.getCode(index)).getNumOfArgs();
+                join = findJoin(program, index + 2, resultSlot, isTarget, pure);
+            }
+            if (join < 0) {
+                rewriter.keep(index);
+                index++;
+                continue;
+            }
+
+            BranchCode call = (BranchCode) program.getCode(index + 1);
+            rewriter.emit(new ForkCallCode(((ArgsCode) program.getCode(index)).getNumOfArgs(),
+                    call.getLabel(), call.getTarget()), index, 2);
+            for (int i = index + 2; i < join; i++)
+                rewriter.keep(i);
+            // The second call returns to the JOIN, right before the BOP
+            rewriter.emit(new JoinCode(), join, 0);
+            index = join;
+            forkedCalls++;
+        }
+
+        return rewriter.finish();
+    }
+
+    /**
+     * Marks the addresses branches jump to. Unlike ControlFlow.jumpTargets,
+     * the codes after CALLs are not marked: the calls matched here return
+     * there, which is where they would continue anyway.
+     */
+    private static boolean[] branchTargets(Program program) {
+        boolean[] isTarget = new boolean[program.size() + 1];
+        for (int index = 0; index < program.size(); index++) {
+            ByteCode code = program.getCode(index);
+            if (code instanceof BranchCode)
+                isTarget[((BranchCode) code).getTarget()] = true;
+        }
+        return isTarget;
+    }
+
+    /**
+     * Gets the stack height, relative to the current frame, at every address
+     * of the functions FunctionAnalysis could analyze
+     * @return Heights indexed by address; -1 outside of those functions, and
+     *         where two functions disagree
+     */
+    private static int[] frameHeights(Program program) {
+        int[] heights = new int[program.size()];
+        Arrays.fill(heights, -1);
+        boolean[] seen = new boolean[program.size()];
+        Map<Integer, FunctionInfo> functions = FunctionAnalysis.findFunctions(program);
+        for (FunctionInfo function : functions.values()) {
+            FunctionAnalysis.analyze(program, function, functions);
+            if (function.getProblem() != null)
+                continue;
+            int[] own = function.getHeights();
+            for (int index = 0; index < own.length; index++) {
+                if (own[index] < 0)
+                    continue;
+                if (!seen[index])
+                    heights[index] = own[index];
+                else if (heights[index] != own[index])
+                    heights[index] = -1;
+                seen[index] = true;
+            }
+        }
+        return heights;
+    }
+
+    /**
+     * Tells whether the codes at the given address are 'ARGS n; CALL f',
+     * with f pure, and nothing jumping to the CALL
+     */
+    private static boolean isPureCall(Program program, int index, boolean[] isTarget, Set<Integer> pure) {
+        return index + 1 < program.size()
+            && program.getCode(index).getOpcode() == Opcode.ARGS
+            && program.getCode(index + 1).getOpcode() == Opcode.CALL
+            && !isTarget[index + 1]
+            && pure.contains(((BranchCode) program.getCode(index + 1)).getTarget());
+    }
+
+    /**
+     * Looks for the second pure call and the BOP consuming both results,
+     * starting right after the first call
+     * @param resultSlot Offset in the frame of the first call's result; the
+     *                   arguments of the second call may not LOAD it, or
+     *                   anything above it
+     * @return Address of the consuming BOP, or -1 if there is none
+     */
+    private static int findJoin(Program program, int index, int resultSlot, boolean[] isTarget, Set<Integer> pure) {
+        // Height of the values pushed since the first call
+        int height = 0;
+        for (; index < program.size() && !isTarget[index]; index++) {
+            ByteCode code = program.getCode(index);
+            switch (code.getOpcode()) {
+                case LOAD:
+                    if (((LoadCode) code).getOffset() >= resultSlot)
+                        return -1;
+                    height++;
+                    break;
+                case LIT:
+                    height++;
+                    break;
+                case BOP:
+                    if (height < 2)
+                        return -1;
+                    height--;
+                    break;
+                case ARGS:
+                    if (height != ((ArgsCode) code).getNumOfArgs()
+                            || !isPureCall(program, index, isTarget, pure) || index + 2 >= program.size()
+                            || isTarget[index + 2] || program.getCode(index + 2).getOpcode() != Opcode.BOP)
+                        return -1;
+                    return index + 2;
+                default:
+                    return -1;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean isOptIn() {
+        return true;
+    }
+
+    @Override
+    public String getStatistics() {
+        return forkedCalls + " sibling calls forked";
+    }
+}
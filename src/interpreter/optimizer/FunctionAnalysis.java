@@ -0,0 +1,249 @@
+package interpreter.optimizer;
+
+import interpreter.Program;
+import interpreter.bytecodes.*;
+import interpreter.bytecodes.fusedByteCodes.*;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Finds the functions of a linked Program, and works out the shape of each
+ * one: the stack height at every code it can execute, and the functions
+ * it calls. Shared by the passes and compilers that handle whole functions.
+ * @see interpreter.optimizer.FunctionInfo
+ * @author Enrique Gavidia
+ */
+public class FunctionAnalysis {
+    private FunctionAnalysis() {}
+
+    /**
+     * Collects the functions called by the program, along with the number of
+     * arguments each one takes; the functions are not analyzed yet
+     * @param program Linked program to inspect
+     * @return The functions, indexed by the address of their first code
+     */
+    public static Map<Integer, FunctionInfo> findFunctions(Program program) {
+        Map<Integer, FunctionInfo> functions = new TreeMap<Integer, FunctionInfo>();
+        boolean[] isTarget = ControlFlow.jumpTargets(program);
+
+        for (int index = 0; index < program.size(); index++) {
+            ByteCode code = program.getCode(index);
+            int arity;
+            if (code.getOpcode() == Opcode.ARGSCALL)
+                arity = ((ArgsCallCode) code).getNumOfArgs();
+            else if (code.getOpcode() == Opcode.TAILCALL)
+                arity = ((TailCallCode) code).getNumOfArgs();
+            else if (code.getOpcode() == Opcode.MEMOCALL)
+                arity = ((MemoCallCode) code).getNumOfArgs();
+            else if (code.getOpcode() == Opcode.FORKCALL)
+                arity = ((ForkCallCode) code).getNumOfArgs();
+            else if (code.getOpcode() == Opcode.CALL && index > 0 && !isTarget[index]
+                    && program.getCode(index - 1).getOpcode() == Opcode.ARGS)
+                arity = ((ArgsCode) program.getCode(index - 1)).getNumOfArgs();
+            else if (code.getOpcode() == Opcode.CALL)
+                arity = -1;
+            else
+                continue;
+
+            BranchCode call = (BranchCode) code;
+            FunctionInfo function = functions.get(call.getTarget());
+            if (function == null) {
+                function = new FunctionInfo(call.getTarget(), call.getLabel());
+                function.arity = arity;
+                functions.put(call.getTarget(), function);
+            }
+
+            if (arity < 0)
+                function.problem = "called without ARGS";
+            else if (arity != function.arity)
+                function.problem = "called with different numbers of arguments";
+        }
+        return functions;
+    }
+
+    /**
+     * Follows every path through the function, recording the stack height
+     * at each code and the functions it calls. Records a problem instead if
+     * the function uses a code whose effect on the stack is not known here,
+     * or if two paths reach a code with different heights. Functions are
+     * only analyzed once.
+     * @param program Program the function belongs to
+     * @param function Function to analyze
+     * @param functions Every function of the program, as found by findFunctions
+     */
+    public static void analyze(Program program, FunctionInfo function, Map<Integer, FunctionInfo> functions) {
+        if (function.problem != null || function.heights != null)
+            return;
+
+        int size = program.size();
+        int[] heights = new int[size];
+        Arrays.fill(heights, -1);
+        int[] worklist = new int[size];
+        int pending = 0;
+
+        heights[function.entry] = function.arity;
+        worklist[pending++] = function.entry;
+        int maxHeight = function.arity;
+
+        while (pending > 0) {
+            int index = worklist[--pending];
+            int height = heights[index];
+            ByteCode code = program.getCode(index);
+            int next = index + 1;
+            int branch = -1;
+            int nextHeight;
+
+            switch (code.getOpcode()) {
+                case LABEL:
+                    nextHeight = height;
+                    break;
+                case LIT:
+                    nextHeight = height + 1;
+                    break;
+                case READ:
+                    function.performsIO = true;
+                    nextHeight = height + 1;
+                    break;
+                case LOAD:
+                    if (!inFrame(((LoadCode) code).getOffset(), height)) {
+                        function.problem = "LOAD outside of its frame at instruction " + index;
+                        return;
+                    }
+                    nextHeight = height + 1;
+                    break;
+                case LOADLITBOP:
+                    if (!inFrame(((LoadLitBopCode) code).getOffset(), height)) {
+                        function.problem = "LOAD outside of its frame at instruction " + index;
+                        return;
+                    }
+                    nextHeight = height + 1;
+                    break;
+                case STORE:
+                    if (height < 1 || !inFrame(((StoreCode) code).getOffset(), height)) {
+                        function.problem = "STORE outside of its frame at instruction " + index;
+                        return;
+                    }
+                    nextHeight = height - 1;
+                    break;
+                case POP:
+                    nextHeight = height - ((PopCode) code).getNumOfPops();
+                    break;
+                case BOP:
+                    nextHeight = height - 1;
+                    break;
+                case WRITE:
+                    function.performsIO = true;
+                    nextHeight = height < 1 ? -1 : height;
+                    break;
+                case GOTO:
+                    next = -1;
+                    branch = ((BranchCode) code).getTarget();
+                    nextHeight = height;
+                    break;
+                case FALSEBRANCH:
+                    branch = ((BranchCode) code).getTarget();
+                    nextHeight = height - 1;
+                    break;
+                case BOPFALSEBRANCH:
+                    branch = ((BranchCode) code).getTarget();
+                    nextHeight = height - 2;
+                    break;
+                case ARGS:
+                case ARGSCALL:
+                case MEMOCALL:
+                case FORKCALL:
+                    BranchCode call;
+                    int numOfArgs;
+                    if (code.getOpcode() == Opcode.ARGSCALL) {
+                        call = (BranchCode) code;
+                        numOfArgs = ((ArgsCallCode) code).getNumOfArgs();
+                    } else if (code.getOpcode() == Opcode.FORKCALL) {
+                        call = (BranchCode) code;
+                        numOfArgs = ((ForkCallCode) code).getNumOfArgs();
+                    } else if (code.getOpcode() == Opcode.MEMOCALL) {
+                        // A cached result skips the MEMOSTORE that follows
+                        if (next >= size || program.getCode(next).getOpcode() != Opcode.MEMOSTORE) {
+                            function.problem = "MEMOCALL without MEMOSTORE at instruction " + index;
+                            return;
+                        }
+                        call = (BranchCode) code;
+                        numOfArgs = ((MemoCallCode) code).getNumOfArgs();
+                        branch = next + 1;
+                    } else if (next < size && program.getCode(next).getOpcode() == Opcode.CALL) {
+                        call = (BranchCode) program.getCode(next);
+                        numOfArgs = ((ArgsCode) code).getNumOfArgs();
+                        next++;
+                    } else {
+                        function.problem = "ARGS without CALL at instruction " + index;
+                        return;
+                    }
+
+                    FunctionInfo callee = functions.get(call.getTarget());
+                    if (callee.arity != numOfArgs || numOfArgs > height) {
+                        function.problem = "bad call to " + callee.label + " at instruction " + index;
+                        return;
+                    }
+                    if (!function.callees.contains(callee.entry))
+                        function.callees.add(callee.entry);
+                    nextHeight = height - numOfArgs + 1;
+                    break;
+                case MEMOSTORE:
+                case JOIN:
+                    nextHeight = height;
+                    break;
+                case TAILCALL:
+                    FunctionInfo tailCallee = functions.get(((BranchCode) code).getTarget());
+                    int tailArgs = ((TailCallCode) code).getNumOfArgs();
+                    if (tailCallee.arity != tailArgs || tailArgs > height) {
+                        function.problem = "bad call to " + tailCallee.label + " at instruction " + index;
+                        return;
+                    }
+                    if (!function.callees.contains(tailCallee.entry))
+                        function.callees.add(tailCallee.entry);
+                    continue;
+                case RETURN:
+                    if (height < 1) {
+                        function.problem = "RETURN without a value at instruction " + index;
+                        return;
+                    }
+                    continue;
+                case LITRETURN:
+                    continue;
+                default:
+                    function.problem = code.getName() + " at instruction " + index;
+                    return;
+            }
+
+            if (nextHeight < 0) {
+                function.problem = "stack underflow at instruction " + index;
+                return;
+            }
+            maxHeight = Math.max(maxHeight, nextHeight);
+
+            for (int successor : new int[] { next, branch }) {
+                if (successor < 0)
+                    continue;
+                if (successor >= size) {
+                    function.problem = "runs past the end of the program";
+                    return;
+                }
+                if (heights[successor] < 0) {
+                    heights[successor] = nextHeight;
+                    worklist[pending++] = successor;
+                } else if (heights[successor] != nextHeight) {
+                    function.problem = "inconsistent stack height at instruction " + successor;
+                    return;
+                }
+            }
+        }
+
+        function.heights = heights;
+        function.maxHeight = maxHeight;
+    }
+
+    private static boolean inFrame(int offset, int height) {
+        return offset >= 0 && offset < height;
+    }
+}
@@ -0,0 +1,92 @@
+package interpreter.optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * What FunctionAnalysis found out about a single function
+ * @see interpreter.optimizer.FunctionAnalysis
+ * @author Enrique Gavidia
+ */
+public class FunctionInfo {
+    final int entry;
+    final String label;
+    int arity = -1;
+    String problem;
+    boolean performsIO;
+    int[] heights;
+    int maxHeight;
+    final List<Integer> callees = new ArrayList<Integer>();
+
+    FunctionInfo(int entry, String label) {
+        this.entry = entry;
+        this.label = label;
+    }
+
+    /**
+     * Gets the address of the function's first code
+     * @return Entry address
+     */
+    public int getEntry() {
+        return entry;
+    }
+
+    /**
+     * Gets the label the function is called by
+     * @return Function label, e.g. 'fib<<2>>'
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Gets the number of arguments the function takes
+     * @return Number of arguments
+     */
+    public int getArity() {
+        return arity;
+    }
+
+    /**
+     * Tells what keeps the function from being analyzed
+     * @return Description of the problem, or null if the analysis succeeded
+     */
+    public String getProblem() {
+        return problem;
+    }
+
+    /**
+     * Tells whether the function itself contains READ or WRITE codes; the
+     * functions it calls are not taken into account
+     * @return true - if the function performs I/O
+     */
+    public boolean performsIO() {
+        return performsIO;
+    }
+
+    /**
+     * Gets the stack height, relative to the function's frame, at every
+     * address; the array is shared, and must not be modified
+     * @return Heights indexed by address, -1 where the function never executes
+     */
+    public int[] getHeights() {
+        return heights;
+    }
+
+    /**
+     * Gets the highest the function's frame ever gets
+     * @return Maximum stack height
+     */
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    /**
+     * Gets the functions called by this one, including tail calls
+     * @return Entry addresses of the called functions
+     */
+    public List<Integer> getCallees() {
+        return callees;
+    }
+}
@@ -0,0 +1,67 @@
+package interpreter.optimizer;
+
+import interpreter.Program;
+import interpreter.bytecodes.BranchCode;
+import interpreter.bytecodes.ByteCode;
+import interpreter.bytecodes.Opcode;
+
+
+/**
+ * Retargets every branch past the LABELs and GOTOs it would otherwise land
+ * on, so that a jump to a jump costs a single dispatch
+ * @author Enrique Gavidia
+ */
+public class JumpThreadingPass implements Pass {
+    private int threaded;
+
+    @Override
+    public String getName() {
+        return "thread";
+    }
+
+    @Override
+    public Program apply(Program program) {
+        threaded = 0;
+        Rewriter rewriter = new Rewriter(program);
+        for (int index = 0; index < program.size(); index++) {
+            ByteCode code = program.getCode(index);
+            if (code instanceof BranchCode) {
+                BranchCode branch = (BranchCode) code;
+                int target = finalTarget(program, branch.getTarget());
+                if (target != branch.getTarget()) {
+                    rewriter.emit(branch.resolve(target), index, 1);
+                    threaded++;
+                    continue;
+                }
+            }
+            rewriter.keep(index);
+        }
+
+        return rewriter.finish();
+    }
+
+    /**
+     * Follows the chain of LABELs and GOTOs starting at the given address
+     * @param program Program the chain is in
+     * @param target Address to start from
+     * @return Address of the first code on the chain that does something
+     */
+    private int finalTarget(Program program, int target) {
+        // Bounded, so that a GOTO loop without any other code cannot hang the pass
+        for (int steps = 0; steps < program.size() && target < program.size(); steps++) {
+            ByteCode code = program.getCode(target);
+            if (code.getOpcode() == Opcode.LABEL)
+                target++;
+            else if (code.getOpcode() == Opcode.GOTO)
+                target = ((BranchCode) code).getTarget();
+            else
+                break;
+        }
+        return target;
+    }
+
+    @Override
+    public String getStatistics() {
+        return threaded + " branches threaded";
+    }
+}
@@ -0,0 +1,41 @@
+package interpreter.optimizer;
+
+import interpreter.Program;
+import interpreter.bytecodes.Opcode;
+
+
+/**
+ * Removes the LABELs of a linked program; once every branch holds the
+ * address of its target, LABELs only cost a dispatch each time they are
+ * executed
+ * @author Enrique Gavidia
+ */
+public class LabelStrippingPass implements Pass {
+    private int stripped;
+
+    @Override
+    public String getName() {
+        return "strip";
+    }
+
+    @Override
+    public Program apply(Program program) {
+        stripped = 0;
+        Rewriter rewriter = new Rewriter(program);
+        for (int index = 0; index < program.size(); index++) {
+            if (program.getCode(index).getOpcode() == Opcode.LABEL) {
+                rewriter.drop(index);
+                stripped++;
+            } else {
+                rewriter.keep(index);
+            }
+        }
+
+        return rewriter.finish();
+    }
+
+    @Override
+    public String getStatistics() {
+        return stripped + " labels stripped";
+    }
+}
@@ -0,0 +1,98 @@
+package interpreter.optimizer;
+
+import interpreter.MemoCache;
+import interpreter.Program;
+import interpreter.bytecodes.*;
+import interpreter.bytecodes.fusedByteCodes.MemoCallCode;
+import interpreter.bytecodes.fusedByteCodes.MemoStoreCode;
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * Memoizes the calls to pure functions, so that a function called again
+ * with the same arguments returns its cached result instead of running:
+ * <pre>
+ *     ARGS n; CALL f              ->  MEMOCALL n f; MEMOSTORE f
+ * </pre>
+ * Only functions found by the PurityAnalysis, taking at most
+ * MemoCache.MAX_ARITY arguments, are memoized; others can be excluded by
+ * name. Since memoizing only pays off for functions that are called many
+ * times with the same arguments, the pass has to be asked for by name.
+ * @see interpreter.optimizer.PurityAnalysis
+ * @see interpreter.MemoCache
+ * @author Enrique Gavidia
+ */
+public class MemoizationPass implements Pass {
+    private final Set<String> excluded = new HashSet<String>();
+    private int memoizedCalls;
+    private int memoizedFunctions;
+
+    @Override
+    public String getName() {
+        return "memo";
+    }
+
+    /**
+     * Keeps calls to the function with the given name from being memoized
+     * @param funcName Name of the function, as written in the X source
+     */
+    public void exclude(String funcName) {
+        excluded.add(funcName);
+    }
+
+    /**
+     * Replaces the calls to pure functions found in the given program
+     * @param program Linked program to optimize
+     * @return A new, relinked program with the pure calls memoized
+     */
+    @Override
+    public Program apply(Program program) {
+        memoizedCalls = 0;
+        int size = program.size();
+        boolean[] isTarget = ControlFlow.jumpTargets(program);
+        Set<Integer> pure = PurityAnalysis.findPureFunctions(program);
+        Set<Integer> memoized = new HashSet<Integer>();
+        Rewriter rewriter = new Rewriter(program);
+
+        int index = 0;
+        while (index < size) {
+            ByteCode code = program.getCode(index);
+            if (code.getOpcode() == Opcode.ARGS && index + 1 < size && !isTarget[index + 1]
+                    && program.getCode(index + 1).getOpcode() == Opcode.CALL
+                    && isMemoizable((ArgsCode) code, (BranchCode) program.getCode(index + 1), pure)) {
+                BranchCode call = (BranchCode) program.getCode(index + 1);
+                rewriter.emit(new MemoCallCode(((ArgsCode) code).getNumOfArgs(), call.getLabel(),
+                        call.getTarget()), index, 2);
+                // The function returns here; anything jumping to the code
+                // after the CALL skips the MEMOSTORE
+                rewriter.emit(new MemoStoreCode(call.getLabel()), index + 2, 0);
+                memoized.add(call.getTarget());
+                index += 2;
+                memoizedCalls++;
+            } else {
+                rewriter.keep(index);
+                index++;
+            }
+        }
+        memoizedFunctions = memoized.size();
+
+        return rewriter.finish();
+    }
+
+    private boolean isMemoizable(ArgsCode args, BranchCode call, Set<Integer> pure) {
+        return pure.contains(call.getTarget())
+            && args.getNumOfArgs() <= MemoCache.MAX_ARITY
+            && !excluded.contains(call.getLabel().split("<<")[0]);
+    }
+
+    @Override
+    public boolean isOptIn() {
+        return true;
+    }
+
+    @Override
+    public String getStatistics() {
+        return memoizedCalls + " calls to " + memoizedFunctions + " pure functions memoized";
+    }
+}
@@ -0,0 +1,154 @@
+package interpreter.optimizer;
+
+import interpreter.Program;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Pipeline of optimization passes run over a linked Program before it is
+ * executed. Each pass can be enabled on its own; enabled passes always run
+ * in the order that lets each one feed the next.
+ * @author Enrique Gavidia
+ */
+public class Optimizer {
+    private final List<Pass> passes;
+    private final MemoizationPass memoization;
+    private final Set<String> enabled;
+    private String statistics;
+
+    /**
+     * Creates an optimizer with every pass disabled
+     */
+    public Optimizer() {
+        memoization = new MemoizationPass();
+        passes = Arrays.<Pass>asList(
+            new ConstantFoldingPass(),
+            new JumpThreadingPass(),
+            new LabelStrippingPass(),
+            new TailCallPass(),
+            memoization,
+            new ForkJoinPass(),
+            new DeadCodePass(),
+            new SuperInstructionPass());
+        enabled = new HashSet<String>();
+        statistics = "";
+    }
+
+    /**
+     * Enables the pass with the given name
+     * @param name Name of the pass
+     * @return true - if the pass exists; false - otherwise
+     */
+    public boolean enable(String name) {
+        for (Pass pass : passes) {
+            if (pass.getName().equals(name)) {
+                enabled.add(name);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Enables every pass, except those that have to be asked for by name
+     * @see interpreter.optimizer.Pass#isOptIn()
+     */
+    public void enableAll() {
+        for (Pass pass : passes)
+            if (!pass.isOptIn())
+                enabled.add(pass.getName());
+    }
+
+    /**
+     * Keeps the calls to a function from being memoized
+     * @param funcName Name of the function, as written in the X source
+     * @see interpreter.optimizer.MemoizationPass
+     */
+    public void excludeFromMemoization(String funcName) {
+        memoization.exclude(funcName);
+    }
+
+    /**
+     * Tells whether any pass is enabled
+     * @return true - if at least one pass will run
+     */
+    public boolean isEnabled() {
+        return !enabled.isEmpty();
+    }
+
+    /**
+     * Tells whether the pass with the given name is enabled
+     * @param name Name of the pass
+     * @return true - if the pass will run
+     */
+    public boolean isEnabled(String name) {
+        return enabled.contains(name);
+    }
+
+    /**
+     * Gets the names of all the passes, in the order they run
+     * @return Pass names
+     */
+    public String getPassNames() {
+        String names = "";
+        for (Pass pass : passes)
+            names += (names.isEmpty() ? "" : ", ") + pass.getName();
+        return names;
+    }
+
+    /**
+     * Runs the enabled passes over the given program
+     * @param program Linked program to optimize
+     * @return The optimized program
+     */
+    public Program optimize(Program program) {
+        return optimize(program, false);
+    }
+
+    /**
+     * Runs the enabled passes that keep a program debuggable over the given
+     * program; the others are skipped
+     * @param program Linked program, loaded for the debugger, to optimize
+     * @return The optimized program
+     * @see interpreter.optimizer.Pass#preservesDebugInfo()
+     */
+    public Program optimizeForDebugging(Program program) {
+        return optimize(program, true);
+    }
+
+    private Program optimize(Program program, boolean debugging) {
+        statistics = "";
+        if (!isEnabled())
+            return program;
+
+        if (ControlFlow.containsDump(program)) {
+            statistics = "optimizer: skipped, program uses DUMP\n";
+            return program;
+        }
+
+        int originalSize = program.size();
+        for (Pass pass : passes) {
+            if (!enabled.contains(pass.getName()) || (debugging && !pass.preservesDebugInfo()))
+                continue;
+
+            int before = program.size();
+            program = pass.apply(program);
+            statistics += String.format("%1$-7s %2$6d -> %3$6d codes; %4$s\n",
+                pass.getName() + ":", before, program.size(), pass.getStatistics());
+        }
+        statistics += String.format("%1$-7s %2$6d -> %3$6d codes\n", "total:", originalSize, program.size());
+
+        return program;
+    }
+
+    /**
+     * Reports what each pass did during the last optimization
+     * @return Formatted statistics, one line per pass
+     */
+    public String getStatistics() {
+        return statistics;
+    }
+}
@@ -0,0 +1,49 @@
+package interpreter.optimizer;
+
+import interpreter.Program;
+
+
+/**
+ * A transformation over a linked Program, run by the Optimizer
+ * @see interpreter.optimizer.Optimizer
+ * @author Enrique Gavidia
+ */
+public interface Pass {
+
+    /**
+     * Gets the name the pass is selected by on the command line
+     * @return Name of the pass
+     */
+    String getName();
+
+    /**
+     * Transforms the given program; the program itself is never modified
+     * @param program Linked program to transform
+     * @return The transformed, relinked program
+     */
+    Program apply(Program program);
+
+    /**
+     * Tells whether the pass can run over programs loaded for the debugger,
+     * keeping their LINE, FUNCTION and FORMAL codes working
+     * @return true - if the pass is safe to run while debugging
+     */
+    default boolean preservesDebugInfo() {
+        return false;
+    }
+
+    /**
+     * Tells whether the pass only runs when asked for by name, rather than
+     * with every other pass
+     * @return true - if enabling every pass leaves this one out
+     */
+    default boolean isOptIn() {
+        return false;
+    }
+
+    /**
+     * Reports what the pass did during its last application
+     * @return Formatted statistics
+     */
+    String getStatistics();
+}
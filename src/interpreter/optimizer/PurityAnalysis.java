@@ -0,0 +1,48 @@
+package interpreter.optimizer;
+
+import interpreter.Program;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+
+/**
+ * Finds the pure functions of a linked Program: functions whose result
+ * depends on nothing but their arguments, and which have no effect other
+ * than producing it. A function is pure when it performs no READ or WRITE,
+ * contains no HALT or DUMP, only touches the slots of its own frame, and
+ * only calls pure functions.
+ * @see interpreter.optimizer.FunctionAnalysis
+ * @author Enrique Gavidia
+ */
+public class PurityAnalysis {
+    private PurityAnalysis() {}
+
+    /**
+     * Finds every pure function of the given program
+     * @param program Linked program to inspect
+     * @return Entry addresses of the pure functions
+     */
+    public static Set<Integer> findPureFunctions(Program program) {
+        Map<Integer, FunctionInfo> functions = FunctionAnalysis.findFunctions(program);
+        Set<Integer> pure = new TreeSet<Integer>();
+        for (FunctionInfo function : functions.values()) {
+            FunctionAnalysis.analyze(program, function, functions);
+            if (function.getProblem() == null && !function.performsIO())
+                pure.add(function.getEntry());
+        }
+
+        // A function calling an impure one is impure too
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (FunctionInfo function : functions.values()) {
+                if (pure.contains(function.getEntry()) && !pure.containsAll(function.getCallees())) {
+                    pure.remove(function.getEntry());
+                    changed = true;
+                }
+            }
+        }
+        return pure;
+    }
+}
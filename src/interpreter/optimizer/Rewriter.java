@@ -0,0 +1,73 @@
+package interpreter.optimizer;
+
+import interpreter.Linker;
+import interpreter.Program;
+import interpreter.bytecodes.ByteCode;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Builds a rewritten copy of a Program, keeping track of where each of the
+ * original codes ended up so that branches can be relinked afterwards.
+ * The codes of the original program have to be visited in order.
+ * @author Enrique Gavidia
+ */
+class Rewriter {
+    private final Program original;
+    private final List<ByteCode> codes;
+    private final int[] newAddresses;
+
+    Rewriter(Program original) {
+        this.original = original;
+        this.codes = new ArrayList<ByteCode>(original.size());
+        this.newAddresses = new int[original.size() + 1];
+    }
+
+    /**
+     * Copies a code of the original program unchanged
+     * @param index Address of the code in the original program
+     */
+    void keep(int index) {
+        emit(original.getCode(index), index, 1);
+    }
+
+    /**
+     * Replaces one or more consecutive codes of the original program with
+     * a single code
+     * @param code The replacement code
+     * @param index Address of the first replaced code
+     * @param length Number of codes replaced
+     */
+    void emit(ByteCode code, int index, int length) {
+        for (int i = index; i < index + length; i++)
+            newAddresses[i] = codes.size();
+        codes.add(code);
+    }
+
+    /**
+     * Removes a code of the original program; anything that jumped to it
+     * continues at the next code that is kept instead
+     * @param index Address of the removed code
+     */
+    void drop(int index) {
+        newAddresses[index] = codes.size();
+    }
+
+    /**
+     * Gets the number of codes in the rewritten program so far
+     * @return Number of codes
+     */
+    int size() {
+        return codes.size();
+    }
+
+    /**
+     * Relinks the rewritten codes into a new Program
+     * @return The rewritten Program
+     */
+    Program finish() {
+        newAddresses[original.size()] = codes.size();
+        return Linker.relink(codes, newAddresses);
+    }
+}
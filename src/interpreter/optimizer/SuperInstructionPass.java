@@ -0,0 +1,86 @@
+package interpreter.optimizer;
+
+import interpreter.Program;
+import interpreter.bytecodes.*;
+import interpreter.bytecodes.fusedByteCodes.*;
+
+
+/**
+ * Peephole pass that rewrites common ByteCode sequences into single
+ * superinstructions, so that each of them costs one dispatch instead of
+ * two or three:
+ * <pre>
+ *     LOAD n; LIT k; BOP op       ->  LOADLITBOP n k op
+ *     BOP op; FALSEBRANCH L       ->  BOPFALSEBRANCH op L
+ *     LIT v; RETURN               ->  LITRETURN v
+ *     ARGS n; CALL f              ->  ARGSCALL n f
+ * </pre>
+ * A sequence is only fused if no branch or return lands in its middle.
+ * @author Enrique Gavidia
+ */
+public class SuperInstructionPass implements Pass {
+    private int loadLitBops, bopFalsebranches, litReturns, argsCalls;
+
+    @Override
+    public String getName() {
+        return "fuse";
+    }
+
+    /**
+     * Fuses the superinstruction sequences found in the given program
+     * @param program Linked program to optimize
+     * @return A new, relinked program with the sequences fused
+     */
+    @Override
+    public Program apply(Program program) {
+        loadLitBops = bopFalsebranches = litReturns = argsCalls = 0;
+        int size = program.size();
+        boolean[] isTarget = ControlFlow.jumpTargets(program);
+        Rewriter rewriter = new Rewriter(program);
+
+        int index = 0;
+        while (index < size) {
+            ByteCode code = program.getCode(index);
+            ByteCode next = index + 1 < size && !isTarget[index + 1] ? program.getCode(index + 1) : null;
+            ByteCode third = next != null && index + 2 < size && !isTarget[index + 2] ? program.getCode(index + 2) : null;
+
+            if (is(code, Opcode.LOAD) && is(next, Opcode.LIT) && is(third, Opcode.BOP)) {
+                rewriter.emit(new LoadLitBopCode(((LoadCode) code).getOffset(), ((LitCode) next).getValue(),
+                        ((BopCode) third).getOperator()), index, 3);
+                index += 3;
+                loadLitBops++;
+            } else if (is(code, Opcode.BOP) && is(next, Opcode.FALSEBRANCH)) {
+                BranchCode branch = (BranchCode) next;
+                rewriter.emit(new BopFalsebranchCode(((BopCode) code).getOperator(), branch.getLabel(),
+                        branch.getTarget()), index, 2);
+                index += 2;
+                bopFalsebranches++;
+            } else if (is(code, Opcode.LIT) && is(next, Opcode.RETURN)) {
+                rewriter.emit(new LitReturnCode(((LitCode) code).getValue(), next.getArgs()), index, 2);
+                index += 2;
+                litReturns++;
+            } else if (is(code, Opcode.ARGS) && is(next, Opcode.CALL)) {
+                BranchCode call = (BranchCode) next;
+                rewriter.emit(new ArgsCallCode(((ArgsCode) code).getNumOfArgs(), call.getLabel(),
+                        call.getTarget()), index, 2);
+                index += 2;
+                argsCalls++;
+            } else {
+                rewriter.keep(index);
+                index++;
+            }
+        }
+
+        return rewriter.finish();
+    }
+
+    private static boolean is(ByteCode code, Opcode opcode) {
+        return code != null && code.getOpcode() == opcode;
+    }
+
+    @Override
+    public String getStatistics() {
+        return "LOAD/LIT/BOP " + loadLitBops + ", BOP/FALSEBRANCH " + bopFalsebranches
+            + ", LIT/RETURN " + litReturns + ", ARGS/CALL " + argsCalls;
+    }
+}
@@ -0,0 +1,93 @@
+package interpreter.optimizer;
+
+import interpreter.Program;
+import interpreter.bytecodes.*;
+import interpreter.bytecodes.fusedByteCodes.TailCallCode;
+
+
+/**
+ * Turns calls in tail position into TailCallCodes, which reuse the frame of
+ * the function making the call:
+ * <pre>
+ *     ARGS n; CALL f; RETURN      ->  TAILCALL n f; RETURN
+ * </pre>
+ * Any number of LABELs and 'POP 0's may come between the CALL and the
+ * RETURN. The RETURN is kept, since it may still be jumped to; once the
+ * TAILCALL is in place, the DeadCodePass removes it otherwise. Tail
+ * recursive functions then run with a constant number of frames and
+ * return addresses.
+ * @author Enrique Gavidia
+ */
+public class TailCallPass implements Pass {
+    private int tailCalls;
+
+    @Override
+    public String getName() {
+        return "tail";
+    }
+
+    /**
+     * Replaces the calls in tail position found in the given program
+     * @param program Linked program to optimize
+     * @return A new, relinked program with the tail calls replaced
+     */
+    @Override
+    public Program apply(Program program) {
+        tailCalls = 0;
+        int size = program.size();
+        boolean[] isTarget = ControlFlow.jumpTargets(program);
+        Rewriter rewriter = new Rewriter(program);
+
+        int index = 0;
+        while (index < size) {
+            ByteCode code = program.getCode(index);
+            if (code.getOpcode() == Opcode.ARGS && index + 1 < size && !isTarget[index + 1]
+                    && program.getCode(index + 1).getOpcode() == Opcode.CALL
+                    && returnsAfter(program, index + 2)) {
+                BranchCode call = (BranchCode) program.getCode(index + 1);
+                rewriter.emit(new TailCallCode(((ArgsCode) code).getNumOfArgs(), call.getLabel(),
+                        call.getTarget()), index, 2);
+                index += 2;
+                tailCalls++;
+            } else {
+                rewriter.keep(index);
+                index++;
+            }
+        }
+
+        return rewriter.finish();
+    }
+
+    /**
+     * Tells whether the code at the given address is a RETURN, once any
+     * LABELs and 'POP 0's before it are skipped
+     */
+    private static boolean returnsAfter(Program program, int index) {
+        for (; index < program.size(); index++) {
+            ByteCode code = program.getCode(index);
+            switch (code.getOpcode()) {
+                case RETURN:
+                    return true;
+                case LABEL:
+                    break;
+                case POP:
+                    if (((PopCode) code).getNumOfPops() != 0)
+                        return false;
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean preservesDebugInfo() {
+        return true;
+    }
+
+    @Override
+    public String getStatistics() {
+        return tailCalls + " tail calls";
+    }
+}